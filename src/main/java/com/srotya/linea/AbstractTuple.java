@@ -15,13 +15,24 @@
  */
 package com.srotya.linea;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
+import com.srotya.linea.network.TupleSerializer;
+import com.srotya.linea.utils.LongList;
 
 /**
  * A semi-concrete definition of {@link Tuple} that can be extended into a
- * concrete implementation.
+ * concrete implementation. <br>
+ * <br>
+ * Fields declared by the concrete implementation are the payload of the
+ * tuple. Implementations returning true from {@link #isLazyPayload()} receive
+ * remote tuples with the payload still serialized, it's decoded by
+ * {@link #materialize()} which payload accessors must call first, and
+ * tuples forwarded with an untouched payload are re-sent without
+ * re-serializing it.<br>
+ * <br>
+ * Tuples built with the no-arg constructor don't draw a tuple id until it's
+ * first read, so tuples decoded off the network or preallocated in ring
+ * buffers, which are given their id by the sender, never use up sequences
+ * of the {@link TupleIdGenerator}.
  * 
  * @author ambud
  */
@@ -29,26 +40,27 @@ public abstract class AbstractTuple implements Tuple {
 
 	public static final int AVG_EVENT_FIELD_COUNT = Integer.parseInt(System.getProperty("event.field.count", "40"));
 	private long originEventId;
-	private List<Long> sourceIds;
+	private LongList sourceIds;
 	private long eventId;
 	private int sourceWorkerId = -1;
+	private int senderWorkerId = -1;
 	private Object groupByKey;
-	private String nextBoltId;
+	private int nextComponentId = ComponentRegistry.NONE;
 	private int destinationTaskId;
 	private int taskId;
-	private String componentName;
+	private int componentId = ComponentRegistry.NONE;
 	private int destinationWorkerId;
 	private Object groupByValue;
 	private boolean ack;
+	private transient byte[] payload;
 	
 	public AbstractTuple(String eventId) {
 		this.eventId = MurmurHash.hash64(eventId);
-		sourceIds = new ArrayList<>();
+		sourceIds = new LongList();
 	}
 
 	public AbstractTuple() {
-		eventId = ThreadLocalRandom.current().nextLong();
-		sourceIds = new ArrayList<>();
+		sourceIds = new LongList();
 	}
 
 	/*
@@ -83,12 +95,22 @@ public abstract class AbstractTuple implements Tuple {
 
 	@Override
 	public String getNextBoltId() {
-		return nextBoltId;
+		return ComponentRegistry.getName(nextComponentId);
 	}
 
 	@Override
 	public void setNextBoltId(String nextBoltId) {
-		this.nextBoltId = nextBoltId;
+		this.nextComponentId = ComponentRegistry.getId(nextBoltId);
+	}
+
+	@Override
+	public int getNextComponentId() {
+		return nextComponentId;
+	}
+
+	@Override
+	public void setNextComponentId(int componentId) {
+		this.nextComponentId = componentId;
 	}
 
 	@Override
@@ -133,12 +155,22 @@ public abstract class AbstractTuple implements Tuple {
 
 	@Override
 	public String getComponentName() {
-		return componentName;
+		return ComponentRegistry.getName(componentId);
 	}
 
 	@Override
 	public void setComponentName(String componentName) {
-		this.componentName = componentName;
+		this.componentId = ComponentRegistry.getId(componentName);
+	}
+
+	@Override
+	public int getComponentId() {
+		return componentId;
+	}
+
+	@Override
+	public void setComponentId(int componentId) {
+		this.componentId = componentId;
 	}
 
 	@Override
@@ -156,13 +188,26 @@ public abstract class AbstractTuple implements Tuple {
 		return sourceWorkerId;
 	}
 
+	@Override
+	public void setSenderWorkerId(int workerId) {
+		this.senderWorkerId = workerId;
+	}
+
+	@Override
+	public int getSenderWorkerId() {
+		return senderWorkerId;
+	}
+
 	@Override
 	public long getTupleId() {
+		if (eventId == TupleIds.UNASSIGNED) {
+			eventId = TupleIds.next();
+		}
 		return eventId;
 	}
 
 	@Override
-	public List<Long> getSourceIds() {
+	public LongList getSourceIds() {
 		return sourceIds;
 	}
 
@@ -176,11 +221,52 @@ public abstract class AbstractTuple implements Tuple {
 		this.eventId = eventId;
 	}
 	
+	/**
+	 * Opt-in for lazy payload deserialization, payload accessors of
+	 * implementations returning true must call {@link #materialize()}
+	 * 
+	 * @return true if the payload of remote tuples should be decoded on first
+	 *         access
+	 */
+	public boolean isLazyPayload() {
+		return false;
+	}
+
+	/**
+	 * Decode the serialized payload into the fields of this tuple, if it
+	 * hasn't been decoded yet
+	 */
+	protected void materialize() {
+		if (payload != null) {
+			byte[] bytes = payload;
+			payload = null;
+			TupleSerializer.readPayload(this, bytes);
+		}
+	}
+
+	/**
+	 * @return serialized payload or null if the payload has been decoded or
+	 *         the tuple wasn't received from another worker
+	 */
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	/**
+	 * Replace the payload with a serialized one, e.g. to forward the payload
+	 * of a received tuple without decoding it
+	 * 
+	 * @param payload
+	 */
+	public void setPayload(byte[] payload) {
+		this.payload = payload;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if(obj instanceof AbstractTuple) {
 			AbstractTuple tup = ((AbstractTuple)obj);
-			return eventId == tup.eventId;
+			return getTupleId() == tup.getTupleId();
 		}
 		return false;
 	}
@@ -15,8 +15,13 @@
  */
 package com.srotya.linea;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
 import com.srotya.linea.network.Router;
 import com.srotya.linea.tolerance.AckerBolt;
+import com.srotya.linea.utils.LongList;
 
 /**
  * A collector is responsible for gather events and acks that need to
@@ -34,12 +39,27 @@ import com.srotya.linea.tolerance.AckerBolt;
 public class Collector<E extends Tuple> {
 
 	public static final String FIELD_ACK_EVENT = "_ack";
+	private static final long BACKPRESSURE_PARK_NANOS = 100_000;
+	private static final int INITIAL_COALESCE_SIZE = 4;
 	private int lTaskId;
 	private String lComponentId;
+	private int componentId;
+	private int ackerId;
 	private TupleFactory<E> factory;
 	private Router<E> router;
 	private int workerId;
 	private int parallelism;
+	private volatile Thread handlerThread;
+	private boolean reliable;
+	private int maxPending;
+	private AtomicInteger pending;
+	private Thread processingThread;
+	private long[] coalescedOrigins;
+	private long[] coalescedXors;
+	private int[] coalescedComponents;
+	private int[] coalescedTaskIds;
+	private int coalescedCount;
+	private TuplePool<E> tuplePool;
 
 	/**
 	 * @param factory
@@ -51,9 +71,18 @@ public class Collector<E extends Tuple> {
 		this.factory = factory;
 		this.router = router;
 		this.lComponentId = lComponentId;
+		this.componentId = ComponentRegistry.getId(lComponentId);
+		this.ackerId = ComponentRegistry.getId(AckerBolt.ACKER_BOLT_NAME);
 		this.lTaskId = taskId;
 		this.parallelism = parallelism;
 		this.workerId = router.getSelfWorkerId();
+		this.pending = new AtomicInteger();
+		this.reliable = true;
+		this.coalescedOrigins = new long[INITIAL_COALESCE_SIZE];
+		this.coalescedXors = new long[INITIAL_COALESCE_SIZE];
+		this.coalescedComponents = new int[INITIAL_COALESCE_SIZE];
+		this.coalescedTaskIds = new int[INITIAL_COALESCE_SIZE];
+		this.tuplePool = new TuplePool<>(factory, Integer.parseInt(TuplePool.DEFAULT_TUPLE_POOL_SIZE));
 	}
 
 	/**
@@ -62,29 +91,91 @@ public class Collector<E extends Tuple> {
 	 * @param tuple
 	 */
 	public void ack(E tuple) {
-		for (Long sourceTupleId : tuple.getSourceIds()) {
-			ack(lComponentId, sourceTupleId, tuple.getTupleId(), lTaskId);
+		LongList sourceIds = tuple.getSourceIds();
+		for (int i = 0; i < sourceIds.size(); i++) {
+			coalesceAck(componentId, sourceIds.getLong(i), tuple.getTupleId(), lTaskId);
+		}
+	}
+
+	/**
+	 * Start coalescing acks, called by the executor on the bolt's thread
+	 * before a {@link Tuple} is processed. Until {@link #flushAcks()} every
+	 * ack and anchored emit made on this thread is XORed into a single update
+	 * per origin tuple instead of being sent to the acker individually.
+	 */
+	public void startCoalescing() {
+		processingThread = Thread.currentThread();
+	}
+
+	/**
+	 * Send the coalesced ack updates to the acker and stop coalescing
+	 */
+	public void flushAcks() {
+		processingThread = null;
+		for (int i = 0; i < coalescedCount; i++) {
+			// emitting and acking the same tuple cancels out
+			if (coalescedXors[i] != 0) {
+				ack(coalescedComponents[i], coalescedOrigins[i], coalescedXors[i], coalescedTaskIds[i]);
+			}
+		}
+		coalescedCount = 0;
+	}
+
+	/**
+	 * XOR this ack into the pending update for its origin tuple if called
+	 * while coalescing, otherwise send it right away.
+	 * 
+	 * @param spoutComponentId
+	 * @param sourceTupleId
+	 * @param currentTupleId
+	 * @param taskId
+	 */
+	protected void coalesceAck(int spoutComponentId, long sourceTupleId, long currentTupleId, int taskId) {
+		if (Thread.currentThread() != processingThread) {
+			ack(spoutComponentId, sourceTupleId, currentTupleId, taskId);
+			return;
+		}
+		for (int i = 0; i < coalescedCount; i++) {
+			if (coalescedOrigins[i] == sourceTupleId) {
+				coalescedXors[i] ^= currentTupleId;
+				return;
+			}
+		}
+		if (coalescedCount == coalescedOrigins.length) {
+			int size = coalescedCount * 2;
+			coalescedOrigins = Arrays.copyOf(coalescedOrigins, size);
+			coalescedXors = Arrays.copyOf(coalescedXors, size);
+			coalescedComponents = Arrays.copyOf(coalescedComponents, size);
+			coalescedTaskIds = Arrays.copyOf(coalescedTaskIds, size);
 		}
+		coalescedOrigins[coalescedCount] = sourceTupleId;
+		coalescedXors[coalescedCount] = currentTupleId;
+		coalescedComponents[coalescedCount] = spoutComponentId;
+		coalescedTaskIds[coalescedCount] = taskId;
+		coalescedCount++;
 	}
 
 	/**
-	 * Collector internal ack method.
+	 * Collector internal ack method. Ack tuples carry the origin tuple id as
+	 * their origin and the XOR update as their tuple id so that no boxed group
+	 * by key or value is needed, they are taken from the {@link TuplePool}
+	 * and recycled once routed.
 	 * 
-	 * @param spoutName
+	 * @param spoutComponentId
 	 * @param sourceTupleId
 	 * @param currentTupleId
 	 * @param taskId
 	 */
-	protected void ack(String spoutName, long sourceTupleId, long currentTupleId, int taskId) {
-		E ackTuple = factory.buildTuple();
+	protected void ack(int spoutComponentId, long sourceTupleId, long currentTupleId, int taskId) {
+		E ackTuple = tuplePool.acquire();
 		ackTuple.setOriginTupleId(sourceTupleId);
-		ackTuple.setAck(true); // for debug purposes
-		ackTuple.setGroupByKey(sourceTupleId);
-		ackTuple.setGroupByValue(currentTupleId);
-		ackTuple.setComponentName(spoutName);
+		ackTuple.setEventId(currentTupleId);
+		ackTuple.setAck(true);
+		ackTuple.setComponentId(spoutComponentId);
 		ackTuple.setTaskId(taskId);
-		ackTuple.setNextBoltId(AckerBolt.ACKER_BOLT_NAME);
+		ackTuple.setNextComponentId(ackerId);
 		router.routeTuple(ackTuple);
+		tuplePool.release(ackTuple);
 	}
 
 	/**
@@ -96,11 +187,157 @@ public class Collector<E extends Tuple> {
 	 * @param tuple
 	 */
 	public void spoutEmit(String nextProcessorId, E tuple) {
-		tuple.setComponentName(lComponentId);
+		awaitBackpressure();
+		if (reliable) {
+			acquirePending();
+		}
+		emitFromSpout(ComponentRegistry.getId(nextProcessorId), tuple);
+	}
+
+	/**
+	 * Non-blocking variant of {@link #spoutEmit(String, Tuple)} for Spouts that
+	 * would rather do other work than wait.
+	 * 
+	 * @param nextProcessorId
+	 * @param tuple
+	 * @return true if the tuple was emitted, false if the Spout is at
+	 *         {@link Topology#SPOUT_MAX_PENDING} or the topology is under
+	 *         backpressure
+	 */
+	public boolean trySpoutEmit(String nextProcessorId, E tuple) {
+		if (Thread.currentThread() != handlerThread && router.isThrottled()) {
+			return false;
+		}
+		if (reliable && !tryAcquirePending()) {
+			return false;
+		}
+		emitFromSpout(ComponentRegistry.getId(nextProcessorId), tuple);
+		return true;
+	}
+
+	private void emitFromSpout(int nextComponentId, E tuple) {
+		tuple.setComponentId(componentId);
 		tuple.setTaskId(lTaskId);
-		tuple.setOriginTupleId(tuple.getTupleId());
 		tuple.setSourceWorkerId(workerId);
-		emit(nextProcessorId, tuple, tuple);
+		if (!reliable) {
+			// at-most-once, no origin and no source ids so downstream emits
+			// and acks skip the acker too
+			tuple.setOriginTupleId(TupleIds.UNASSIGNED);
+			tuple.setNextComponentId(nextComponentId);
+			router.routeTuple(tuple);
+			return;
+		}
+		tuple.setOriginTupleId(tuple.getTupleId());
+		// the first ack registers the tree with the acker, it must reach the
+		// acker before the tuple does and is never coalesced
+		emit(nextComponentId, tuple, tuple, true);
+	}
+
+	/**
+	 * Hold the calling Spout thread while the {@link Router} reports
+	 * backpressure. Emits from the ring buffer thread of the Spout (e.g.
+	 * replays from fail) are never held since that thread must keep draining
+	 * acks for backpressure to clear.
+	 */
+	protected void awaitBackpressure() {
+		if (Thread.currentThread() == handlerThread) {
+			return;
+		}
+		while (router.isThrottled()) {
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			LockSupport.parkNanos(BACKPRESSURE_PARK_NANOS);
+		}
+	}
+
+	/**
+	 * Wait for a pending slot to free up. Emits from the ring buffer thread of
+	 * the Spout always get a slot since only that thread releases them.
+	 */
+	protected void acquirePending() {
+		if (maxPending <= 0) {
+			return;
+		}
+		if (Thread.currentThread() == handlerThread) {
+			pending.incrementAndGet();
+			return;
+		}
+		while (!tryAcquirePending()) {
+			if (Thread.currentThread().isInterrupted()) {
+				pending.incrementAndGet();
+				return;
+			}
+			LockSupport.parkNanos(BACKPRESSURE_PARK_NANOS);
+		}
+	}
+
+	/**
+	 * @return true if a pending slot was acquired
+	 */
+	protected boolean tryAcquirePending() {
+		if (maxPending <= 0) {
+			return true;
+		}
+		while (true) {
+			int current = pending.get();
+			if (current >= maxPending) {
+				return false;
+			}
+			if (pending.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Release a pending slot, called when the Spout receives an ack or fail
+	 * for a tuple tree
+	 */
+	public void releasePending() {
+		if (maxPending > 0) {
+			pending.updateAndGet(current -> current > 0 ? current - 1 : 0);
+		}
+	}
+
+	/**
+	 * @return number of un-acked tuple trees emitted by this Spout task
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+
+	/**
+	 * @return true if this Spout task's tuple trees are tracked by the acker
+	 */
+	public boolean isReliable() {
+		return reliable;
+	}
+
+	/**
+	 * @param reliable
+	 *            false to emit at-most-once, bypassing the acker
+	 */
+	public void setReliable(boolean reliable) {
+		this.reliable = reliable;
+	}
+
+	/**
+	 * @param maxPending
+	 *            maximum un-acked tuple trees for this Spout task, 0 for
+	 *            unbounded
+	 */
+	public void setMaxPending(int maxPending) {
+		this.maxPending = maxPending;
+	}
+
+	/**
+	 * @param handlerThread
+	 *            thread draining the ring buffer of this collector's
+	 *            bolt/spout
+	 */
+	public void setHandlerThread(Thread handlerThread) {
+		this.handlerThread = handlerThread;
 	}
 
 	/**
@@ -113,9 +350,21 @@ public class Collector<E extends Tuple> {
 	 * @param tuple
 	 */
 	public void emitDirect(String nextBolt, int destinationTaskId, E tuple) {
+		emitDirect(ComponentRegistry.getId(nextBolt), destinationTaskId, tuple);
+	}
+
+	/**
+	 * Emit {@link Tuple} directly to a task of the bolt with the supplied
+	 * {@link ComponentRegistry} id.
+	 * 
+	 * @param nextComponentId
+	 * @param destinationTaskId
+	 * @param tuple
+	 */
+	public void emitDirect(int nextComponentId, int destinationTaskId, E tuple) {
 		tuple.setTaskId(lTaskId);
-		tuple.setComponentName(lComponentId);
-		tuple.setNextBoltId(nextBolt);
+		tuple.setComponentId(componentId);
+		tuple.setNextComponentId(nextComponentId);
 		router.routeToTaskId(tuple, null, destinationTaskId);
 	}
 
@@ -127,13 +376,52 @@ public class Collector<E extends Tuple> {
 	 * @param anchorTuple
 	 */
 	public void emit(String nextProcessorId, E outputTuple, E anchorTuple) {
-		outputTuple.setOriginTupleId(anchorTuple.getOriginTupleId());
-		outputTuple.getSourceIds().add(anchorTuple.getOriginTupleId());
+		emit(ComponentRegistry.getId(nextProcessorId), outputTuple, anchorTuple, false);
+	}
+
+	/**
+	 * Emit anchored {@link Tuple} to the bolt with the supplied
+	 * {@link ComponentRegistry} id, saves the name lookup for bolts that
+	 * resolve the id once.
+	 * 
+	 * @param nextComponentId
+	 * @param outputTuple
+	 * @param anchorTuple
+	 */
+	public void emit(int nextComponentId, E outputTuple, E anchorTuple) {
+		emit(nextComponentId, outputTuple, anchorTuple, false);
+	}
+
+	/**
+	 * @param nextComponentId
+	 * @param outputTuple
+	 * @param anchorTuple
+	 *            may be the output tuple itself, e.g. a bolt relaying it's
+	 *            input
+	 * @param register
+	 *            the output tuple is the root of a new tree emitted by a
+	 *            reliable spout, the ack registering it is sent right away
+	 */
+	private void emit(int nextComponentId, E outputTuple, E anchorTuple, boolean register) {
+		// read the anchor before the output tuple is stamped with this
+		// component, they may be the same tuple
+		int anchorComponentId = anchorTuple.getComponentId();
+		int anchorTaskId = anchorTuple.getTaskId();
+		long originTupleId = anchorTuple.getOriginTupleId();
+		outputTuple.setOriginTupleId(originTupleId);
 		outputTuple.setTaskId(lTaskId);
-		outputTuple.setComponentName(lComponentId);
-		ack(anchorTuple.getComponentName(), anchorTuple.getOriginTupleId(), outputTuple.getTupleId(),
-				anchorTuple.getTaskId());
-		outputTuple.setNextBoltId(nextProcessorId);
+		outputTuple.setComponentId(componentId);
+		// an anchor without an origin was emitted by an unreliable spout,
+		// there is no tuple tree to track
+		if (register || originTupleId != TupleIds.UNASSIGNED) {
+			outputTuple.getSourceIds().addLong(originTupleId);
+			if (register) {
+				ack(anchorComponentId, originTupleId, outputTuple.getTupleId(), anchorTaskId);
+			} else {
+				coalesceAck(anchorComponentId, originTupleId, outputTuple.getTupleId(), anchorTaskId);
+			}
+		}
+		outputTuple.setNextComponentId(nextComponentId);
 		router.routeTuple(outputTuple);
 	}
 
@@ -144,6 +432,21 @@ public class Collector<E extends Tuple> {
 		return factory;
 	}
 
+	/**
+	 * @return pool of recycled tuples, a Spout may acquire the tuples it emits
+	 *         from it and release them once the emit returns
+	 */
+	public TuplePool<E> getTuplePool() {
+		return tuplePool;
+	}
+
+	/**
+	 * @param tuplePool
+	 */
+	public void setTuplePool(TuplePool<E> tuplePool) {
+		this.tuplePool = tuplePool;
+	}
+
 	/**
 	 * @return the lTaskId
 	 */
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.srotya.linea.network.BackpressureMonitor;
+import com.srotya.linea.network.CreditManager;
+
+/**
+ * Maps component names (bolts, spouts and system streams like tick tuples)
+ * to small integer ids so that {@link Tuple} headers carry ints and the hot
+ * path compares ints instead of Strings. Names are kept only to resolve ids
+ * back for logging and the String accessors of {@link Tuple}.<br>
+ * <br>
+ * Component ids are assigned once by {@link Topology#start()} from the
+ * ordered list of its components. The order is identical on every worker so
+ * ids are topology wide, they are the indexes of the routing tables of the
+ * {@link com.srotya.linea.network.Router} and go on the wire as they are.
+ * System streams that aren't components have fixed negative ids.
+ * 
+ * @author ambud
+ */
+public class ComponentRegistry {
+
+	public static final int NONE = -1;
+	private static final String[] SYSTEM_STREAMS = new String[] { Topology.TICK_TUPLE,
+			BackpressureMonitor.BACKPRESSURE_TUPLE, CreditManager.CREDIT_TUPLE };
+	private static volatile Components components = new Components(new String[0], new boolean[0]);
+
+	private ComponentRegistry() {
+	}
+
+	/**
+	 * Assign component ids of a topology, the id of a component is its
+	 * position in the list. Replaces previously registered components.
+	 * 
+	 * @param names
+	 *            component names in component id order
+	 * @param spouts
+	 *            names of the components that are spouts
+	 */
+	public static synchronized void register(List<String> names, Set<String> spouts) {
+		String[] componentNames = names.toArray(new String[names.size()]);
+		boolean[] componentSpouts = new boolean[componentNames.length];
+		for (int i = 0; i < componentNames.length; i++) {
+			componentSpouts[i] = spouts.contains(componentNames[i]);
+		}
+		components = new Components(componentNames, componentSpouts);
+	}
+
+	/**
+	 * Id of a component name
+	 * 
+	 * @param name
+	 * @return id or {@link #NONE} for a null or unknown name
+	 */
+	public static int getId(String name) {
+		if (name == null) {
+			return NONE;
+		}
+		Integer id = components.ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		for (int i = 0; i < SYSTEM_STREAMS.length; i++) {
+			if (SYSTEM_STREAMS[i].equals(name)) {
+				return NONE - 1 - i;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * @param id
+	 * @return name of the component or null for {@link #NONE} and unknown ids
+	 */
+	public static String getName(int id) {
+		String[] names = components.names;
+		if (id >= 0) {
+			return id < names.length ? names[id] : null;
+		}
+		int stream = NONE - 1 - id;
+		return stream >= 0 && stream < SYSTEM_STREAMS.length ? SYSTEM_STREAMS[stream] : null;
+	}
+
+	/**
+	 * @param id
+	 * @return true if the component is a spout
+	 */
+	public static boolean isSpout(int id) {
+		boolean[] spouts = components.spouts;
+		return id >= 0 && id < spouts.length && spouts[id];
+	}
+
+	/**
+	 * @return number of registered components
+	 */
+	public static int size() {
+		return components.names.length;
+	}
+
+	/**
+	 * Immutable id tables of the registered components, published with a
+	 * single volatile write
+	 */
+	private static class Components {
+
+		private String[] names;
+		private boolean[] spouts;
+		private Map<String, Integer> ids;
+
+		public Components(String[] names, boolean[] spouts) {
+			this.names = names;
+			this.spouts = spouts;
+			this.ids = new HashMap<>();
+			for (int i = 0; i < names.length; i++) {
+				ids.put(names[i], i);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import com.srotya.linea.disruptor.ROUTING_TYPE;
+import com.srotya.linea.processors.Bolt;
+
+/**
+ * Hashes the grouping key of a {@link Tuple} routed to a
+ * {@link ROUTING_TYPE#GROUPBY} {@link Bolt}. A bolt can supply its own
+ * hasher to combine several fields of a tuple without building a key object
+ * for them.<br>
+ * <br>
+ * The hasher is shared by all threads routing to the bolt so it must be
+ * stateless, and every worker must compute the same hash for the same key.
+ * 
+ * @author ambud
+ */
+@FunctionalInterface
+public interface KeyHasher<E extends Tuple> extends Serializable {
+
+	/**
+	 * @param tuple
+	 * @return hash of the tuple's grouping key
+	 */
+	public int hash(E tuple);
+
+	/**
+	 * Hash a group by key without converting it to a String where the type
+	 * allows: integral numbers are hashed as longs, {@link CharSequence}s by
+	 * their chars, byte[] and {@link ByteBuffer}s by their bytes and anything
+	 * else by its String form.
+	 * 
+	 * @param key
+	 * @return hash of the key
+	 */
+	public static int hashKey(Object key) {
+		if (key instanceof String) {
+			return MurmurHash.hash32Chars((String) key);
+		} else if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+			return MurmurHash.hash32(((Number) key).longValue());
+		} else if (key instanceof byte[]) {
+			byte[] bytes = (byte[]) key;
+			return MurmurHash.hash32(bytes, bytes.length);
+		} else if (key instanceof ByteBuffer) {
+			return MurmurHash.hash32((ByteBuffer) key);
+		} else if (key instanceof CharSequence) {
+			return MurmurHash.hash32Chars((CharSequence) key);
+		} else {
+			return MurmurHash.hash32Chars(key.toString());
+		}
+	}
+
+}
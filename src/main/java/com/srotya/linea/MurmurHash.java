@@ -1,5 +1,7 @@
 package com.srotya.linea;
 
+import java.nio.ByteBuffer;
+
 /** 
  * Murmur hash 2.0.
  * 
@@ -30,6 +32,19 @@ public final class MurmurHash {
 	 * @return 32 bit hash of the given array
 	 */
 	public static int hash32( final byte[] data, int length, int seed) {
+		return hash32( data, 0, length, seed);
+	}
+
+
+	/** Generates 32 bit hash from a slice of a byte array and seed.
+	 * 
+	 * @param data byte array to hash
+	 * @param offset index of the first byte to hash
+	 * @param length number of bytes to hash
+	 * @param seed initial seed value
+	 * @return 32 bit hash of the given slice
+	 */
+	public static int hash32( final byte[] data, int offset, int length, int seed) {
 		// 'm' and 'r' are mixing constants generated offline.
 		// They're not really 'magic', they just happen to work well.
 		final int m = 0x5bd1e995;
@@ -39,7 +54,7 @@ public final class MurmurHash {
 		int length4 = length/4;
 
 		for (int i=0; i<length4; i++) {
-			final int i4 = i*4;
+			final int i4 = offset + i*4;
 			int k = (data[i4+0]&0xff) +((data[i4+1]&0xff)<<8)
 					+((data[i4+2]&0xff)<<16) +((data[i4+3]&0xff)<<24);
 			k *= m;
@@ -50,18 +65,15 @@ public final class MurmurHash {
 		}
 		
 		// Handle the last few bytes of the input array
+		final int tail = offset + (length&~3);
 		switch (length%4) {
-		case 3: h ^= (data[(length&~3) +2]&0xff) << 16;
-		case 2: h ^= (data[(length&~3) +1]&0xff) << 8;
-		case 1: h ^= (data[length&~3]&0xff);
+		case 3: h ^= (data[tail +2]&0xff) << 16;
+		case 2: h ^= (data[tail +1]&0xff) << 8;
+		case 1: h ^= (data[tail]&0xff);
 				h *= m;
 		}
 
-		h ^= h >>> 13;
-		h *= m;
-		h ^= h >>> 15;
-
-		return h;
+		return fmix32( h);
 	}
 	
 
@@ -97,6 +109,164 @@ public final class MurmurHash {
 	public static int hash32( final String text, int from, int length) {
 		return hash32( text.substring( from, from+length));
 	}
+
+
+	/** Generates 32 bit hash from the remaining bytes of a buffer, the
+	 * buffer's position is not changed.
+	 * 
+	 * @param buffer buffer to hash
+	 * @return 32 bit hash of the bytes between position and limit
+	 */
+	public static int hash32( final ByteBuffer buffer) {
+		return hash32( buffer, buffer.position(), buffer.remaining(), 0x9747b28c);
+	}
+
+
+	/** Generates 32 bit hash from a slice of a buffer and seed, hashes the
+	 * same as the equivalent byte array slice regardless of byte order.
+	 * 
+	 * @param buffer buffer to hash
+	 * @param offset absolute index of the first byte to hash
+	 * @param length number of bytes to hash
+	 * @param seed initial seed value
+	 * @return 32 bit hash of the given slice
+	 */
+	public static int hash32( final ByteBuffer buffer, int offset, int length, int seed) {
+		if (buffer.hasArray()) {
+			return hash32( buffer.array(), buffer.arrayOffset()+offset, length, seed);
+		}
+		final int m = 0x5bd1e995;
+		final int r = 24;
+		int h = seed^length;
+		int length4 = length/4;
+
+		for (int i=0; i<length4; i++) {
+			final int i4 = offset + i*4;
+			int k = (buffer.get(i4+0)&0xff) +((buffer.get(i4+1)&0xff)<<8)
+					+((buffer.get(i4+2)&0xff)<<16) +((buffer.get(i4+3)&0xff)<<24);
+			k *= m;
+			k ^= k >>> r;
+			k *= m;
+			h *= m;
+			h ^= k;
+		}
+
+		final int tail = offset + (length&~3);
+		switch (length%4) {
+		case 3: h ^= (buffer.get(tail +2)&0xff) << 16;
+		case 2: h ^= (buffer.get(tail +1)&0xff) << 8;
+		case 1: h ^= (buffer.get(tail)&0xff);
+				h *= m;
+		}
+
+		return fmix32( h);
+	}
+
+
+	/** Generates 32 bit hash from the chars of a sequence without encoding
+	 * it, same as hashing its UTF-16LE bytes.
+	 * 
+	 * @param text chars to hash
+	 * @return 32 bit hash of the given chars
+	 */
+	public static int hash32Chars( final CharSequence text) {
+		return hash32Chars( text, 0, text.length(), 0x9747b28c);
+	}
+
+
+	/** Generates 32 bit hash from a range of chars and seed without encoding
+	 * them, same as hashing their UTF-16LE bytes.
+	 * 
+	 * @param text chars to hash
+	 * @param from index of the first char
+	 * @param length number of chars to hash
+	 * @param seed initial seed value
+	 * @return 32 bit hash of the given chars
+	 */
+	public static int hash32Chars( final CharSequence text, int from, int length, int seed) {
+		final int m = 0x5bd1e995;
+		final int r = 24;
+		int h = seed^(length*2);
+		int length2 = length/2;
+
+		// two chars make a four byte block
+		for (int i=0; i<length2; i++) {
+			final int i2 = from + i*2;
+			int k = text.charAt(i2) | (text.charAt(i2+1) << 16);
+			k *= m;
+			k ^= k >>> r;
+			k *= m;
+			h *= m;
+			h ^= k;
+		}
+
+		if ((length&1) != 0) {
+			h ^= text.charAt(from+length-1);
+			h *= m;
+		}
+
+		return fmix32( h);
+	}
+
+
+	/** Generates 32 bit hash from a long, same as hashing its 8 little
+	 * endian bytes.
+	 * 
+	 * @param value long to hash
+	 * @return 32 bit hash of the given long
+	 */
+	public static int hash32( long value) {
+		final int m = 0x5bd1e995;
+		final int r = 24;
+		int h = 0x9747b28c^8;
+
+		int k = (int) value;
+		k *= m;
+		k ^= k >>> r;
+		k *= m;
+		h *= m;
+		h ^= k;
+
+		k = (int) (value >>> 32);
+		k *= m;
+		k ^= k >>> r;
+		k *= m;
+		h *= m;
+		h ^= k;
+
+		return fmix32( h);
+	}
+
+
+	/** Generates 32 bit hash from an int, same as hashing its 4 little
+	 * endian bytes.
+	 * 
+	 * @param value int to hash
+	 * @return 32 bit hash of the given int
+	 */
+	public static int hash32( int value) {
+		final int m = 0x5bd1e995;
+		final int r = 24;
+		int h = 0x9747b28c^4;
+
+		int k = value;
+		k *= m;
+		k ^= k >>> r;
+		k *= m;
+		h *= m;
+		h ^= k;
+
+		return fmix32( h);
+	}
+
+
+	private static int fmix32( int h) {
+		final int m = 0x5bd1e995;
+		h ^= h >>> 13;
+		h *= m;
+		h ^= h >>> 15;
+		return h;
+	}
 	
 
 	/** Generates 64 bit hash from byte array of the given length and seed.
@@ -20,18 +20,26 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.logging.Logger;
 
 import com.srotya.linea.clustering.Columbus;
 import com.srotya.linea.disruptor.CopyTranslator;
+import com.srotya.linea.disruptor.ROUTING_TYPE;
+import com.srotya.linea.network.KryoCodec;
 import com.srotya.linea.network.Router;
 import com.srotya.linea.processors.Bolt;
 import com.srotya.linea.processors.BoltExecutor;
 import com.srotya.linea.processors.Spout;
+import com.srotya.linea.processors.TickScheduler;
 import com.srotya.linea.tolerance.AckerBolt;
 
 /**
@@ -44,6 +52,7 @@ import com.srotya.linea.tolerance.AckerBolt;
  */
 public class Topology<E extends Tuple> {
 
+	private static final Logger logger = Logger.getLogger(Topology.class.getName());
 	public static final String DEFAULT_ACKER_PARALLELISM = "1";
 	public static final String DEFAULT_DATA_PORT = "5000";
 	public static final String ACKER_PARALLELISM = "acker.parallelism";
@@ -58,18 +67,63 @@ public class Topology<E extends Tuple> {
 	private int workerCount;
 	private int ackerCount;
 	private ExecutorService backgroundServices;
+	private TickScheduler tickScheduler;
 	public static final String WORKER_DATA_PORT = "worker.data.port";
 	public static final String WORKER_BIND_ADDRESS = "worker.data.bindAddress";
 	public static final String DEFAULT_BIND_ADDRESS = "localhost";
+	/**
+	 * Number of outbound rings and client threads, destination workers are
+	 * spread across them. Defaults to one per destination worker.
+	 */
 	public static final Object CLIENT_THREAD_COUNT = "client.thread.count";
 	public static final String TICK_TUPLE = "_tick";
+	public static final int TICK_TUPLE_ID = ComponentRegistry.getId(TICK_TUPLE);
 	private Class<E> classOf;
 	public static final String TICK_TUPLE_FREQUENCY = "tick.tuple.frequency";
+	/**
+	 * Tick tuples of all tasks on a worker are driven by a single timer wheel
+	 * with this resolution in milliseconds, the first tick of each task is
+	 * delayed by a random jitter of up to tick.jitter.ms to spread tasks that
+	 * share a frequency.
+	 */
+	public static final String TICK_RESOLUTION = "tick.resolution.ms";
+	public static final String DEFAULT_TICK_RESOLUTION = "1";
+	public static final String TICK_JITTER = "tick.jitter.ms";
+	public static final String DEFAULT_TICK_JITTER = "0";
+	/**
+	 * Ring buffer size and wait strategy, can be overridden per bolt by
+	 * prefixing the key with the bolt name e.g. printerBolt.ring.size or for
+	 * outbound network traffic with network. e.g. network.wait.strategy
+	 */
+	public static final String RING_SIZE = "ring.size";
+	public static final String DEFAULT_RING_SIZE = "8192";
+	public static final String WAIT_STRATEGY = "wait.strategy";
+	public static final String DEFAULT_WAIT_STRATEGY = "YIELDING";
+	/**
+	 * Maximum number of un-acked tuple trees per spout task, can be
+	 * overridden per spout e.g. SpouttestSpout.spout.max.pending. 0 means
+	 * unbounded.
+	 */
+	public static final String SPOUT_MAX_PENDING = "spout.max.pending";
+	public static final String DEFAULT_SPOUT_MAX_PENDING = "0";
+	/**
+	 * Unreliable spouts (at-most-once) emit untracked tuples that never
+	 * generate ack traffic, can be overridden per spout e.g.
+	 * SpouttestSpout.spout.reliable
+	 */
+	public static final String SPOUT_RELIABLE = "spout.reliable";
+	public static final String DEFAULT_SPOUT_RELIABLE = "true";
 
 	/**
 	 * Constructor with configuration properties
 	 * 
 	 * @param conf
+	 * @param factory
+	 * @param translator
+	 *            copies tuples into ring buffers, pass a
+	 *            {@link com.srotya.linea.disruptor.MoveTranslator} to hand
+	 *            published tuples over without copying
+	 * @param classOf
 	 * @throws Exception
 	 */
 	public Topology(Map<String, String> conf, TupleFactory<E> factory, CopyTranslator<E> translator, Class<E> classOf)
@@ -87,12 +141,14 @@ public class Topology<E extends Tuple> {
 	 * @throws Exception
 	 */
 	protected void init() throws Exception {
+		TupleIds.configure(conf);
 		executorMap = new LinkedHashMap<>();
 		ackerCount = Integer.parseInt(conf.getOrDefault(ACKER_PARALLELISM, DEFAULT_ACKER_PARALLELISM));
 		columbus = new Columbus(conf);
 		workerCount = Integer.parseInt(conf.getOrDefault(WORKER_COUNT, DEFAULT_ACKER_PARALLELISM));
 		router = new Router<E>(classOf, factory, columbus, workerCount, executorMap, conf, translator);
 		backgroundServices = Executors.newFixedThreadPool(1);
+		tickScheduler = TickScheduler.fromConf(conf);
 	}
 
 	/**
@@ -121,10 +177,90 @@ public class Topology<E extends Tuple> {
 		byte[] serializeBoltInstance = serializeBoltInstance(bolt);
 		BoltExecutor<E> boltExecutor = new BoltExecutor<E>(conf, factory, serializeBoltInstance, columbus, parallelism,
 				router, translator);
+		boltExecutor.setTickScheduler(tickScheduler);
 		executorMap.put(boltExecutor.getTemplateBoltInstance().getBoltName(), boltExecutor);
 		return this;
 	}
 
+	/**
+	 * Add Bolt that receives tuples only from the supplied upstream bolt. The
+	 * two bolts are fused i.e. the upstream task invokes this bolt directly on
+	 * its own thread, saving a ring buffer hop, a tuple copy and a thread
+	 * handoff. The bolt gets the parallelism of the upstream bolt.<br>
+	 * <br>
+	 * An edge is chainable when the upstream is a regular bolt (not a
+	 * {@link Spout}) that isn't chained itself and this bolt uses
+	 * {@link ROUTING_TYPE#SHUFFLE} without tick tuples. A chained bolt must not
+	 * be emitted to by any other bolt, tuples aren't checked for it at
+	 * runtime.
+	 * 
+	 * @param bolt
+	 * @param upstreamBoltName
+	 * @return topology builder
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws IllegalArgumentException
+	 *             if the bolt can't be chained to the upstream bolt
+	 */
+	public Topology<E> chainBolt(Bolt<E> bolt, String upstreamBoltName) throws IOException, ClassNotFoundException {
+		BoltExecutor<E> upstream = executorMap.get(upstreamBoltName);
+		if (upstream == null) {
+			throw new IllegalArgumentException("Upstream bolt not found:" + upstreamBoltName);
+		}
+		if (executorMap.containsKey(bolt.getBoltName())) {
+			throw new IllegalArgumentException("Bolt " + bolt.getBoltName() + " already added, can't be chained to "
+					+ upstreamBoltName);
+		}
+		if (!isChainable(upstream, bolt, upstream.getParallelism())) {
+			throw new IllegalArgumentException("Bolt " + bolt.getBoltName() + " can't be chained to " + upstreamBoltName);
+		}
+		addBolt(bolt, upstream.getParallelism());
+		executorMap.get(bolt.getBoltName()).setChainedTo(upstreamBoltName);
+		logger.info("Chained bolt " + bolt.getBoltName() + " to " + upstreamBoltName);
+		return this;
+	}
+
+	/**
+	 * Check if downstream bolt can be fused with the upstream executor
+	 * 
+	 * @param upstream
+	 * @param downstreamBolt
+	 * @param downstreamParallelism
+	 * @return true if chainable
+	 */
+	protected boolean isChainable(BoltExecutor<E> upstream, Bolt<E> downstreamBolt, int downstreamParallelism) {
+		Bolt<E> upstreamBolt = upstream.getTemplateBoltInstance();
+		// spouts may emit from any number of user threads
+		if (upstreamBolt instanceof Spout || downstreamBolt instanceof Spout || upstream.isChained()) {
+			return false;
+		}
+		return upstream.getParallelism() == downstreamParallelism
+				&& downstreamBolt.getRoutingType() == ROUTING_TYPE.SHUFFLE && downstreamBolt.tickTupleFrequency() <= 0;
+	}
+
+	/**
+	 * Check that every chained bolt still has its upstream bolt and can be
+	 * fused with it, the upstream may have been replaced since the bolt was
+	 * chained
+	 * 
+	 * @throws IllegalStateException
+	 *             if a chained bolt can't be fused with its upstream bolt
+	 */
+	protected void validateChains() {
+		for (Entry<String, BoltExecutor<E>> entry : executorMap.entrySet()) {
+			BoltExecutor<E> executor = entry.getValue();
+			if (!executor.isChained()) {
+				continue;
+			}
+			BoltExecutor<E> upstream = executorMap.get(executor.getChainedTo());
+			if (upstream == null
+					|| !isChainable(upstream, executor.getTemplateBoltInstance(), executor.getParallelism())) {
+				throw new IllegalStateException(
+						"Bolt " + entry.getKey() + " can't be chained to " + executor.getChainedTo());
+			}
+		}
+	}
+
 	/**
 	 * Deserialize bolt instance from the byte array
 	 * 
@@ -163,6 +299,8 @@ public class Topology<E extends Tuple> {
 	 * @throws Exception
 	 */
 	public Topology<E> start() throws Exception {
+		// fail before anything is started
+		validateChains();
 		final Topology<E> self = this;
 		// attach shutdown hook to gracefully stop topology
 		Runtime.getRuntime().addShutdownHook(new Thread() {
@@ -176,18 +314,48 @@ public class Topology<E extends Tuple> {
 				}
 			}
 		});
-		// attach acker bolt
-		addBolt(new AckerBolt<E>(), ackerCount);
+		// attach acker bolt unless no spout needs tuple tracking
+		if (hasReliableSpout()) {
+			addBolt(new AckerBolt<E>(), ackerCount);
+		} else {
+			logger.info("All spouts are unreliable, acker bolt not attached");
+		}
+		// compile bolt names into dense component ids, insertion order is
+		// identical on every worker so ids agree across the cluster and go
+		// on the wire as they are
+		int componentId = 0;
+		List<String> componentNames = new ArrayList<>();
+		Set<String> spoutNames = new HashSet<>();
+		for (Entry<String, BoltExecutor<E>> entry : executorMap.entrySet()) {
+			entry.getValue().setComponentId(componentId++);
+			componentNames.add(entry.getKey());
+			if (entry.getValue().getTemplateBoltInstance() instanceof Spout) {
+				spoutNames.add(entry.getKey());
+			}
+		}
+		ComponentRegistry.register(componentNames, spoutNames);
+		// register tuple classes
+		KryoCodec.configure(conf, classOf);
 		// start columbus
 		backgroundServices.submit(() -> columbus.run());
 		// start router
 		router.start();
+		// the worker has registered by now, tuple ids embed its worker id
+		TupleIds.getGenerator().setWorkerId(columbus.getSelfWorkerId());
+		// start tick tuple wheel
+		tickScheduler.start();
 		// start each bolt executor
 		for (Entry<String, BoltExecutor<E>> entry : executorMap.entrySet()) {
 			if (!(entry.getValue().getTemplateBoltInstance() instanceof Spout)) {
 				entry.getValue().start();
 			}
 		}
+		// link chained bolts to their upstream tasks before any spout emits
+		for (Entry<String, BoltExecutor<E>> entry : executorMap.entrySet()) {
+			if (entry.getValue().isChained()) {
+				executorMap.get(entry.getValue().getChainedTo()).chain(entry.getValue());
+			}
+		}
 		for (Entry<String, BoltExecutor<E>> entry : executorMap.entrySet()) {
 			if (entry.getValue().getTemplateBoltInstance() instanceof Spout) {
 				entry.getValue().start();
@@ -196,6 +364,19 @@ public class Topology<E extends Tuple> {
 		return this;
 	}
 
+	/**
+	 * @return true if any spout of this topology tracks its tuple trees
+	 */
+	protected boolean hasReliableSpout() {
+		for (Entry<String, BoltExecutor<E>> entry : executorMap.entrySet()) {
+			Bolt<E> bolt = entry.getValue().getTemplateBoltInstance();
+			if (bolt instanceof Spout && ((Spout<E>) bolt).isReliable(conf)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Stop this topology
 	 * 
@@ -207,6 +388,7 @@ public class Topology<E extends Tuple> {
 		for (Entry<String, BoltExecutor<E>> entry : executorMap.entrySet()) {
 			entry.getValue().stop();
 		}
+		tickScheduler.stop();
 		// stop router
 		router.stop();
 		return this;
@@ -15,7 +15,7 @@
  */
 package com.srotya.linea;
 
-import java.util.List;
+import com.srotya.linea.utils.LongList;
 
 /**
  * Unit of data transmission and processing in Linea, equivalent of a Storm
@@ -42,6 +42,13 @@ public interface Tuple {
 
 	public void setNextBoltId(String nextBoltId);
 
+	/**
+	 * @return {@link ComponentRegistry} id of the next bolt
+	 */
+	public int getNextComponentId();
+
+	public void setNextComponentId(int componentId);
+
 	public int getDestinationTaskId();
 
 	public void setDestinationTaskId(int taskId);
@@ -62,7 +69,15 @@ public interface Tuple {
 
 	public void setComponentName(String componentName);
 
-	public List<Long> getSourceIds();
+	/**
+	 * @return {@link ComponentRegistry} id of the component that emitted this
+	 *         tuple
+	 */
+	public int getComponentId();
+
+	public void setComponentId(int componentId);
+
+	public LongList getSourceIds();
 
 	public void setOriginTupleId(long eventId);
 
@@ -70,6 +85,18 @@ public interface Tuple {
 
 	public void setSourceWorkerId(int workerId);
 
+	/**
+	 * @return id of the worker whose spout emitted the tuple tree this tuple
+	 *         belongs to
+	 */
 	public int getSourceWorkerId();
 
+	public void setSenderWorkerId(int workerId);
+
+	/**
+	 * @return id of the worker that sent this tuple over the network on its
+	 *         last hop, used for credit accounting between workers
+	 */
+	public int getSenderWorkerId();
+
 }
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea;
+
+import java.util.Map;
+
+/**
+ * Generates the ids of new {@link Tuple}s. Ids are XORed together by the
+ * acker to track tuple trees and used for SHUFFLE routing, so they must look
+ * random in every bit even if they are derived from a counter. The
+ * generator in use is configured with {@link TupleIds#TUPLE_ID_GENERATOR}.
+ * 
+ * @author ambud
+ */
+public interface TupleIdGenerator {
+
+	/**
+	 * Called once before any id is generated
+	 * 
+	 * @param conf
+	 */
+	public default void configure(Map<String, String> conf) {
+	}
+
+	/**
+	 * Called once the worker has registered with the cluster and before any
+	 * task starts, the id is assigned by the cluster keeper unless it's
+	 * configured
+	 * 
+	 * @param workerId
+	 */
+	public default void setWorkerId(int workerId) {
+	}
+
+	/**
+	 * Called on the thread of a task before it generates ids, lets the
+	 * generator record which task generates on which thread
+	 * 
+	 * @param componentId
+	 * @param taskId
+	 */
+	public default void bind(int componentId, int taskId) {
+	}
+
+	/**
+	 * Called on the generating thread, must be thread safe
+	 * 
+	 * @return next tuple id
+	 */
+	public long nextId();
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea;
+
+import java.util.Map;
+
+import com.srotya.linea.tolerance.StructuredTupleIdGenerator;
+
+/**
+ * Worker wide {@link TupleIdGenerator} used by {@link AbstractTuple} to
+ * assign ids to new tuples when their id is first read.
+ * 
+ * @author ambud
+ */
+public class TupleIds {
+
+	/**
+	 * {@link TupleIdGenerator} class name
+	 */
+	public static final String TUPLE_ID_GENERATOR = "tuple.id.generator";
+	public static final String DEFAULT_TUPLE_ID_GENERATOR = StructuredTupleIdGenerator.class.getName();
+	/**
+	 * Id of a tuple that hasn't been given one yet, never generated
+	 */
+	public static final long UNASSIGNED = 0;
+	private static volatile TupleIdGenerator generator = new StructuredTupleIdGenerator();
+
+	private TupleIds() {
+	}
+
+	/**
+	 * Install the generator configured for a topology
+	 * 
+	 * @param conf
+	 * @throws ReflectiveOperationException
+	 *             if the generator can't be instantiated
+	 */
+	public static void configure(Map<String, String> conf) throws ReflectiveOperationException {
+		TupleIdGenerator configured = (TupleIdGenerator) Class
+				.forName(conf.getOrDefault(TUPLE_ID_GENERATOR, DEFAULT_TUPLE_ID_GENERATOR)).newInstance();
+		configured.configure(conf);
+		generator = configured;
+	}
+
+	/**
+	 * @return next tuple id, never {@link #UNASSIGNED}
+	 */
+	public static long next() {
+		long id;
+		do {
+			id = generator.nextId();
+		} while (id == UNASSIGNED);
+		return id;
+	}
+
+	/**
+	 * @return generator in use
+	 */
+	public static TupleIdGenerator getGenerator() {
+		return generator;
+	}
+
+	/**
+	 * @param generator
+	 */
+	public static void setGenerator(TupleIdGenerator generator) {
+		TupleIds.generator = generator;
+	}
+
+}
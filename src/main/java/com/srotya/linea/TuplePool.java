@@ -0,0 +1,115 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea;
+
+import java.util.ArrayDeque;
+
+/**
+ * Per-thread pool of {@link Tuple}s. Publishing a tuple into a ring buffer
+ * copies it into a preallocated slot, so once {@link Collector} or the
+ * {@link com.srotya.linea.network.Router} returns, the published instance
+ * can be recycled instead of being left for the garbage collector.<br>
+ * <br>
+ * Every thread has its own free list so acquire and release never contend,
+ * a tuple should be released on the thread that acquired it. Tuples emitted
+ * to a chained bolt are processed on the emitting thread, a chained bolt that
+ * holds on to its input after processing must not be fed pooled tuples.
+ * 
+ * @author ambud
+ */
+public class TuplePool<E extends Tuple> {
+
+	public static final String TUPLE_POOL_SIZE = "tuple.pool.size";
+	public static final String DEFAULT_TUPLE_POOL_SIZE = "256";
+	private TupleFactory<E> factory;
+	private int capacity;
+	private ThreadLocal<ArrayDeque<E>> pools;
+
+	/**
+	 * @param factory
+	 *            to build tuples when the pool of the calling thread is empty
+	 * @param capacity
+	 *            maximum free tuples held per thread
+	 */
+	public TuplePool(TupleFactory<E> factory, int capacity) {
+		this.factory = factory;
+		this.capacity = capacity;
+		this.pools = ThreadLocal.withInitial(() -> new ArrayDeque<>(Math.max(1, capacity)));
+	}
+
+	/**
+	 * Take a tuple from the pool of the calling thread, a new tuple is built
+	 * if the pool is empty. Recycled tuples are handed out without a tuple id,
+	 * a fresh one is drawn when it's first read, and with no routing
+	 * information.
+	 * 
+	 * @return tuple
+	 */
+	public E acquire() {
+		E tuple = pools.get().pollLast();
+		if (tuple == null) {
+			return factory.buildTuple();
+		}
+		tuple.setEventId(TupleIds.UNASSIGNED);
+		return tuple;
+	}
+
+	/**
+	 * Return a published tuple to the pool of the calling thread. Payload
+	 * fields of the concrete tuple are not reset, they are expected to be
+	 * overwritten by the next user.
+	 * 
+	 * @param tuple
+	 */
+	public void release(E tuple) {
+		ArrayDeque<E> pool = pools.get();
+		if (pool.size() < capacity) {
+			reset(tuple);
+			pool.addLast(tuple);
+		}
+	}
+
+	/**
+	 * @return free tuples held by the calling thread
+	 */
+	public int size() {
+		return pools.get().size();
+	}
+
+	/**
+	 * Clear the header of a tuple
+	 * 
+	 * @param tuple
+	 */
+	public static void reset(Tuple tuple) {
+		tuple.getSourceIds().clear();
+		tuple.setOriginTupleId(0);
+		tuple.setSourceWorkerId(-1);
+		tuple.setSenderWorkerId(-1);
+		tuple.setGroupByKey(null);
+		tuple.setGroupByValue(null);
+		tuple.setNextComponentId(ComponentRegistry.NONE);
+		tuple.setDestinationTaskId(0);
+		tuple.setTaskId(0);
+		tuple.setDestinationWorkerId(0);
+		tuple.setComponentId(ComponentRegistry.NONE);
+		tuple.setAck(false);
+		if (tuple instanceof AbstractTuple) {
+			((AbstractTuple) tuple).setPayload(null);
+		}
+	}
+
+}
@@ -17,10 +17,17 @@ package com.srotya.linea.disruptor;
 
 import com.lmax.disruptor.EventTranslatorOneArg;
 import com.lmax.disruptor.RingBuffer;
+import com.srotya.linea.AbstractTuple;
 import com.srotya.linea.Tuple;
 
 /**
- * Translator used by Disruptor to copy events into a {@link RingBuffer}
+ * Translator used by Disruptor to copy events into a {@link RingBuffer}. The
+ * serialized payload of an {@link AbstractTuple} that hasn't been decoded is
+ * handed over as is, {@link #translate(Tuple, long, Tuple)} is only called to
+ * copy decoded payloads. <br>
+ * <br>
+ * Copying leaves the published tuple untouched so it can be reused by the
+ * caller, use {@link MoveTranslator} to hand ownership over instead.
  * 
  * @author ambud
  */
@@ -28,20 +35,38 @@ public abstract class CopyTranslator<E extends Tuple> implements EventTranslator
 	
 	@Override
 	public void translateTo(E outputTuple, long sequence, E inputTuple) {
-		outputTuple.getSourceIds().clear();
-		outputTuple.getSourceIds().addAll(inputTuple.getSourceIds());
+		outputTuple.getSourceIds().copyFrom(inputTuple.getSourceIds());
+		copyHeader(outputTuple, inputTuple);
+		if (outputTuple instanceof AbstractTuple) {
+			byte[] payload = inputTuple instanceof AbstractTuple ? ((AbstractTuple) inputTuple).getPayload() : null;
+			((AbstractTuple) outputTuple).setPayload(payload);
+			if (payload != null) {
+				// payload hasn't been decoded, hand over the bytes instead
+				return;
+			}
+		}
+		translate(outputTuple, sequence, inputTuple);
+	}
+
+	/**
+	 * Copy the routing header, except for the source ids, of a {@link Tuple}
+	 * 
+	 * @param outputTuple
+	 * @param inputTuple
+	 */
+	protected static void copyHeader(Tuple outputTuple, Tuple inputTuple) {
 		outputTuple.setEventId(inputTuple.getTupleId());
 		outputTuple.setSourceWorkerId(inputTuple.getSourceWorkerId());
+		outputTuple.setSenderWorkerId(inputTuple.getSenderWorkerId());
 		outputTuple.setOriginTupleId(inputTuple.getOriginTupleId());
 		outputTuple.setGroupByKey(inputTuple.getGroupByKey());
 		outputTuple.setGroupByValue(inputTuple.getGroupByValue());
-		outputTuple.setNextBoltId(inputTuple.getNextBoltId());
+		outputTuple.setNextComponentId(inputTuple.getNextComponentId());
 		outputTuple.setDestinationTaskId(inputTuple.getDestinationTaskId());
 		outputTuple.setTaskId(inputTuple.getTaskId());
 		outputTuple.setDestinationWorkerId(inputTuple.getDestinationWorkerId());
-		outputTuple.setComponentName(inputTuple.getComponentName());
+		outputTuple.setComponentId(inputTuple.getComponentId());
 		outputTuple.setAck(inputTuple.isAck());
-		translate(outputTuple, sequence, inputTuple);
 	}
 
 	protected abstract void translate(E outputEvent, long sequence, E inputEvent);
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.disruptor;
+
+import com.lmax.disruptor.RingBuffer;
+import com.srotya.linea.AbstractTuple;
+import com.srotya.linea.Tuple;
+
+/**
+ * Translator that moves a published {@link Tuple} into a {@link RingBuffer}
+ * slot instead of copying it. The source id list is swapped with the one of
+ * the slot, a serialized payload is handed over and
+ * {@link #move(Tuple, Tuple)} transfers the payload fields by reference, so
+ * publishing costs the same however wide the tuple is.<br>
+ * <br>
+ * Ownership passes to the ring: once published the tuple must not be read or
+ * emitted again by the caller, it may only be recycled. A Spout that keeps
+ * the tuples it emitted (e.g. to replay them on fail) or a bolt that reuses
+ * its output tuples must use {@link CopyTranslator}.
+ * 
+ * @author ambud
+ */
+public abstract class MoveTranslator<E extends Tuple> extends CopyTranslator<E> {
+
+	@Override
+	public void translateTo(E outputTuple, long sequence, E inputTuple) {
+		outputTuple.getSourceIds().swap(inputTuple.getSourceIds());
+		inputTuple.getSourceIds().clear();
+		copyHeader(outputTuple, inputTuple);
+		if (outputTuple instanceof AbstractTuple) {
+			byte[] payload = null;
+			if (inputTuple instanceof AbstractTuple) {
+				payload = ((AbstractTuple) inputTuple).getPayload();
+				((AbstractTuple) inputTuple).setPayload(null);
+			}
+			((AbstractTuple) outputTuple).setPayload(payload);
+			if (payload != null) {
+				// payload hasn't been decoded, the bytes are all there is
+				return;
+			}
+		}
+		move(outputTuple, inputTuple);
+	}
+
+	@Override
+	protected final void translate(E outputEvent, long sequence, E inputEvent) {
+		move(outputEvent, inputEvent);
+	}
+
+	/**
+	 * Transfer the payload fields of the published tuple to the slot by
+	 * assigning references, swapping them lets the caller recycle the
+	 * containers the slot held before.
+	 * 
+	 * @param outputTuple
+	 *            ring buffer slot
+	 * @param inputTuple
+	 *            published tuple
+	 */
+	protected abstract void move(E outputTuple, E inputTuple);
+
+}
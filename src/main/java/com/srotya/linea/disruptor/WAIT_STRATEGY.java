@@ -0,0 +1,60 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.disruptor;
+
+import java.util.concurrent.TimeUnit;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.PhasedBackoffWaitStrategy;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+
+/**
+ * Disruptor wait strategies that can be configured for ring buffers, ordered
+ * from the least CPU hungry to the lowest latency.
+ * 
+ * @author ambud
+ */
+public enum WAIT_STRATEGY {
+
+	BLOCKING, SLEEPING, PHASED_BACKOFF, YIELDING, BUSY_SPIN;
+
+	/**
+	 * Build a new {@link WaitStrategy} instance, instances are not shared
+	 * between ring buffers.
+	 * 
+	 * @return wait strategy
+	 */
+	public WaitStrategy build() {
+		switch (this) {
+		case BLOCKING:
+			return new BlockingWaitStrategy();
+		case SLEEPING:
+			return new SleepingWaitStrategy();
+		case PHASED_BACKOFF:
+			// spin for 1ms, yield for 1ms and then fall back to blocking
+			return PhasedBackoffWaitStrategy.withLock(1, 1, TimeUnit.MILLISECONDS);
+		case BUSY_SPIN:
+			return new BusySpinWaitStrategy();
+		case YIELDING:
+		default:
+			return new YieldingWaitStrategy();
+		}
+	}
+
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.lmax.disruptor.EventFactory;
+import com.srotya.linea.ComponentRegistry;
+import com.srotya.linea.Tuple;
+import com.srotya.linea.clustering.Columbus;
+import com.srotya.linea.processors.BoltExecutor;
+import com.srotya.linea.processors.Spout;
+
+/**
+ * Samples the ring buffer occupancy of every {@link BoltExecutor} on this
+ * worker and raises backpressure once a ring crosses the high watermark,
+ * releasing it when all rings have drained below the low watermark. <br>
+ * <br>
+ * Backpressure state is broadcast to every other worker as a control
+ * {@link Tuple} so that {@link Spout}s cluster-wide throttle their emission
+ * instead of blocking inside a full ring. State received from a remote worker
+ * expires unless it is refreshed, so a lost release signal can't throttle
+ * spouts indefinitely.
+ * 
+ * @author ambud
+ */
+public class BackpressureMonitor<E extends Tuple> implements Runnable {
+
+	public static final String BACKPRESSURE_TUPLE = "_backpressure";
+	public static final int BACKPRESSURE_TUPLE_ID = ComponentRegistry.getId(BACKPRESSURE_TUPLE);
+	public static final String BACKPRESSURE_ENABLED = "backpressure.enabled";
+	public static final String DEFAULT_BACKPRESSURE_ENABLED = "true";
+	public static final String HIGH_WATERMARK = "backpressure.high.watermark";
+	public static final String DEFAULT_HIGH_WATERMARK = "0.8";
+	public static final String LOW_WATERMARK = "backpressure.low.watermark";
+	public static final String DEFAULT_LOW_WATERMARK = "0.4";
+	public static final String CHECK_INTERVAL = "backpressure.check.interval";
+	public static final String DEFAULT_CHECK_INTERVAL = "100";
+	private static final Logger logger = Logger.getLogger(BackpressureMonitor.class.getName());
+	private static final int REMOTE_EXPIRY_INTERVALS = 10;
+	private Router<E> router;
+	private Columbus columbus;
+	private EventFactory<E> factory;
+	private BoltExecutor<E>[] executors;
+	private double highWatermark;
+	private double lowWatermark;
+	private long checkInterval;
+	private volatile boolean localThrottled;
+	private Map<Integer, Long> remoteThrottles;
+	private Map<String, AtomicLong> throttleCounts;
+	private volatile String bottleneck;
+	private volatile double bottleneckOccupancy;
+
+	/**
+	 * @param conf
+	 * @param router
+	 * @param columbus
+	 * @param factory
+	 * @param executors
+	 *            executors indexed by component id
+	 */
+	public BackpressureMonitor(Map<String, String> conf, Router<E> router, Columbus columbus, EventFactory<E> factory,
+			BoltExecutor<E>[] executors) {
+		this.router = router;
+		this.columbus = columbus;
+		this.factory = factory;
+		this.executors = executors;
+		this.highWatermark = Double.parseDouble(conf.getOrDefault(HIGH_WATERMARK, DEFAULT_HIGH_WATERMARK));
+		this.lowWatermark = Double.parseDouble(conf.getOrDefault(LOW_WATERMARK, DEFAULT_LOW_WATERMARK));
+		this.checkInterval = Long.parseLong(conf.getOrDefault(CHECK_INTERVAL, DEFAULT_CHECK_INTERVAL));
+		if (lowWatermark > highWatermark || highWatermark > 1 || lowWatermark < 0) {
+			throw new IllegalArgumentException(
+					"Invalid backpressure watermarks, low:" + lowWatermark + " high:" + highWatermark);
+		}
+		this.remoteThrottles = new ConcurrentHashMap<>();
+		this.throttleCounts = new HashMap<>();
+		for (BoltExecutor<E> executor : executors) {
+			throttleCounts.put(executor.getTemplateBoltInstance().getBoltName(), new AtomicLong());
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			check();
+		} catch (Exception e) {
+			logger.severe("Backpressure check failed:" + e.getMessage());
+		}
+	}
+
+	/**
+	 * Sample ring occupancy, update local backpressure state and notify remote
+	 * workers
+	 */
+	public void check() {
+		BoltExecutor<E> maxExecutor = null;
+		double maxOccupancy = 0;
+		for (BoltExecutor<E> executor : executors) {
+			double occupancy = executor.getRingOccupancy();
+			if (maxExecutor == null || occupancy > maxOccupancy) {
+				maxExecutor = executor;
+				maxOccupancy = occupancy;
+			}
+		}
+		if (maxExecutor == null) {
+			return;
+		}
+		String boltName = maxExecutor.getTemplateBoltInstance().getBoltName();
+		bottleneck = boltName;
+		bottleneckOccupancy = maxOccupancy;
+		boolean changed = false;
+		if (!localThrottled && maxOccupancy >= highWatermark) {
+			localThrottled = true;
+			changed = true;
+			throttleCounts.get(boltName).incrementAndGet();
+			logger.warning("Backpressure on, bottleneck bolt:" + boltName + " ring occupancy:"
+					+ (int) (maxOccupancy * 100) + "%");
+		} else if (localThrottled && maxOccupancy <= lowWatermark) {
+			localThrottled = false;
+			changed = true;
+			logger.info("Backpressure off, max ring occupancy:" + (int) (maxOccupancy * 100) + "% bolt:" + boltName);
+		}
+		// keep refreshing remote workers while throttled so their state
+		// doesn't expire
+		if (changed || localThrottled) {
+			broadcast(localThrottled);
+		}
+	}
+
+	/**
+	 * Send backpressure state to every other worker
+	 * 
+	 * @param throttled
+	 */
+	protected void broadcast(boolean throttled) {
+		int selfWorkerId = columbus.getSelfWorkerId();
+		for (Integer workerId : columbus.getWorkerMap().keySet()) {
+			if (workerId == selfWorkerId) {
+				continue;
+			}
+			E tuple = factory.newInstance();
+			tuple.setNextComponentId(BACKPRESSURE_TUPLE_ID);
+			tuple.setGroupByValue(throttled);
+			tuple.setSourceWorkerId(selfWorkerId);
+			tuple.setDestinationWorkerId(workerId);
+			tuple.setDestinationTaskId(-1);
+			if (!router.tryNetworkRouteEvent(tuple)) {
+				// network ring is full, state is resent on the next check
+				logger.fine("Unable to send backpressure signal to worker:" + workerId);
+			}
+		}
+	}
+
+	/**
+	 * Apply backpressure control {@link Tuple} received from a remote worker
+	 * 
+	 * @param tuple
+	 */
+	public void onSignal(E tuple) {
+		if (Boolean.TRUE.equals(tuple.getGroupByValue())) {
+			if (remoteThrottles.put(tuple.getSourceWorkerId(), System.currentTimeMillis()) == null) {
+				logger.info("Backpressure on from worker:" + tuple.getSourceWorkerId());
+			}
+		} else if (remoteThrottles.remove(tuple.getSourceWorkerId()) != null) {
+			logger.info("Backpressure off from worker:" + tuple.getSourceWorkerId());
+		}
+	}
+
+	/**
+	 * @return true if spouts on this worker should hold emission
+	 */
+	public boolean isThrottled() {
+		if (localThrottled) {
+			return true;
+		}
+		if (remoteThrottles.isEmpty()) {
+			return false;
+		}
+		long expiry = System.currentTimeMillis() - checkInterval * REMOTE_EXPIRY_INTERVALS;
+		for (Entry<Integer, Long> entry : remoteThrottles.entrySet()) {
+			if (entry.getValue() >= expiry) {
+				return true;
+			}
+			remoteThrottles.remove(entry.getKey(), entry.getValue());
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if a ring buffer on this worker is over the watermark
+	 */
+	public boolean isLocalThrottled() {
+		return localThrottled;
+	}
+
+	/**
+	 * @return name of the bolt with the fullest ring at the last check
+	 */
+	public String getBottleneck() {
+		return bottleneck;
+	}
+
+	/**
+	 * @return ring occupancy (0 to 1) of the bottleneck bolt at the last check
+	 */
+	public double getBottleneckOccupancy() {
+		return bottleneckOccupancy;
+	}
+
+	/**
+	 * @return number of times each bolt has triggered backpressure
+	 */
+	public Map<String, Long> getThrottleCounts() {
+		Map<String, Long> counts = new HashMap<>();
+		for (Entry<String, AtomicLong> entry : throttleCounts.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return Collections.unmodifiableMap(counts);
+	}
+
+	/**
+	 * @return the checkInterval
+	 */
+	public long getCheckInterval() {
+		return checkInterval;
+	}
+
+}
@@ -0,0 +1,447 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import com.lmax.disruptor.EventFactory;
+import com.srotya.linea.ComponentRegistry;
+import com.srotya.linea.Tuple;
+import com.srotya.linea.clustering.Columbus;
+import com.srotya.linea.processors.BoltExecutor;
+
+/**
+ * Credit based flow control of {@link Tuple}s sent between workers. <br>
+ * <br>
+ * Every worker grants each remote worker credits for each of it's local
+ * tasks, proportional to the free capacity of the task's ring buffer split
+ * evenly across the senders. A sender spends one credit per tuple and holds
+ * the emitting thread when a task runs out of credit, so a slow task only
+ * slows down the threads sending to it instead of stalling the outbound
+ * network ring, the connection and the receiving I/O thread for everyone.
+ * <br>
+ * <br>
+ * Grants are absolute i.e. "you may have sent up to N tuples to this task",
+ * so a lost or reordered grant is corrected by the next one. Grants are
+ * refreshed periodically even if they haven't changed. <br>
+ * <br>
+ * Each grant also echoes how many tuples the task has received from the
+ * sender and a random epoch of the granting worker's incarnation, so the
+ * sender can rebase its count when the two drift apart: tuples that weren't
+ * received within {@link #MAX_HOLD} of the previous grant (e.g. dropped by a
+ * {@link SpillBuffer} or lost with a closed connection) are written off, and
+ * a new epoch means the worker restarted and everything sent to its previous
+ * incarnation is written off. <br>
+ * <br>
+ * A tuple that can't get
+ * credit within {@link #MAX_HOLD} is sent anyway so a dead or partitioned
+ * worker can't hold a sender forever, these overdrafts are counted. The
+ * worker is then marked overdrawn and tuples to it are sent without holding
+ * until it grants credit again, so a worker that stopped granting doesn't
+ * slow every sender down to one tuple per hold. <br>
+ * <br>
+ * Bolts chained to their upstream bolt have no ring and aren't credit
+ * controlled.
+ * 
+ * @author ambud
+ */
+public class CreditManager<E extends Tuple> implements Runnable {
+
+	public static final String CREDIT_TUPLE = "_credit";
+	public static final int CREDIT_TUPLE_ID = ComponentRegistry.getId(CREDIT_TUPLE);
+	public static final String FLOW_CONTROL_ENABLED = "flowcontrol.enabled";
+	public static final String DEFAULT_FLOW_CONTROL_ENABLED = "true";
+	public static final String GRANT_INTERVAL = "flowcontrol.grant.interval";
+	public static final String DEFAULT_GRANT_INTERVAL = "10";
+	public static final String INITIAL_CREDITS = "flowcontrol.initial.credits";
+	public static final String DEFAULT_INITIAL_CREDITS = "1024";
+	public static final String MAX_HOLD = "flowcontrol.max.hold";
+	public static final String DEFAULT_MAX_HOLD = "1000";
+	private static final Logger logger = Logger.getLogger(CreditManager.class.getName());
+	private static final long HOLD_PARK_NANOS = 50_000;
+	private static final int REFRESH_INTERVALS = 10;
+	private Router<E> router;
+	private Columbus columbus;
+	private EventFactory<E> factory;
+	private BoltExecutor<E>[] executors;
+	private long grantInterval;
+	private long maxHoldNanos;
+	private long epoch;
+	private int[] parallelism;
+	// sender side, indexed by component id then task id
+	private AtomicLongArray[] sent;
+	private AtomicLongArray[] limits;
+	private long[][] sentAtGrant;
+	private long[][] sentAtGrantNanos;
+	// sender side, indexed by granting worker id
+	private long[] epochs;
+	// receiver side, indexed by sender worker id, component id then local
+	// task index
+	private AtomicLongArray[][] received;
+	private long[][][] granted;
+	private long[] grantBuffer;
+	private int checks;
+	private LongAdder[] heldTuples;
+	private LongAdder[] heldNanos;
+	private LongAdder[] overdrafts;
+	private AtomicIntegerArray overdrawn;
+
+	/**
+	 * @param conf
+	 * @param router
+	 * @param columbus
+	 * @param factory
+	 * @param executors
+	 *            executors indexed by component id
+	 */
+	public CreditManager(Map<String, String> conf, Router<E> router, Columbus columbus, EventFactory<E> factory,
+			BoltExecutor<E>[] executors) {
+		this.router = router;
+		this.columbus = columbus;
+		this.factory = factory;
+		this.executors = executors;
+		this.grantInterval = Long.parseLong(conf.getOrDefault(GRANT_INTERVAL, DEFAULT_GRANT_INTERVAL));
+		this.maxHoldNanos = Long.parseLong(conf.getOrDefault(MAX_HOLD, DEFAULT_MAX_HOLD)) * 1_000_000;
+		long initialCredits = Long.parseLong(conf.getOrDefault(INITIAL_CREDITS, DEFAULT_INITIAL_CREDITS));
+		// never 0 which marks a worker that hasn't granted yet
+		this.epoch = ThreadLocalRandom.current().nextLong() | 1;
+		int workers = 0;
+		for (Integer workerId : columbus.getWorkerMap().keySet()) {
+			workers = Math.max(workers, workerId + 1);
+		}
+		parallelism = new int[executors.length];
+		sent = new AtomicLongArray[executors.length];
+		limits = new AtomicLongArray[executors.length];
+		sentAtGrant = new long[executors.length][];
+		sentAtGrantNanos = new long[executors.length][];
+		epochs = new long[workers];
+		received = new AtomicLongArray[workers][executors.length];
+		granted = new long[workers][executors.length][];
+		int totalTasks = 0;
+		for (int c = 0; c < executors.length; c++) {
+			parallelism[c] = executors[c].getParallelism();
+			totalTasks += parallelism[c];
+			sent[c] = new AtomicLongArray(parallelism[c] * workers);
+			limits[c] = new AtomicLongArray(parallelism[c] * workers);
+			for (int t = 0; t < limits[c].length(); t++) {
+				limits[c].set(t, initialCredits);
+			}
+			sentAtGrant[c] = new long[parallelism[c] * workers];
+			sentAtGrantNanos[c] = new long[parallelism[c] * workers];
+			Arrays.fill(sentAtGrantNanos[c], System.nanoTime());
+			for (int w = 0; w < workers; w++) {
+				received[w][c] = new AtomicLongArray(parallelism[c]);
+				granted[w][c] = new long[parallelism[c]];
+				Arrays.fill(granted[w][c], initialCredits);
+			}
+		}
+		grantBuffer = new long[1 + totalTasks * 4];
+		heldTuples = new LongAdder[workers];
+		heldNanos = new LongAdder[workers];
+		overdrafts = new LongAdder[workers];
+		overdrawn = new AtomicIntegerArray(workers);
+		for (int w = 0; w < workers; w++) {
+			heldTuples[w] = new LongAdder();
+			heldNanos[w] = new LongAdder();
+			overdrafts[w] = new LongAdder();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			grant();
+		} catch (Exception e) {
+			logger.severe("Credit grant failed:" + e.getMessage());
+		}
+	}
+
+	/**
+	 * Compute credits for every remote worker from the free ring capacity of
+	 * local tasks and send those that grew, or all of them every few
+	 * intervals
+	 */
+	public void grant() {
+		int selfWorkerId = columbus.getSelfWorkerId();
+		int senders = columbus.getWorkerMap().size() - 1;
+		if (senders <= 0) {
+			return;
+		}
+		boolean refresh = ++checks % REFRESH_INTERVALS == 0;
+		for (Integer workerId : columbus.getWorkerMap().keySet()) {
+			if (workerId == selfWorkerId) {
+				continue;
+			}
+			grantBuffer[0] = epoch;
+			int length = 1;
+			for (int c = 0; c < executors.length; c++) {
+				for (int i = 0; i < parallelism[c]; i++) {
+					int taskId = selfWorkerId * parallelism[c] + i;
+					long free = executors[c].getRemainingCapacity(taskId);
+					if (free < 0) {
+						continue;
+					}
+					long count = received[workerId][c].get(i);
+					long limit = count + free / senders;
+					if (limit > granted[workerId][c][i] || refresh) {
+						granted[workerId][c][i] = Math.max(limit, granted[workerId][c][i]);
+						grantBuffer[length++] = c;
+						grantBuffer[length++] = taskId;
+						grantBuffer[length++] = count;
+						grantBuffer[length++] = granted[workerId][c][i];
+					}
+				}
+			}
+			if (length > 1) {
+				send(workerId, Arrays.copyOf(grantBuffer, length));
+			}
+		}
+	}
+
+	/**
+	 * @param workerId
+	 * @param grants
+	 *            epoch followed by component id, task id, received count and
+	 *            limit quadruples
+	 */
+	protected void send(int workerId, long[] grants) {
+		E tuple = factory.newInstance();
+		tuple.setNextComponentId(CREDIT_TUPLE_ID);
+		tuple.setGroupByValue(grants);
+		tuple.setSourceWorkerId(columbus.getSelfWorkerId());
+		tuple.setDestinationWorkerId(workerId);
+		tuple.setDestinationTaskId(-1);
+		if (!router.tryNetworkRouteEvent(tuple)) {
+			// network ring is full, grants are recomputed on the next check
+			logger.fine("Unable to send credits to worker:" + workerId);
+		}
+	}
+
+	/**
+	 * Apply credits granted by a remote worker and rebase the sent counts on
+	 * the received counts it echoes
+	 * 
+	 * @param tuple
+	 */
+	public synchronized void onGrant(E tuple) {
+		int sourceWorkerId = tuple.getSourceWorkerId();
+		if (sourceWorkerId < 0 || sourceWorkerId >= epochs.length) {
+			return;
+		}
+		if (overdrawn.compareAndSet(sourceWorkerId, 1, 0)) {
+			logger.info("Worker:" + sourceWorkerId + " is granting credit again");
+		}
+		long[] grants = (long[]) tuple.getGroupByValue();
+		if (grants.length == 0) {
+			return;
+		}
+		boolean restarted = epochs[sourceWorkerId] != 0 && epochs[sourceWorkerId] != grants[0];
+		if (restarted) {
+			logger.info("Worker:" + sourceWorkerId + " restarted, resetting credits sent to it");
+		}
+		epochs[sourceWorkerId] = grants[0];
+		long now = System.nanoTime();
+		for (int i = 1; i + 3 < grants.length; i += 4) {
+			int componentId = (int) grants[i];
+			int taskId = (int) grants[i + 1];
+			if (componentId < 0 || componentId >= limits.length || taskId < 0
+					|| taskId >= limits[componentId].length()) {
+				continue;
+			}
+			rebase(componentId, taskId, grants[i + 2], restarted, now);
+			if (restarted) {
+				limits[componentId].set(taskId, grants[i + 3]);
+			} else {
+				limits[componentId].accumulateAndGet(taskId, grants[i + 3], Math::max);
+			}
+		}
+	}
+
+	/**
+	 * Bring the sent count of a remote task in line with the count it has
+	 * received. Tuples sent while this runs keep counting.
+	 * 
+	 * @param componentId
+	 * @param taskId
+	 * @param receivedCount
+	 *            tuples the task has received from this worker
+	 * @param restarted
+	 *            the task's worker restarted since its last grant
+	 * @param now
+	 */
+	private void rebase(int componentId, int taskId, long receivedCount, boolean restarted, long now) {
+		AtomicLongArray counts = sent[componentId];
+		long current = counts.get(taskId);
+		long snapshot = sentAtGrant[componentId][taskId];
+		if (restarted || receivedCount > current) {
+			// everything sent to a previous incarnation is gone, or the task
+			// counted tuples of our own previous incarnation or tuples that
+			// were written off and arrived after all
+			counts.addAndGet(taskId, receivedCount - current);
+		} else if (receivedCount < snapshot) {
+			if (now - sentAtGrantNanos[componentId][taskId] < maxHoldNanos) {
+				// tuples sent before the last grant may still be in flight
+				return;
+			}
+			logger.fine("Writing off " + (snapshot - receivedCount) + " tuples lost on the way to component:"
+					+ componentId + " task:" + taskId);
+			counts.addAndGet(taskId, receivedCount - snapshot);
+		}
+		sentAtGrant[componentId][taskId] = counts.get(taskId);
+		sentAtGrantNanos[componentId][taskId] = now;
+	}
+
+	/**
+	 * Count tuples received from a remote worker, called by the
+	 * {@link Router} before they're published to the task's ring
+	 * 
+	 * @param senderWorkerId
+	 *            worker that sent the tuples, see
+	 *            {@link com.srotya.linea.Tuple#getSenderWorkerId()}
+	 * @param componentId
+	 * @param taskId
+	 * @param count
+	 */
+	public void onReceived(int senderWorkerId, int componentId, int taskId, int count) {
+		if (senderWorkerId < 0 || senderWorkerId >= received.length) {
+			return;
+		}
+		int index = taskId - columbus.getSelfWorkerId() * parallelism[componentId];
+		AtomicLongArray counts = received[senderWorkerId][componentId];
+		if (index >= 0 && index < counts.length()) {
+			counts.addAndGet(index, count);
+		}
+	}
+
+	/**
+	 * Spend one credit of a remote task without waiting
+	 * 
+	 * @param componentId
+	 * @param taskId
+	 * @return true if the credit was spent
+	 */
+	public boolean tryAcquire(int componentId, int taskId) {
+		AtomicLongArray counts = sent[componentId];
+		if (counts.incrementAndGet(taskId) <= limits[componentId].get(taskId)) {
+			return true;
+		}
+		counts.decrementAndGet(taskId);
+		return false;
+	}
+
+	/**
+	 * Spend one credit of a remote task, holding the calling thread until
+	 * credit is granted or {@link #MAX_HOLD} elapses. Tuples to an overdrawn
+	 * worker aren't held.
+	 * 
+	 * @param componentId
+	 * @param taskId
+	 * @param workerId
+	 *            worker owning the task
+	 */
+	public void acquire(int componentId, int taskId, int workerId) {
+		if (tryAcquire(componentId, taskId)) {
+			return;
+		}
+		if (overdrawn.get(workerId) != 0) {
+			sent[componentId].incrementAndGet(taskId);
+			overdrafts[workerId].increment();
+			return;
+		}
+		long start = System.nanoTime();
+		long elapsed = 0;
+		while (!tryAcquire(componentId, taskId)) {
+			elapsed = System.nanoTime() - start;
+			if (elapsed >= maxHoldNanos) {
+				sent[componentId].incrementAndGet(taskId);
+				overdrafts[workerId].increment();
+				if (overdrawn.compareAndSet(workerId, 0, 1)) {
+					logger.warning("No credit from worker:" + workerId + " for task:" + taskId + " after "
+							+ elapsed / 1_000_000 + "ms, sending without credit until it grants again");
+				}
+				break;
+			}
+			LockSupport.parkNanos(HOLD_PARK_NANOS);
+		}
+		heldTuples[workerId].increment();
+		heldNanos[workerId].add(System.nanoTime() - start);
+	}
+
+	/**
+	 * @param componentId
+	 * @param taskId
+	 * @return credits left for a remote task, negative after overdrafts
+	 */
+	public long getCredits(int componentId, int taskId) {
+		return limits[componentId].get(taskId) - sent[componentId].get(taskId);
+	}
+
+	/**
+	 * @param workerId
+	 * @return number of tuples to the worker that had to wait for credit
+	 */
+	public long getHeldTuples(int workerId) {
+		return heldTuples[workerId].sum();
+	}
+
+	/**
+	 * @param workerId
+	 * @return total time threads waited for credit from the worker
+	 */
+	public long getHeldNanos(int workerId) {
+		return heldNanos[workerId].sum();
+	}
+
+	/**
+	 * @param workerId
+	 * @return number of tuples sent to the worker without credit after
+	 *         {@link #MAX_HOLD}
+	 */
+	public long getOverdrafts(int workerId) {
+		return overdrafts[workerId].sum();
+	}
+
+	/**
+	 * @param workerId
+	 * @return true if tuples to the worker are sent without holding until it
+	 *         grants credit again
+	 */
+	public boolean isOverdrawn(int workerId) {
+		return overdrawn.get(workerId) != 0;
+	}
+
+	/**
+	 * @return random epoch of this worker's incarnation sent with its grants
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return the grantInterval
+	 */
+	public long getGrantInterval() {
+		return grantInterval;
+	}
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Consumer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.srotya.linea.Tuple;
+import com.srotya.linea.network.compression.FrameCompressor;
+
+/**
+ * Decodes frames written by {@link FrameEncoder}. Bytes are read from the
+ * channel into a reusable direct buffer and every complete frame in it is
+ * decoded in one pass, partial frames are kept for the next read. Works with
+ * both blocking and non-blocking channels. One decoder is used per connection
+ * and it's not thread-safe. <br>
+ * <br>
+ * Compressed frames are decompressed into a scratch array owned by the
+ * {@link FrameCompressor} of the connection before the tuples are decoded.
+ * 
+ * @author ambud
+ */
+public class FrameDecoder<E extends Tuple> {
+
+	private Class<E> classOf;
+	private ByteBuffer buffer;
+	private ByteBufferInput input;
+	private int maxFrameSize;
+	private FrameCompressor compressor;
+
+	/**
+	 * @param classOf
+	 * @param bufferSize
+	 *            initial size of the receive buffer
+	 * @param maxFrameSize
+	 */
+	public FrameDecoder(Class<E> classOf, int bufferSize, int maxFrameSize) {
+		this.classOf = classOf;
+		this.maxFrameSize = maxFrameSize;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.input = new ByteBufferInput(buffer);
+	}
+
+	/**
+	 * Read available bytes from the channel and decode all complete frames
+	 * 
+	 * @param channel
+	 * @param consumer
+	 *            called for every decoded {@link Tuple}
+	 * @return number of bytes read or -1 at end of stream
+	 * @throws IOException
+	 */
+	public int read(ReadableByteChannel channel, Consumer<E> consumer) throws IOException {
+		int read = channel.read(buffer);
+		if (read > 0) {
+			buffer.flip();
+			decode(consumer);
+			buffer.compact();
+		}
+		return read;
+	}
+
+	/**
+	 * Decode complete frames between position and limit of the buffer
+	 * 
+	 * @param consumer
+	 * @throws IOException
+	 */
+	private void decode(Consumer<E> consumer) throws IOException {
+		Kryo kryo = KryoCodec.getKryo();
+		while (buffer.remaining() >= FrameEncoder.HEADER_SIZE) {
+			int start = buffer.position();
+			int length = buffer.getInt(start);
+			int count = buffer.getInt(start + 4);
+			if (length < 0 || length > maxFrameSize) {
+				throw new IOException("Invalid frame length:" + length);
+			}
+			int end = start + FrameEncoder.HEADER_SIZE + length;
+			if (buffer.limit() < end) {
+				ensureCapacity(FrameEncoder.HEADER_SIZE + length);
+				return;
+			}
+			int limit = buffer.limit();
+			buffer.limit(end);
+			buffer.position(start + FrameEncoder.HEADER_SIZE);
+			if (compressor != null) {
+				decompress(length);
+			} else {
+				input.setBuffer(buffer);
+			}
+			for (int i = 0; i < count; i++) {
+				consumer.accept(kryo.readObject(input, classOf));
+			}
+			buffer.limit(limit);
+			buffer.position(end);
+		}
+	}
+
+	/**
+	 * Point the input at the payload of the compressed frame between position
+	 * and limit of the buffer
+	 * 
+	 * @param length
+	 * @throws IOException
+	 */
+	private void decompress(int length) throws IOException {
+		if (length < 4) {
+			throw new IOException("Invalid compressed frame length:" + length);
+		}
+		int rawLength = buffer.getInt();
+		if (rawLength <= 0) {
+			input.setBuffer(buffer);
+			return;
+		}
+		if (rawLength > maxFrameSize) {
+			throw new IOException("Invalid raw frame length:" + rawLength);
+		}
+		int compressedLength = length - 4;
+		buffer.get(compressor.getInputBuffer(compressedLength), 0, compressedLength);
+		input.setBuffer(ByteBuffer.wrap(compressor.decompress(compressedLength, rawLength), 0, rawLength));
+	}
+
+	/**
+	 * @param compressor
+	 *            negotiated for the connection, null if frames are
+	 *            uncompressed
+	 */
+	public void setCompressor(FrameCompressor compressor) {
+		this.compressor = compressor;
+	}
+
+	/**
+	 * Grow the receive buffer if a frame doesn't fit, the buffer is in read
+	 * mode i.e. unread bytes are between position and limit
+	 * 
+	 * @param frameLength
+	 */
+	private void ensureCapacity(int frameLength) {
+		if (frameLength <= buffer.capacity()) {
+			return;
+		}
+		ByteBuffer larger = ByteBuffer.allocateDirect(Integer.highestOneBit(frameLength - 1) << 1);
+		larger.put(buffer);
+		larger.flip();
+		buffer = larger;
+	}
+
+	/**
+	 * @return receive buffer capacity
+	 */
+	public int getCapacity() {
+		return buffer.capacity();
+	}
+
+}
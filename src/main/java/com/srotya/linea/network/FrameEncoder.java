@@ -0,0 +1,178 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.srotya.linea.Tuple;
+import com.srotya.linea.network.compression.FrameCompressor;
+
+/**
+ * Batches {@link Tuple}s into frames for inter worker transport. A frame is a
+ * header of payload length and tuple count (two ints) followed by the
+ * {@link KryoCodec} serialized tuples. <br>
+ * <br>
+ * Tuples are serialized straight into a direct buffer owned by the encoder
+ * that is reused for every frame, so encoding allocates no intermediate byte
+ * arrays. One encoder is used per connection and it's not thread-safe. <br>
+ * <br>
+ * If the connection negotiated compression the payload is compressed as a
+ * whole when the frame is finished, see {@link FrameCompressor}.
+ * 
+ * @author ambud
+ */
+public class FrameEncoder {
+
+	public static final int HEADER_SIZE = 8;
+	public static final String FRAME_SIZE = "network.frame.size";
+	public static final String DEFAULT_FRAME_SIZE = String.valueOf(64 * 1024);
+	public static final String MAX_FRAME_SIZE = "network.frame.max.size";
+	public static final String DEFAULT_MAX_FRAME_SIZE = String.valueOf(16 * 1024 * 1024);
+	private ByteBufferOutput output;
+	private int frameSize;
+	private int count;
+	private FrameCompressor compressor;
+
+	/**
+	 * @param frameSize
+	 *            frame is full once it's payload reaches this many bytes
+	 * @param maxFrameSize
+	 *            upper bound of the buffer, a frame can exceed frameSize by
+	 *            the size of one tuple
+	 */
+	public FrameEncoder(int frameSize, int maxFrameSize) {
+		this.frameSize = frameSize;
+		this.output = new ByteBufferOutput(Math.min(frameSize * 2, maxFrameSize), maxFrameSize);
+		reset();
+	}
+
+	/**
+	 * @param conf
+	 * @return encoder sized using {@link #FRAME_SIZE} and
+	 *         {@link #MAX_FRAME_SIZE}
+	 */
+	public static FrameEncoder fromConf(Map<String, String> conf) {
+		return new FrameEncoder(Integer.parseInt(conf.getOrDefault(FRAME_SIZE, DEFAULT_FRAME_SIZE)),
+				Integer.parseInt(conf.getOrDefault(MAX_FRAME_SIZE, DEFAULT_MAX_FRAME_SIZE)));
+	}
+
+	/**
+	 * Serialize a {@link Tuple} into the current frame
+	 * 
+	 * @param tuple
+	 */
+	public void add(Object tuple) {
+		KryoCodec.getKryo().writeObject(output, tuple);
+		count++;
+	}
+
+	/**
+	 * @return true if the frame should be written out
+	 */
+	public boolean isFull() {
+		return output.position() - FrameCompressor.HEADER_SIZE >= frameSize;
+	}
+
+	/**
+	 * @return true if there are no tuples in the current frame
+	 */
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * @return number of tuples in the current frame
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Complete the header of the current frame. The returned buffer is valid
+	 * until {@link #reset()} is called and can be reset to it's initial
+	 * position to write the frame again.
+	 * 
+	 * @return buffer positioned at the start of the frame
+	 */
+	public ByteBuffer finish() {
+		ByteBuffer buffer = output.getByteBuffer();
+		int length = output.position();
+		if (compressor != null) {
+			int rawLength = length - FrameCompressor.HEADER_SIZE;
+			buffer.limit(length);
+			buffer.position(FrameCompressor.HEADER_SIZE);
+			buffer.get(compressor.getRawBuffer(rawLength), 0, rawLength);
+			int compressedLength = compressor.compress(rawLength);
+			if (compressedLength >= 0) {
+				ByteBuffer frame = ByteBuffer.wrap(compressor.getCompressed(), 0,
+						FrameCompressor.HEADER_SIZE + compressedLength);
+				frame.putInt(0, compressedLength + 4);
+				frame.putInt(4, count);
+				frame.putInt(8, rawLength);
+				return frame;
+			}
+			buffer.putInt(8, -rawLength);
+		}
+		// room for the compressed header is always reserved so the codec
+		// can change without re-encoding the pending tuples
+		int start = compressor != null ? 0 : FrameCompressor.HEADER_SIZE - HEADER_SIZE;
+		buffer.putInt(start, length - start - HEADER_SIZE);
+		buffer.putInt(start + 4, count);
+		buffer.limit(length);
+		buffer.position(start);
+		return buffer;
+	}
+
+	/**
+	 * Complete and write the current frame to the channel, then start a new
+	 * frame
+	 * 
+	 * @param channel
+	 * @throws IOException
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer buffer = finish();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		reset();
+	}
+
+	/**
+	 * Discard the current frame and start a new one
+	 */
+	public void reset() {
+		output.getByteBuffer().clear();
+		output.setPosition(FrameCompressor.HEADER_SIZE);
+		count = 0;
+	}
+
+	/**
+	 * Set the compressor negotiated for the connection, applies from the
+	 * current frame on
+	 * 
+	 * @param compressor
+	 *            null to send frames uncompressed
+	 */
+	public void setCompressor(FrameCompressor compressor) {
+		this.compressor = compressor;
+	}
+
+}
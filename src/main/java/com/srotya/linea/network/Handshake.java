@@ -0,0 +1,108 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import com.srotya.linea.network.compression.COMPRESSION_TYPE;
+
+/**
+ * Connection handshake between workers, the client sends a magic number and
+ * the id of the {@link COMPRESSION_TYPE} it wants to use and the server
+ * replies with the magic number and the id of the codec it accepted. Frames
+ * follow only once the reply has been received.
+ * 
+ * @author ambud
+ */
+public class Handshake {
+
+	public static final int MAGIC = 0x4C4E4541;
+	public static final int SIZE = 8;
+
+	private Handshake() {
+	}
+
+	/**
+	 * @param type
+	 * @return handshake message ready to be written
+	 */
+	public static ByteBuffer encode(COMPRESSION_TYPE type) {
+		ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putInt(type.getId());
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * @param buffer
+	 *            complete handshake message in read mode
+	 * @return codec id in the message
+	 * @throws IOException
+	 *             if the peer isn't speaking this protocol
+	 */
+	public static int decode(ByteBuffer buffer) throws IOException {
+		int magic = buffer.getInt();
+		if (magic != MAGIC) {
+			throw new IOException("Invalid handshake magic:" + Integer.toHexString(magic));
+		}
+		return buffer.getInt();
+	}
+
+	/**
+	 * Client side of the handshake over a blocking channel
+	 * 
+	 * @param channel
+	 * @param requested
+	 * @return codec accepted by the server
+	 * @throws IOException
+	 */
+	public static COMPRESSION_TYPE negotiate(SocketChannel channel, COMPRESSION_TYPE requested) throws IOException {
+		ByteBuffer buffer = encode(requested);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("Connection closed during handshake");
+			}
+		}
+		buffer.flip();
+		return accepted(requested, decode(buffer));
+	}
+
+	/**
+	 * @param requested
+	 * @param acceptedId
+	 * @return accepted codec
+	 * @throws IOException
+	 *             if the server replied with a codec that wasn't requested
+	 */
+	public static COMPRESSION_TYPE accepted(COMPRESSION_TYPE requested, int acceptedId) throws IOException {
+		if (acceptedId == requested.getId()) {
+			return requested;
+		}
+		if (acceptedId == COMPRESSION_TYPE.NONE.getId()) {
+			return COMPRESSION_TYPE.NONE;
+		}
+		throw new IOException("Server accepted unrequested compression:" + acceptedId);
+	}
+
+}
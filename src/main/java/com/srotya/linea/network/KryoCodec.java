@@ -19,32 +19,117 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.srotya.linea.AbstractTuple;
 import com.srotya.linea.Tuple;
 
 /**
  * Decodes {@link Kryo} Serialized {@link Tuple} objects. This Decoder
  * implementation has refactored utility methods that are used for both TCP and
- * UDP based transports.
+ * UDP based transports. <br>
+ * <br>
+ * {@link Kryo} instances are built once per thread, the transport and bolt
+ * threads are long lived so this is a pool without borrow and release. Every
+ * instance registers the tuple class, common collections and the classes of
+ * the configured {@link KryoRegistrar}s so that class ids instead of class
+ * names are written, and serializes {@link AbstractTuple}s with
+ * {@link TupleSerializer}. Instances are rebuilt if the codec is reconfigured.
  * 
  * @author ambud
  */
 public class KryoCodec {
 
-	public static final ThreadLocal<Kryo> kryoThreadLocal = new ThreadLocal<Kryo>() {
+	/**
+	 * Comma separated {@link KryoRegistrar} class names
+	 */
+	public static final String KRYO_REGISTRARS = "kryo.registrars";
+	public static final String KRYO_REGISTRATION_REQUIRED = "kryo.registration.required";
+	public static final String DEFAULT_KRYO_REGISTRATION_REQUIRED = "false";
+	private static final ThreadLocal<PooledKryo> kryoThreadLocal = new ThreadLocal<PooledKryo>() {
 		@Override
-		protected Kryo initialValue() {
-			Kryo kryo = new Kryo();
-			return kryo;
+		protected PooledKryo initialValue() {
+			return new PooledKryo();
 		}
 	};
+	private static volatile Configuration configuration = new Configuration(0, null, new ArrayList<>(), false);
 
 	public KryoCodec() {
 	}
 
+	/**
+	 * Configure the codec for a topology, must be called with identical
+	 * arguments on every worker before tuples are exchanged
+	 * 
+	 * @param conf
+	 * @param tupleClass
+	 * @throws ReflectiveOperationException
+	 *             if a registrar can't be instantiated
+	 */
+	public static synchronized void configure(Map<String, String> conf, Class<?> tupleClass)
+			throws ReflectiveOperationException {
+		List<KryoRegistrar> registrars = new ArrayList<>();
+		String registrarClasses = conf.get(KRYO_REGISTRARS);
+		if (registrarClasses != null) {
+			for (String registrarClass : registrarClasses.split(",")) {
+				if (!registrarClass.trim().isEmpty()) {
+					registrars.add((KryoRegistrar) Class.forName(registrarClass.trim()).newInstance());
+				}
+			}
+		}
+		boolean registrationRequired = Boolean.parseBoolean(
+				conf.getOrDefault(KRYO_REGISTRATION_REQUIRED, DEFAULT_KRYO_REGISTRATION_REQUIRED));
+		configuration = new Configuration(configuration.version + 1, tupleClass, registrars, registrationRequired);
+	}
+
+	/**
+	 * @return {@link Kryo} instance of the calling thread
+	 */
+	public static Kryo getKryo() {
+		PooledKryo pooled = kryoThreadLocal.get();
+		Configuration current = configuration;
+		if (pooled.version != current.version || pooled.kryo == null) {
+			pooled.kryo = newKryo();
+			pooled.version = current.version;
+		}
+		return pooled.kryo;
+	}
+
+	/**
+	 * @return new {@link Kryo} instance with the current configuration
+	 */
+	public static Kryo newKryo() {
+		Configuration current = configuration;
+		Kryo kryo = new Kryo();
+		kryo.addDefaultSerializer(AbstractTuple.class, TupleSerializer.class);
+		if (current.tupleClass != null) {
+			kryo.register(current.tupleClass);
+		}
+		kryo.register(ArrayList.class);
+		kryo.register(LinkedList.class);
+		kryo.register(HashMap.class);
+		kryo.register(LinkedHashMap.class);
+		kryo.register(TreeMap.class);
+		kryo.register(HashSet.class);
+		kryo.register(byte[].class);
+		kryo.register(long[].class);
+		for (KryoRegistrar registrar : current.registrars) {
+			registrar.register(kryo);
+		}
+		kryo.setRegistrationRequired(current.registrationRequired);
+		return kryo;
+	}
+
 	/**
 	 * Kryo serialize {@link Tuple} to byte array
 	 * 
@@ -57,7 +142,7 @@ public class KryoCodec {
 		ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
 		OutputStream os = bos;
 		Output output = new Output(os);
-		kryoThreadLocal.get().writeObject(output, event);
+		getKryo().writeObject(output, event);
 		output.close();
 		return bos.toByteArray();
 	}
@@ -71,8 +156,38 @@ public class KryoCodec {
 	 * @throws IOException
 	 */
 	public static <E> E streamToEvent(Class<E> classOf, Input input) throws IOException {
-		E event = kryoThreadLocal.get().readObject(input, classOf);
+		E event = getKryo().readObject(input, classOf);
 		return event;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Thread's {@link Kryo} and the configuration version it was built with
+	 */
+	private static class PooledKryo {
+
+		private int version;
+		private Kryo kryo;
+
+	}
+
+	/**
+	 * Immutable codec configuration
+	 */
+	private static class Configuration {
+
+		private int version;
+		private Class<?> tupleClass;
+		private List<KryoRegistrar> registrars;
+		private boolean registrationRequired;
+
+		public Configuration(int version, Class<?> tupleClass, List<KryoRegistrar> registrars,
+				boolean registrationRequired) {
+			this.version = version;
+			this.tupleClass = tupleClass;
+			this.registrars = registrars;
+			this.registrationRequired = registrationRequired;
+		}
+
+	}
+
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import com.esotericsoftware.kryo.Kryo;
+
+/**
+ * Registers classes and serializers used by a topology with every
+ * {@link Kryo} instance built by {@link KryoCodec}. Registrars are listed in
+ * {@link KryoCodec#KRYO_REGISTRARS} and must register in the same order on
+ * every worker since registration ids are written to the wire.
+ * 
+ * @author ambud
+ */
+public interface KryoRegistrar {
+
+	/**
+	 * Register classes and serializers
+	 * 
+	 * @param kryo
+	 */
+	public void register(Kryo kryo);
+
+}
@@ -16,10 +16,17 @@
 package com.srotya.linea.network;
 
 import com.lmax.disruptor.EventHandler;
+import java.util.Map;
+import java.util.Set;
+
 import com.srotya.linea.Tuple;
 import com.srotya.linea.clustering.Columbus;
 
 /**
+ * Handler of an outbound ring of the {@link com.srotya.linea.network.Router}.
+ * Each client owns the workers in {@link #getWorkerIds()} and it's ring only
+ * carries tuples for those workers.
+ * 
  * @author ambud
  *
  * @param <E>
@@ -29,6 +36,8 @@ public abstract class NetworkClient<E extends Tuple> implements EventHandler<E>
 	private Columbus columbus;
 	private int clientThreads;
 	private int clientThreadId;
+	private Map<String, String> conf;
+	private Set<Integer> workerIds;
 	
 	public NetworkClient() {
 	}
@@ -76,5 +85,33 @@ public abstract class NetworkClient<E extends Tuple> implements EventHandler<E>
 	public void setClientThreadId(int clientThreadId) {
 		this.clientThreadId = clientThreadId;
 	}
-	
+
+	/**
+	 * @return the conf
+	 */
+	public Map<String, String> getConf() {
+		return conf;
+	}
+
+	/**
+	 * @param conf the conf to set
+	 */
+	public void setConf(Map<String, String> conf) {
+		this.conf = conf;
+	}
+
+	/**
+	 * @return ids of the workers this client sends tuples to
+	 */
+	public Set<Integer> getWorkerIds() {
+		return workerIds;
+	}
+
+	/**
+	 * @param workerIds the workerIds to set
+	 */
+	public void setWorkerIds(Set<Integer> workerIds) {
+		this.workerIds = workerIds;
+	}
+
 }
@@ -15,6 +15,8 @@
  */
 package com.srotya.linea.network;
 
+import java.util.Map;
+
 import com.srotya.linea.Tuple;
 import com.srotya.linea.clustering.Columbus;
 
@@ -30,6 +32,7 @@ public abstract class NetworkServer<E extends Tuple> {
 	private String bindAddress;
 	private int dataPort;
 	private Columbus columbus;
+	private Map<String, String> conf;
 
 	public abstract void start() throws Exception;
 
@@ -107,6 +110,20 @@ public abstract class NetworkServer<E extends Tuple> {
 		this.columbus = columbus;
 	}
 
+	/**
+	 * @return the conf
+	 */
+	public Map<String, String> getConf() {
+		return conf;
+	}
+
+	/**
+	 * @param conf the conf to set
+	 */
+	public void setConf(Map<String, String> conf) {
+		this.conf = conf;
+	}
+
 	public abstract void stop() throws Exception;
 
 }
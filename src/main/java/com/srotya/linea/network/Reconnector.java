@@ -0,0 +1,118 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Reconnects lost worker connections off the client thread, retrying with
+ * exponential backoff so a worker that's down doesn't hold up traffic to the
+ * others or get hammered with connection attempts.
+ * 
+ * @author ambud
+ */
+public class Reconnector {
+
+	public static final String INITIAL_BACKOFF = "network.reconnect.backoff.initial";
+	public static final String DEFAULT_INITIAL_BACKOFF = "100";
+	public static final String MAX_BACKOFF = "network.reconnect.backoff.max";
+	public static final String DEFAULT_MAX_BACKOFF = "30000";
+	private static final Logger logger = Logger.getLogger(Reconnector.class.getName());
+	private ScheduledExecutorService scheduler;
+	private Set<Integer> reconnecting;
+	private long initialBackoff;
+	private long maxBackoff;
+
+	/**
+	 * @param conf
+	 * @param name
+	 *            name of the reconnect thread
+	 */
+	public Reconnector(Map<String, String> conf, String name) {
+		this.initialBackoff = Long.parseLong(conf.getOrDefault(INITIAL_BACKOFF, DEFAULT_INITIAL_BACKOFF));
+		this.maxBackoff = Long.parseLong(conf.getOrDefault(MAX_BACKOFF, DEFAULT_MAX_BACKOFF));
+		this.reconnecting = ConcurrentHashMap.newKeySet();
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Start reconnecting a worker unless it's already being reconnected
+	 * 
+	 * @param workerId
+	 * @param attempt
+	 *            returns true once connected, called on the reconnect thread
+	 */
+	public void reconnect(int workerId, Callable<Boolean> attempt) {
+		if (reconnecting.add(workerId)) {
+			schedule(workerId, attempt, 1, initialBackoff);
+		}
+	}
+
+	private void schedule(int workerId, Callable<Boolean> attempt, int attemptCount, long backoff) {
+		// jitter so workers don't reconnect to a restarted peer in lock step
+		long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+		if (scheduler.isShutdown()) {
+			return;
+		}
+		scheduler.schedule(() -> {
+			boolean connected = false;
+			try {
+				connected = attempt.call();
+			} catch (Exception e) {
+				logger.fine("Reconnect to worker:" + workerId + " failed:" + e.getMessage());
+			}
+			if (connected) {
+				reconnecting.remove(workerId);
+				logger.info("Reconnected to worker:" + workerId + " after " + attemptCount + " attempts");
+			} else {
+				long next = Math.min(backoff * 2, maxBackoff);
+				if (attemptCount % 10 == 0) {
+					logger.warning("Unable to reconnect to worker:" + workerId + " after " + attemptCount
+							+ " attempts, retrying every " + next + "ms");
+				}
+				schedule(workerId, attempt, attemptCount + 1, next);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param workerId
+	 * @return true if the worker is being reconnected
+	 */
+	public boolean isReconnecting(int workerId) {
+		return reconnecting.contains(workerId);
+	}
+
+	/**
+	 * Stop reconnecting
+	 */
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+}
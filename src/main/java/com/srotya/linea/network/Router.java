@@ -16,16 +16,24 @@
 package com.srotya.linea.network;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import com.lmax.disruptor.EventFactory;
-import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
+import com.srotya.linea.ComponentRegistry;
+import com.srotya.linea.KeyHasher;
 import com.srotya.linea.MurmurHash;
 import com.srotya.linea.Topology;
 import com.srotya.linea.Tuple;
@@ -36,7 +44,10 @@ import com.srotya.linea.network.netty.NettyClient;
 import com.srotya.linea.network.netty.NettyServer;
 import com.srotya.linea.network.nio.TCPClient;
 import com.srotya.linea.network.nio.TCPServer;
+import com.srotya.linea.network.shm.SharedMemoryClient;
+import com.srotya.linea.network.shm.SharedMemoryServer;
 import com.srotya.linea.processors.BoltExecutor;
+import com.srotya.linea.utils.DisruptorUtils;
 
 /**
  * {@link Tuple} router that is responsible for sending messages across
@@ -46,13 +57,25 @@ import com.srotya.linea.processors.BoltExecutor;
  */
 public class Router<E extends Tuple> {
 
+	public static final String NETWORK_PREFIX = "network.";
+	/**
+	 * Transport implementation, {@link TCPServer} and {@link TCPClient} by
+	 * default or {@link NettyServer} and {@link NettyClient}
+	 */
+	public static final String NETWORK_SERVER_CLASS = "network.server.class";
+	public static final String NETWORK_CLIENT_CLASS = "network.client.class";
 	private static final Logger logger = Logger.getLogger(Router.class.getName());
-	private Disruptor<E> networkTranmissionDisruptor;
+	private List<Disruptor<E>> outboundDisruptors;
+	private RingBuffer<E>[] outboundRings;
 	private EventFactory<E> factory;
 	private Map<String, BoltExecutor<E>> executorMap;
+	private BoltExecutor<E>[] executors;
+	private ROUTING_TYPE[] routingTypes;
+	private KeyHasher<E>[] keyHashers;
 	private CopyTranslator<E> translator;
 	private Columbus columbus;
 	private NetworkServer<E> server;
+	private SharedMemoryServer<E> sharedMemoryServer;
 	private int workerCount;
 	private ExecutorService pool;
 	private int dataPort;
@@ -62,6 +85,10 @@ public class Router<E extends Tuple> {
 	private Class<E> classOf;
 	private String networkServerClass;
 	private String networkClientClass;
+	private Map<String, String> conf;
+	private BackpressureMonitor<E> backpressure;
+	private ScheduledExecutorService backpressureService;
+	private CreditManager<E> credits;
 
 	/**
 	 * @param classOf
@@ -80,16 +107,14 @@ public class Router<E extends Tuple> {
 		this.workerCount = workerCount;
 		this.executorMap = executorMap;
 		this.translator = translator;
+		this.conf = conf;
 
-		this.networkServerClass = conf.getOrDefault("network.server.class", TCPServer.class.getName());
-		this.networkClientClass = conf.getOrDefault("network.client.class", TCPClient.class.getName());
-
-//		this.networkServerClass = conf.getOrDefault("network.server.class", NettyServer.class.getName());
-//		this.networkClientClass = conf.getOrDefault("network.client.class", NettyClient.class.getName());
+		this.networkServerClass = conf.getOrDefault(NETWORK_SERVER_CLASS, TCPServer.class.getName());
+		this.networkClientClass = conf.getOrDefault(NETWORK_CLIENT_CLASS, TCPClient.class.getName());
 
 		this.bindAddress = conf.getOrDefault(Topology.WORKER_BIND_ADDRESS, Topology.DEFAULT_BIND_ADDRESS);
 		this.dataPort = Integer.parseInt(conf.getOrDefault(Topology.WORKER_DATA_PORT, Topology.DEFAULT_DATA_PORT));
-		this.clientThreadCount = Integer.parseInt(conf.getOrDefault(Topology.CLIENT_THREAD_COUNT, "1"));
+		this.clientThreadCount = Integer.parseInt(conf.getOrDefault(Topology.CLIENT_THREAD_COUNT, "0"));
 	}
 
 	/**
@@ -99,39 +124,164 @@ public class Router<E extends Tuple> {
 	 */
 	@SuppressWarnings("unchecked")
 	public void start() throws Exception {
+		compileRoutingTable();
 		while (columbus.getWorkerCount() < workerCount) {
 			Thread.sleep(2000);
 			logger.info("Waiting for worker discovery");
 		}
 		
-		pool = Executors.newFixedThreadPool(1 + clientThreadCount);
+		int maxWorkerId = 0;
+		List<Integer> colocatedWorkers = new ArrayList<>();
+		for (Integer workerId : columbus.getWorkerMap().keySet()) {
+			maxWorkerId = Math.max(maxWorkerId, workerId);
+			if (SharedMemoryServer.isColocated(conf, columbus, workerId)) {
+				colocatedWorkers.add(workerId);
+			}
+		}
+		int connectionGroups = clientThreadCount;
+		if (connectionGroups <= 0) {
+			// one outbound ring and client thread per destination worker
+			connectionGroups = maxWorkerId + 1;
+		}
+		// every server and client holds a thread
+		pool = Executors.newCachedThreadPool();
 		server = (NetworkServer<E>) Class.forName(networkServerClass).newInstance();
-		server.setBindAddress(bindAddress);
-		server.setDataPort(dataPort);
-		server.setClassOf(classOf);
-		server.setRouter(this);
-		server.setColumbus(getColumbus());
+		startServer(server);
+		if (!colocatedWorkers.isEmpty()) {
+			sharedMemoryServer = new SharedMemoryServer<>();
+			startServer(sharedMemoryServer);
+		}
+
+		// each connection group owns the workers with workerId % groups ==
+		// group and has it's own ring and client, so a client only sees the
+		// tuples it sends and a slow worker only backs up it's own ring.
+		// Workers on the same host get a shared memory client each.
+		outboundDisruptors = new ArrayList<>();
+		outboundRings = new RingBuffer[maxWorkerId + 1];
+		clients = new ArrayList<>();
+		for (int i = 0; i < connectionGroups; i++) {
+			Set<Integer> workerIds = new HashSet<>();
+			for (Integer workerId : columbus.getWorkerMap().keySet()) {
+				if (workerId % connectionGroups == i && workerId != columbus.getSelfWorkerId()
+						&& !colocatedWorkers.contains(workerId)) {
+					workerIds.add(workerId);
+				}
+			}
+			if (!workerIds.isEmpty()) {
+				startClient(networkClientClass, i, connectionGroups, workerIds);
+			}
+		}
+		for (Integer workerId : colocatedWorkers) {
+			startClient(SharedMemoryClient.class.getName(), workerId, maxWorkerId + 1,
+					Collections.singleton(workerId));
+		}
+
+		if (Boolean.parseBoolean(conf.getOrDefault(BackpressureMonitor.BACKPRESSURE_ENABLED,
+				BackpressureMonitor.DEFAULT_BACKPRESSURE_ENABLED))) {
+			backpressure = new BackpressureMonitor<>(conf, this, columbus, factory, executors);
+			backpressureService = Executors.newSingleThreadScheduledExecutor();
+			backpressureService.scheduleAtFixedRate(backpressure, backpressure.getCheckInterval(),
+					backpressure.getCheckInterval(), TimeUnit.MILLISECONDS);
+		}
+		if (Boolean.parseBoolean(conf.getOrDefault(CreditManager.FLOW_CONTROL_ENABLED,
+				CreditManager.DEFAULT_FLOW_CONTROL_ENABLED))) {
+			credits = new CreditManager<>(conf, this, columbus, factory, executors);
+			if (backpressureService == null) {
+				backpressureService = Executors.newSingleThreadScheduledExecutor();
+			}
+			backpressureService.scheduleAtFixedRate(credits, credits.getGrantInterval(), credits.getGrantInterval(),
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Configure a server and run it on the pool
+	 * 
+	 * @param transportServer
+	 */
+	private void startServer(NetworkServer<E> transportServer) {
+		transportServer.setBindAddress(bindAddress);
+		transportServer.setDataPort(dataPort);
+		transportServer.setClassOf(classOf);
+		transportServer.setRouter(this);
+		transportServer.setColumbus(getColumbus());
+		transportServer.setConf(conf);
 		pool.submit(() -> {
 			try {
-				server.start();
+				transportServer.start();
 			} catch (Exception e) {
-				throw new RuntimeException("TCP Transport Server failed", e);
+				throw new RuntimeException("Transport Server failed:" + transportServer.getClass().getName(), e);
 			}
 		});
+	}
+
+	/**
+	 * Start a client with it's own outbound ring for the supplied workers
+	 * 
+	 * @param clientClass
+	 * @param clientId
+	 * @param clientCount
+	 * @param workerIds
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	private void startClient(String clientClass, int clientId, int clientCount, Set<Integer> workerIds)
+			throws Exception {
+		NetworkClient<E> client = (NetworkClient<E>) Class.forName(clientClass).newInstance();
+		client.setColumbus(getColumbus());
+		client.setClientThreads(clientCount);
+		client.setClientThreadId(clientId);
+		client.setWorkerIds(workerIds);
+		client.setConf(conf);
+		client.start();
+		clients.add(client);
+		Disruptor<E> disruptor = new Disruptor<E>(factory, DisruptorUtils.getRingSize(conf, NETWORK_PREFIX), pool,
+				ProducerType.MULTI, DisruptorUtils.getWaitStrategy(conf, NETWORK_PREFIX));
+		disruptor.handleEventsWith(client);
+		RingBuffer<E> ring = disruptor.start();
+		outboundDisruptors.add(disruptor);
+		for (Integer workerId : workerIds) {
+			outboundRings[workerId] = ring;
+		}
+	}
 
-		networkTranmissionDisruptor = new Disruptor<E>(factory, 1024 * 8, pool, ProducerType.MULTI,
-				new YieldingWaitStrategy());
-		clients = new ArrayList<>(clientThreadCount);
-		for (int i = 0; i < clientThreadCount; i++) {
-			NetworkClient<E> client = (NetworkClient<E>) Class.forName(networkClientClass).newInstance();
-			client.setColumbus(getColumbus());
-			client.setClientThreads(clientThreadCount);
-			client.setClientThreadId(i);
-			client.start();
-			clients.add(client);
+	/**
+	 * Build flat routing tables indexed by the component ids assigned to each
+	 * {@link BoltExecutor} by the topology, so that per tuple routing is an
+	 * array lookup instead of a map lookup. Tuples name their next bolt by
+	 * the same component id, see {@link ComponentRegistry}.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void compileRoutingTable() {
+		executors = new BoltExecutor[executorMap.size()];
+		routingTypes = new ROUTING_TYPE[executorMap.size()];
+		keyHashers = new KeyHasher[executorMap.size()];
+		for (Entry<String, BoltExecutor<E>> entry : executorMap.entrySet()) {
+			BoltExecutor<E> executor = entry.getValue();
+			int componentId = executor.getComponentId();
+			executors[componentId] = executor;
+			routingTypes[componentId] = executor.getTemplateBoltInstance().getRoutingType();
+			keyHashers[componentId] = executor.getTemplateBoltInstance().getKeyHasher();
 		}
-		networkTranmissionDisruptor.handleEventsWith(clients.toArray(new NetworkClient[1]));
-		networkTranmissionDisruptor.start();
+	}
+
+	/**
+	 * Resolve component id for a bolt name
+	 * 
+	 * @param boltName
+	 * @return component id or -1 if there is no such bolt
+	 */
+	public int getComponentId(String boltName) {
+		int componentId = ComponentRegistry.getId(boltName);
+		return isBolt(componentId) ? componentId : -1;
+	}
+
+	/**
+	 * @param componentId
+	 * @return true if the component id is a bolt of this topology
+	 */
+	private boolean isBolt(int componentId) {
+		return componentId >= 0 && componentId < executors.length;
 	}
 
 	/**
@@ -140,8 +290,16 @@ public class Router<E extends Tuple> {
 	 * @throws Exception
 	 */
 	public void stop() throws Exception {
+		if (backpressureService != null) {
+			backpressureService.shutdownNow();
+		}
 		server.stop();
-		networkTranmissionDisruptor.shutdown();
+		if (sharedMemoryServer != null) {
+			sharedMemoryServer.stop();
+		}
+		for (Disruptor<E> disruptor : outboundDisruptors) {
+			disruptor.shutdown();
+		}
 		pool.shutdownNow();
 	}
 
@@ -153,7 +311,154 @@ public class Router<E extends Tuple> {
 	 * @param tuple
 	 */
 	public void directLocalRouteEvent(String nextBoltName, int taskId, E tuple) {
-		executorMap.get(nextBoltName).process(taskId, tuple);
+		directLocalRouteEvent(ComponentRegistry.getId(nextBoltName), taskId, tuple);
+	}
+
+	/**
+	 * Direct local routing
+	 * 
+	 * @param nextComponentId
+	 *            component id of the next bolt
+	 * @param taskId
+	 * @param tuple
+	 */
+	public void directLocalRouteEvent(int nextComponentId, int taskId, E tuple) {
+		if (isBolt(nextComponentId)) {
+			if (credits != null) {
+				credits.onReceived(tuple.getSenderWorkerId(), nextComponentId, taskId, 1);
+			}
+			executors[nextComponentId].process(taskId, tuple);
+		} else if (nextComponentId == BackpressureMonitor.BACKPRESSURE_TUPLE_ID) {
+			if (backpressure != null) {
+				backpressure.onSignal(tuple);
+			}
+		} else if (nextComponentId == CreditManager.CREDIT_TUPLE_ID) {
+			if (credits != null) {
+				credits.onGrant(tuple);
+			}
+		} else {
+			logger.severe("Unknown bolt:" + ComponentRegistry.getName(nextComponentId) + ", dropping event:" + tuple);
+		}
+	}
+
+	/**
+	 * Direct local routing of a batch of {@link Tuple}s received from the
+	 * network. Consecutive tuples for the same task are published to its ring
+	 * in one batch.
+	 * 
+	 * @param tuples
+	 * @param offset
+	 * @param length
+	 */
+	public void directLocalRouteEvents(E[] tuples, int offset, int length) {
+		int end = offset + length;
+		int start = offset;
+		while (start < end) {
+			E first = tuples[start];
+			int nextComponentId = first.getNextComponentId();
+			int taskId = first.getDestinationTaskId();
+			int runEnd = start + 1;
+			while (runEnd < end && tuples[runEnd].getDestinationTaskId() == taskId
+					&& tuples[runEnd].getNextComponentId() == nextComponentId) {
+				runEnd++;
+			}
+			if (isBolt(nextComponentId)) {
+				if (credits != null) {
+					for (int i = start; i < runEnd; i++) {
+						credits.onReceived(tuples[i].getSenderWorkerId(), nextComponentId, taskId, 1);
+					}
+				}
+				executors[nextComponentId].process(taskId, tuples, start, runEnd - start);
+			} else {
+				for (int i = start; i < runEnd; i++) {
+					directLocalRouteEvent(nextComponentId, taskId, tuples[i]);
+				}
+			}
+			start = runEnd;
+		}
+	}
+
+	/**
+	 * Direct local routing of a batch of {@link Tuple}s received from the
+	 * network without waiting for room in the rings of the tasks. Tuples are
+	 * routed in order up to the first one whose task's ring is full.
+	 * 
+	 * @param tuples
+	 * @param offset
+	 * @param length
+	 * @return number of tuples from the start of the batch that were routed
+	 */
+	public int tryDirectLocalRouteEvents(E[] tuples, int offset, int length) {
+		int end = offset + length;
+		int start = offset;
+		while (start < end) {
+			E first = tuples[start];
+			int nextComponentId = first.getNextComponentId();
+			int taskId = first.getDestinationTaskId();
+			int runEnd = start + 1;
+			while (runEnd < end && tuples[runEnd].getDestinationTaskId() == taskId
+					&& tuples[runEnd].getNextComponentId() == nextComponentId) {
+				runEnd++;
+			}
+			if (isBolt(nextComponentId)) {
+				int published = executors[nextComponentId].tryProcess(taskId, tuples, start, runEnd - start);
+				if (credits != null) {
+					for (int i = start; i < start + published; i++) {
+						credits.onReceived(tuples[i].getSenderWorkerId(), nextComponentId, taskId, 1);
+					}
+				}
+				if (published < runEnd - start) {
+					return start + published - offset;
+				}
+			} else {
+				for (int i = start; i < runEnd; i++) {
+					directLocalRouteEvent(nextComponentId, taskId, tuples[i]);
+				}
+			}
+			start = runEnd;
+		}
+		return length;
+	}
+
+	/**
+	 * @param destinationWorker
+	 * @return outbound ring of the client owning the worker
+	 */
+	private RingBuffer<E> getOutboundRing(int destinationWorker) {
+		return outboundRings[destinationWorker];
+	}
+
+	/**
+	 * Publish a {@link Tuple} with destination already set to the outbound
+	 * ring of it's destination worker without blocking
+	 * 
+	 * @param tuple
+	 * @return true if the tuple was published, false if the ring is full
+	 */
+	public boolean tryNetworkRouteEvent(E tuple) {
+		return getOutboundRing(tuple.getDestinationWorkerId()).tryPublishEvent(translator, tuple);
+	}
+
+	/**
+	 * @return true if spouts should hold emission because a ring buffer on
+	 *         this or a remote worker is over the backpressure watermark
+	 */
+	public boolean isThrottled() {
+		return backpressure != null && backpressure.isThrottled();
+	}
+
+	/**
+	 * @return credit manager or null if flow control is disabled
+	 */
+	public CreditManager<E> getCreditManager() {
+		return credits;
+	}
+
+	/**
+	 * @return backpressure monitor or null if backpressure is disabled
+	 */
+	public BackpressureMonitor<E> getBackpressureMonitor() {
+		return backpressure;
 	}
 
 	/**
@@ -164,12 +469,24 @@ public class Router<E extends Tuple> {
 	 * @param tuple
 	 */
 	public void routeTuple(E tuple) {
-		BoltExecutor<E> nextBolt = executorMap.get(tuple.getNextBoltId());
-		if (nextBolt == null) {
+		int componentId = tuple.getNextComponentId();
+		if (!isBolt(componentId)) {
 			// drop this event
-			System.err.println("Next bolt null, droping event:" + tuple);
+			logger.warning("Next bolt null, dropping event:" + tuple);
 			return;
 		}
+		routeTuple(componentId, tuple);
+	}
+
+	/**
+	 * {@link Router} method called for {@link Tuple} routing once the
+	 * component id of the next bolt is known.
+	 * 
+	 * @param componentId
+	 * @param tuple
+	 */
+	public void routeTuple(int componentId, E tuple) {
+		BoltExecutor<E> nextBolt = executors[componentId];
 		int taskId = -1;
 		int workerCount = columbus.getWorkerCount();
 
@@ -178,17 +495,30 @@ public class Router<E extends Tuple> {
 															// local
 															// parallelism
 		totalParallelism = workerCount * totalParallelism;
-		switch (nextBolt.getTemplateBoltInstance().getRoutingType()) {
+		switch (routingTypes[componentId]) {
 		case GROUPBY:
 			Object key = tuple.getGroupByKey();
-			if (key != null) {
-				taskId = Math.abs(MurmurHash.hash32(key.toString()) % totalParallelism);
+			KeyHasher<E> hasher = keyHashers[componentId];
+			if (hasher != null && !tuple.isAck()) {
+				taskId = Math.abs(hasher.hash(tuple) % totalParallelism);
+			} else if (key != null) {
+				taskId = Math.abs(KeyHasher.hashKey(key) % totalParallelism);
+			} else if (tuple.isAck()) {
+				// acks are grouped by their origin tuple id without boxing
+				taskId = Math.abs(MurmurHash.hash32(tuple.getOriginTupleId()) % totalParallelism);
 			} else {
-				System.err.println("Droping event, missing field group by:" + tuple.getNextBoltId());
+				logger.warning("Dropping event, missing field group by:" + tuple.getNextBoltId());
 				// discard event
+				return;
 			}
 			break;
 		case SHUFFLE:
+			if (nextBolt.isChained()) {
+				// chained bolts have the same parallelism as their upstream
+				// bolt, keep the tuple on the emitting task's thread
+				taskId = tuple.getTaskId();
+				break;
+			}
 			// adding local only shuffling to reduce network traffic
 			taskId = nextBolt.getParallelism() * columbus.getSelfWorkerId()
 					+ Math.abs((int) (tuple.getTupleId() % nextBolt.getParallelism()));
@@ -208,7 +538,7 @@ public class Router<E extends Tuple> {
 	 */
 	public void routeToTaskId(E tuple, BoltExecutor<E> nextBolt, int taskId) {
 		if (nextBolt == null) {
-			nextBolt = executorMap.get(tuple.getNextBoltId());
+			nextBolt = executors[tuple.getNextComponentId()];
 		}
 		int destinationWorker = 0;
 		if (taskId >= nextBolt.getParallelism()) {
@@ -218,10 +548,15 @@ public class Router<E extends Tuple> {
 		if (destinationWorker == columbus.getSelfWorkerId()) {
 			nextBolt.process(taskId, tuple);
 		} else {
-			// logger.info("Network routing");
+			if (credits != null && !nextBolt.isChained()) {
+				// hold this thread rather than the network ring if the task
+				// is out of credit
+				credits.acquire(nextBolt.getComponentId(), taskId, destinationWorker);
+			}
+			tuple.setSenderWorkerId(columbus.getSelfWorkerId());
 			tuple.setDestinationTaskId(taskId);
 			tuple.setDestinationWorkerId(destinationWorker);
-			networkTranmissionDisruptor.publishEvent(translator, tuple);
+			getOutboundRing(destinationWorker).publishEvent(translator, tuple);
 		}
 	}
 
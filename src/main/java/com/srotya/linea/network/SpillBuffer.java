@@ -0,0 +1,178 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.logging.Logger;
+
+/**
+ * Bounded buffer of frames for a worker whose connection is down. Frames are
+ * copied in and kept until the connection is back, once the byte limit is
+ * reached the oldest frames are dropped. Tuples of reliable spouts are
+ * replayed once the acker times them out, tuples of unreliable spouts are
+ * lost. <br>
+ * <br>
+ * Losses are counted by {@link #getDroppedTuples()} and logged once when an
+ * outage starts dropping frames and once with the total when the buffer is
+ * drained after the connection is back. Not thread-safe, owned by the client
+ * thread.
+ * 
+ * @author ambud
+ */
+public class SpillBuffer {
+
+	public static final String SPILL_MAX_BYTES = "network.spill.max.bytes";
+	public static final String DEFAULT_SPILL_MAX_BYTES = String.valueOf(16 * 1024 * 1024);
+	private static final Logger logger = Logger.getLogger(SpillBuffer.class.getName());
+	private ArrayDeque<ByteBuffer> frames;
+	private ArrayDeque<Integer> counts;
+	private long maxBytes;
+	private long bytes;
+	private long droppedFrames;
+	private long droppedTuples;
+	private long outageDroppedTuples;
+	private int workerId;
+
+	/**
+	 * @param maxBytes
+	 */
+	public SpillBuffer(long maxBytes) {
+		this(maxBytes, -1);
+	}
+
+	/**
+	 * @param maxBytes
+	 * @param workerId
+	 *            worker the frames are for, used in log messages
+	 */
+	public SpillBuffer(long maxBytes, int workerId) {
+		this.maxBytes = maxBytes;
+		this.workerId = workerId;
+		this.frames = new ArrayDeque<>();
+		this.counts = new ArrayDeque<>();
+	}
+
+	/**
+	 * Copy a frame into the buffer, dropping the oldest frames if it's full
+	 * 
+	 * @param frame
+	 *            frame between position and limit, the position isn't
+	 *            changed
+	 * @param count
+	 *            number of tuples in the frame
+	 * @return false if the frame was larger than the buffer and was dropped
+	 */
+	public boolean offer(ByteBuffer frame, int count) {
+		int length = frame.remaining();
+		if (length > maxBytes) {
+			drop(count);
+			return false;
+		}
+		while (bytes + length > maxBytes) {
+			bytes -= frames.poll().capacity();
+			drop(counts.poll());
+		}
+		ByteBuffer copy = ByteBuffer.allocate(length);
+		copy.put(frame.duplicate());
+		copy.flip();
+		frames.add(copy);
+		counts.add(count);
+		bytes += length;
+		return true;
+	}
+
+	private void drop(int count) {
+		if (outageDroppedTuples == 0) {
+			logger.warning(
+					"Spill buffer for WorkerId:" + workerId + " is full, dropping frames until the connection is back");
+		}
+		droppedFrames++;
+		droppedTuples += count;
+		outageDroppedTuples += count;
+	}
+
+	/**
+	 * Called by the client once the connection is back and every spilled
+	 * frame is written, logs the tuples dropped during the outage
+	 */
+	public void endOutage() {
+		if (outageDroppedTuples > 0) {
+			logger.warning("Dropped " + outageDroppedTuples + " tuples for WorkerId:" + workerId
+					+ " while it's connection was down");
+			outageDroppedTuples = 0;
+		}
+	}
+
+	/**
+	 * @return oldest frame ready to be written without removing it or null if
+	 *         the buffer is empty
+	 */
+	public ByteBuffer peek() {
+		return frames.peek();
+	}
+
+	/**
+	 * Remove the oldest frame once it's written
+	 */
+	public void remove() {
+		ByteBuffer frame = frames.poll();
+		if (frame != null) {
+			counts.poll();
+			bytes -= frame.capacity();
+		}
+	}
+
+	/**
+	 * Drop every frame
+	 */
+	public void clear() {
+		while (!frames.isEmpty()) {
+			bytes -= frames.poll().capacity();
+			drop(counts.poll());
+		}
+	}
+
+	/**
+	 * @return true if there are no frames
+	 */
+	public boolean isEmpty() {
+		return frames.isEmpty();
+	}
+
+	/**
+	 * @return bytes buffered
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return frames dropped since the buffer was created
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * @return tuples dropped since the buffer was created, tuples of
+	 *         unreliable spouts among them are lost
+	 */
+	public long getDroppedTuples() {
+		return droppedTuples;
+	}
+
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import com.srotya.linea.AbstractTuple;
+import com.srotya.linea.ComponentRegistry;
+import com.srotya.linea.utils.LongList;
+
+/**
+ * {@link Kryo} serializer for {@link AbstractTuple}s that splits a tuple into
+ * a routing header and a payload. <br>
+ * <br>
+ * The header (ids, routing fields, group by key and value) is always decoded.
+ * The payload, the fields declared by the concrete tuple class, is written
+ * length prefixed so a tuple that opts in with
+ * {@link AbstractTuple#isLazyPayload()} keeps it as bytes until it's
+ * accessed, and a tuple whose payload was never accessed writes those bytes
+ * back out as they are. <br>
+ * <br>
+ * Header fields are hand encoded: task, worker and component ids as zig-zag
+ * varints. {@link ComponentRegistry} ids are assigned from the topology
+ * definition so every worker agrees on them and they are written as they
+ * are. <br>
+ * <br>
+ * The payload is serialized with a separate {@link Kryo} instance so that
+ * it's self contained and can be decoded outside of the enclosing read.
+ * Instances are created per tuple class by each thread's {@link Kryo}.
+ * 
+ * @author ambud
+ */
+public class TupleSerializer extends Serializer<AbstractTuple> {
+
+	private Class<? extends AbstractTuple> type;
+	private Kryo payloadKryo;
+	private PayloadSerializer payloadSerializer;
+	private Output scratch;
+
+	public TupleSerializer(Kryo kryo, Class<? extends AbstractTuple> type) {
+		this.type = type;
+		this.scratch = new Output(1024, -1);
+	}
+
+	@Override
+	public void write(Kryo kryo, Output output, AbstractTuple tuple) {
+		output.writeLong(tuple.getTupleId());
+		output.writeLong(tuple.getOriginTupleId());
+		output.writeVarInt(tuple.getSourceWorkerId(), false);
+		output.writeVarInt(tuple.getSenderWorkerId(), false);
+		output.writeVarInt(tuple.getTaskId(), false);
+		output.writeVarInt(tuple.getDestinationTaskId(), false);
+		output.writeVarInt(tuple.getDestinationWorkerId(), false);
+		output.writeVarInt(tuple.getNextComponentId(), false);
+		output.writeVarInt(tuple.getComponentId(), false);
+		output.writeBoolean(tuple.isAck());
+		kryo.writeClassAndObject(output, tuple.getGroupByKey());
+		kryo.writeClassAndObject(output, tuple.getGroupByValue());
+		LongList sourceIds = tuple.getSourceIds();
+		output.writeVarInt(sourceIds.size(), true);
+		for (int i = 0; i < sourceIds.size(); i++) {
+			output.writeLong(sourceIds.getLong(i));
+		}
+		byte[] payload = tuple.getPayload();
+		if (payload != null) {
+			// payload was never accessed, pass it through
+			output.writeVarInt(payload.length, true);
+			output.writeBytes(payload);
+		} else {
+			scratch.clear();
+			initPayloadKryo();
+			payloadKryo.writeObject(scratch, tuple, payloadSerializer);
+			output.writeVarInt(scratch.position(), true);
+			output.writeBytes(scratch.getBuffer(), 0, scratch.position());
+		}
+	}
+
+	@Override
+	public AbstractTuple read(Kryo kryo, Input input, Class<AbstractTuple> type) {
+		AbstractTuple tuple = kryo.newInstance(type);
+		kryo.reference(tuple);
+		tuple.setEventId(input.readLong());
+		tuple.setOriginTupleId(input.readLong());
+		tuple.setSourceWorkerId(input.readVarInt(false));
+		tuple.setSenderWorkerId(input.readVarInt(false));
+		tuple.setTaskId(input.readVarInt(false));
+		tuple.setDestinationTaskId(input.readVarInt(false));
+		tuple.setDestinationWorkerId(input.readVarInt(false));
+		tuple.setNextComponentId(input.readVarInt(false));
+		tuple.setComponentId(input.readVarInt(false));
+		tuple.setAck(input.readBoolean());
+		tuple.setGroupByKey(kryo.readClassAndObject(input));
+		tuple.setGroupByValue(kryo.readClassAndObject(input));
+		LongList sourceIds = tuple.getSourceIds();
+		sourceIds.clear();
+		int sourceIdCount = input.readVarInt(true);
+		for (int i = 0; i < sourceIdCount; i++) {
+			sourceIds.addLong(input.readLong());
+		}
+		int length = input.readVarInt(true);
+		if (tuple.isLazyPayload()) {
+			tuple.setPayload(input.readBytes(length));
+		} else {
+			readPayload(tuple, input);
+		}
+		return tuple;
+	}
+
+	/**
+	 * Decode a serialized payload into the fields of the tuple
+	 * 
+	 * @param tuple
+	 * @param payload
+	 */
+	public static void readPayload(AbstractTuple tuple, byte[] payload) {
+		Kryo kryo = KryoCodec.getKryo();
+		TupleSerializer serializer = (TupleSerializer) kryo.getSerializer(tuple.getClass());
+		serializer.readPayload(tuple, new Input(payload));
+	}
+
+	private void readPayload(AbstractTuple tuple, Input input) {
+		initPayloadKryo();
+		payloadSerializer.target = tuple;
+		try {
+			payloadKryo.readObject(input, tuple.getClass(), payloadSerializer);
+		} finally {
+			payloadSerializer.target = null;
+		}
+	}
+
+	/**
+	 * Build the payload {@link Kryo} on first use, building it eagerly would
+	 * recurse since it registers the tuple class as well
+	 */
+	private void initPayloadKryo() {
+		if (payloadKryo == null) {
+			payloadKryo = KryoCodec.newKryo();
+			payloadSerializer = new PayloadSerializer(payloadKryo, type);
+		}
+	}
+
+	/**
+	 * Field serializer of the payload fields of a tuple class, reads into an
+	 * existing tuple instead of creating one
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static class PayloadSerializer extends FieldSerializer {
+
+		private AbstractTuple target;
+
+		public PayloadSerializer(Kryo kryo, Class<? extends AbstractTuple> type) {
+			super(kryo, type);
+			for (Field field : AbstractTuple.class.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+					removeField(field.getName());
+				}
+			}
+		}
+
+		@Override
+		protected Object create(Kryo kryo, Input input, Class type) {
+			return target;
+		}
+
+	}
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.compression;
+
+/**
+ * Frame compression codecs, the id is what peers exchange when negotiating a
+ * connection.
+ * 
+ * @author ambud
+ */
+public enum COMPRESSION_TYPE {
+
+	NONE(0), LZ4(1), DEFLATE(2);
+
+	private final int id;
+
+	private COMPRESSION_TYPE(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return the id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return a new compressor for this codec or null for {@link #NONE}
+	 */
+	public Compressor newCompressor() {
+		switch (this) {
+		case LZ4:
+			return new LZ4Compressor();
+		case DEFLATE:
+			return new DeflateCompressor();
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @param id
+	 * @return codec for the id or null if this build doesn't know it
+	 */
+	public static COMPRESSION_TYPE fromId(int id) {
+		for (COMPRESSION_TYPE type : values()) {
+			if (type.id == id) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.compression;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process wide counters of frame compression, used to judge whether a codec
+ * pays for itself i.e. the bytes it saves against the CPU time it costs.
+ * 
+ * @author ambud
+ */
+public class CompressionMetrics {
+
+	private static final CompressionMetrics INSTANCE = new CompressionMetrics();
+	private LongAdder compressedFrames = new LongAdder();
+	private LongAdder storedFrames = new LongAdder();
+	private LongAdder rawBytes = new LongAdder();
+	private LongAdder compressedBytes = new LongAdder();
+	private LongAdder compressNanos = new LongAdder();
+	private LongAdder decompressedFrames = new LongAdder();
+	private LongAdder decompressNanos = new LongAdder();
+
+	private CompressionMetrics() {
+	}
+
+	/**
+	 * @return the instance
+	 */
+	public static CompressionMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Record an attempt to compress a frame
+	 * 
+	 * @param rawLength
+	 * @param compressedLength
+	 *            bytes sent on the wire, rawLength if the frame was stored
+	 * @param nanos
+	 *            time spent compressing, 0 if compression wasn't attempted
+	 */
+	public void recordCompress(int rawLength, int compressedLength, long nanos) {
+		if (compressedLength < rawLength) {
+			compressedFrames.increment();
+		} else {
+			storedFrames.increment();
+		}
+		rawBytes.add(rawLength);
+		compressedBytes.add(compressedLength);
+		compressNanos.add(nanos);
+	}
+
+	/**
+	 * @param nanos
+	 *            time spent decompressing a frame
+	 */
+	public void recordDecompress(long nanos) {
+		decompressedFrames.increment();
+		decompressNanos.add(nanos);
+	}
+
+	/**
+	 * @return frames sent compressed
+	 */
+	public long getCompressedFrames() {
+		return compressedFrames.sum();
+	}
+
+	/**
+	 * @return frames sent as is on a compressed connection because they were
+	 *         too small or didn't compress
+	 */
+	public long getStoredFrames() {
+		return storedFrames.sum();
+	}
+
+	/**
+	 * @return payload bytes before compression
+	 */
+	public long getRawBytes() {
+		return rawBytes.sum();
+	}
+
+	/**
+	 * @return payload bytes written to the wire
+	 */
+	public long getCompressedBytes() {
+		return compressedBytes.sum();
+	}
+
+	/**
+	 * @return raw bytes over wire bytes, 1 if nothing was sent
+	 */
+	public double getRatio() {
+		long compressed = compressedBytes.sum();
+		return compressed == 0 ? 1 : (double) rawBytes.sum() / compressed;
+	}
+
+	/**
+	 * @return total time spent compressing
+	 */
+	public long getCompressNanos() {
+		return compressNanos.sum();
+	}
+
+	/**
+	 * @return frames decompressed
+	 */
+	public long getDecompressedFrames() {
+		return decompressedFrames.sum();
+	}
+
+	/**
+	 * @return total time spent decompressing
+	 */
+	public long getDecompressNanos() {
+		return decompressNanos.sum();
+	}
+
+	/**
+	 * Clear all counters
+	 */
+	public void reset() {
+		compressedFrames.reset();
+		storedFrames.reset();
+		rawBytes.reset();
+		compressedBytes.reset();
+		compressNanos.reset();
+		decompressedFrames.reset();
+		decompressNanos.reset();
+	}
+
+	@Override
+	public String toString() {
+		long raw = rawBytes.sum();
+		return "CompressionMetrics [compressedFrames=" + getCompressedFrames() + ", storedFrames=" + getStoredFrames()
+				+ ", rawBytes=" + raw + ", compressedBytes=" + getCompressedBytes() + ", ratio="
+				+ String.format("%.2f", getRatio()) + ", compressNsPerByte="
+				+ String.format("%.2f", raw == 0 ? 0 : (double) getCompressNanos() / raw) + ", decompressNanos="
+				+ getDecompressNanos() + "]";
+	}
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.compression;
+
+import java.io.IOException;
+
+/**
+ * Block compressor used to compress frames, instances are not thread-safe.
+ * 
+ * @author ambud
+ */
+public interface Compressor {
+
+	/**
+	 * @param length
+	 * @return size of the destination buffer {@link #compress} needs for
+	 *         length bytes of input
+	 */
+	public int maxCompressedLength(int length);
+
+	/**
+	 * Compress a block
+	 * 
+	 * @param src
+	 * @param srcOffset
+	 * @param length
+	 * @param dst
+	 *            at least {@link #maxCompressedLength(int)} bytes from
+	 *            dstOffset
+	 * @param dstOffset
+	 * @return compressed length or -1 if the block doesn't compress
+	 */
+	public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset);
+
+	/**
+	 * Decompress a block
+	 * 
+	 * @param src
+	 * @param srcOffset
+	 * @param length
+	 *            compressed length
+	 * @param dst
+	 * @param dstOffset
+	 * @param rawLength
+	 *            exact decompressed length
+	 * @throws IOException
+	 *             if the block is corrupt
+	 */
+	public void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int rawLength)
+			throws IOException;
+
+}
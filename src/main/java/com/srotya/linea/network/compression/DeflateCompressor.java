@@ -0,0 +1,78 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.compression;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link Compressor} backed by the JDK's raw deflate at its fastest level,
+ * better ratio than {@link LZ4Compressor} at a much higher CPU cost.
+ * 
+ * @author ambud
+ */
+public class DeflateCompressor implements Compressor {
+
+	private Deflater deflater;
+	private Inflater inflater;
+
+	public DeflateCompressor() {
+		deflater = new Deflater(Deflater.BEST_SPEED, true);
+		inflater = new Inflater(true);
+	}
+
+	@Override
+	public int maxCompressedLength(int length) {
+		return length + (length >> 12) + (length >> 14) + (length >> 25) + 64;
+	}
+
+	@Override
+	public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+		deflater.reset();
+		deflater.setInput(src, srcOffset, length);
+		deflater.finish();
+		int compressed = deflater.deflate(dst, dstOffset, length);
+		if (!deflater.finished() || compressed >= length) {
+			return -1;
+		}
+		return compressed;
+	}
+
+	@Override
+	public void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int rawLength)
+			throws IOException {
+		inflater.reset();
+		inflater.setInput(src, srcOffset, length);
+		try {
+			int read = 0;
+			while (read < rawLength && !inflater.finished()) {
+				int n = inflater.inflate(dst, dstOffset + read, rawLength - read);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				read += n;
+			}
+			if (read != rawLength) {
+				throw new IOException("Corrupt deflate block, expected " + rawLength + " bytes but got " + read);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt deflate block", e);
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.compression;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.srotya.linea.network.FrameEncoder;
+
+/**
+ * Compresses and decompresses frame payloads of one connection with the
+ * codec negotiated for it. <br>
+ * <br>
+ * A frame on a compressed connection carries a third header int with the
+ * uncompressed payload length, followed by the compressed payload. Payloads
+ * below {@link #COMPRESSION_MIN_SIZE} or that don't shrink are stored as is
+ * and flagged by a negative (or zero) raw length, so the receiver never pays
+ * for blocks that didn't compress. <br>
+ * <br>
+ * Scratch arrays are reused across frames, instances are not thread-safe.
+ * 
+ * @author ambud
+ */
+public class FrameCompressor {
+
+	public static final String COMPRESSION = "network.compression";
+	public static final String DEFAULT_COMPRESSION = COMPRESSION_TYPE.NONE.name();
+	public static final String COMPRESSION_MIN_SIZE = "network.compression.min.size";
+	public static final String DEFAULT_COMPRESSION_MIN_SIZE = "1024";
+	public static final String COMPRESSION_ACCEPT = "network.compression.accept";
+	public static final String DEFAULT_COMPRESSION_ACCEPT = "true";
+	public static final int HEADER_SIZE = FrameEncoder.HEADER_SIZE + 4;
+	private COMPRESSION_TYPE type;
+	private Compressor compressor;
+	private int minSize;
+	private byte[] raw = new byte[0];
+	private byte[] compressed = new byte[0];
+	private CompressionMetrics metrics = CompressionMetrics.getInstance();
+
+	/**
+	 * @param type
+	 *            anything but {@link COMPRESSION_TYPE#NONE}
+	 * @param minSize
+	 */
+	public FrameCompressor(COMPRESSION_TYPE type, int minSize) {
+		this.type = type;
+		this.minSize = minSize;
+		this.compressor = type.newCompressor();
+		if (compressor == null) {
+			throw new IllegalArgumentException("No compressor for " + type);
+		}
+	}
+
+	/**
+	 * @param conf
+	 * @return codec this worker asks for on outbound connections
+	 */
+	public static COMPRESSION_TYPE getRequested(Map<String, String> conf) {
+		return COMPRESSION_TYPE.valueOf(conf.getOrDefault(COMPRESSION, DEFAULT_COMPRESSION).trim().toUpperCase());
+	}
+
+	/**
+	 * Pick the codec for an inbound connection, {@link COMPRESSION_TYPE#NONE}
+	 * if the requested one is unknown or compression isn't accepted
+	 * 
+	 * @param conf
+	 * @param requestedId
+	 * @return accepted codec
+	 */
+	public static COMPRESSION_TYPE accept(Map<String, String> conf, int requestedId) {
+		COMPRESSION_TYPE type = COMPRESSION_TYPE.fromId(requestedId);
+		if (type == null || !Boolean.parseBoolean(conf.getOrDefault(COMPRESSION_ACCEPT, DEFAULT_COMPRESSION_ACCEPT))) {
+			return COMPRESSION_TYPE.NONE;
+		}
+		return type;
+	}
+
+	/**
+	 * @param conf
+	 * @param type
+	 * @return compressor for the type, null for {@link COMPRESSION_TYPE#NONE}
+	 */
+	public static FrameCompressor fromConf(Map<String, String> conf, COMPRESSION_TYPE type) {
+		if (type == COMPRESSION_TYPE.NONE) {
+			return null;
+		}
+		return new FrameCompressor(type, Integer
+				.parseInt(conf.getOrDefault(COMPRESSION_MIN_SIZE, DEFAULT_COMPRESSION_MIN_SIZE)));
+	}
+
+	/**
+	 * @param length
+	 * @return scratch array of at least length bytes to copy the raw payload
+	 *         into before calling {@link #compress(int)}
+	 */
+	public byte[] getRawBuffer(int length) {
+		if (raw.length < length) {
+			raw = new byte[length];
+		}
+		return raw;
+	}
+
+	/**
+	 * Compress the raw payload in {@link #getRawBuffer(int)} into
+	 * {@link #getCompressed()} after {@link #HEADER_SIZE} bytes of space for
+	 * the frame header
+	 * 
+	 * @param rawLength
+	 * @return compressed length or -1 if the payload should be stored
+	 */
+	public int compress(int rawLength) {
+		if (rawLength < minSize) {
+			metrics.recordCompress(rawLength, rawLength, 0);
+			return -1;
+		}
+		int required = HEADER_SIZE + compressor.maxCompressedLength(rawLength);
+		if (compressed.length < required) {
+			compressed = new byte[required];
+		}
+		long ts = System.nanoTime();
+		int length = compressor.compress(raw, 0, rawLength, compressed, HEADER_SIZE);
+		metrics.recordCompress(rawLength, length < 0 ? rawLength : length, System.nanoTime() - ts);
+		return length;
+	}
+
+	/**
+	 * @return compressed frame, payload starts at {@link #HEADER_SIZE}
+	 */
+	public byte[] getCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * @param length
+	 * @return scratch array of at least length bytes to copy a compressed
+	 *         payload into before calling {@link #decompress(int, int)}
+	 */
+	public byte[] getInputBuffer(int length) {
+		if (compressed.length < length) {
+			compressed = new byte[length];
+		}
+		return compressed;
+	}
+
+	/**
+	 * Decompress the payload in {@link #getInputBuffer(int)}
+	 * 
+	 * @param length
+	 * @param rawLength
+	 * @return array holding the raw payload at offset 0
+	 * @throws IOException
+	 *             if the payload is corrupt
+	 */
+	public byte[] decompress(int length, int rawLength) throws IOException {
+		byte[] out = getRawBuffer(rawLength);
+		long ts = System.nanoTime();
+		compressor.decompress(compressed, 0, length, out, 0, rawLength);
+		metrics.recordDecompress(System.nanoTime() - ts);
+		return out;
+	}
+
+	/**
+	 * @return the type
+	 */
+	public COMPRESSION_TYPE getType() {
+		return type;
+	}
+
+}
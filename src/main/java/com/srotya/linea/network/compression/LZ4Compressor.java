@@ -0,0 +1,191 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Dependency free implementation of the LZ4 block format, the greedy single
+ * hash probe compressor trades ratio for speed like the reference fast
+ * compressor. Compressed blocks are compatible with other LZ4 block
+ * decoders.
+ * 
+ * @author ambud
+ */
+public class LZ4Compressor implements Compressor {
+
+	private static final int MIN_MATCH = 4;
+	private static final int HASH_LOG = 12;
+	private static final int MAX_DISTANCE = 65535;
+	private static final int LAST_LITERALS = 5;
+	private static final int MF_LIMIT = 12;
+	private static final int RUN_MASK = 15;
+	private static final int ML_MASK = 15;
+	private static final int SKIP_TRIGGER = 6;
+	private int[] hashTable;
+
+	public LZ4Compressor() {
+		this.hashTable = new int[1 << HASH_LOG];
+	}
+
+	@Override
+	public int maxCompressedLength(int length) {
+		return length + length / 255 + 16;
+	}
+
+	@Override
+	public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+		int srcEnd = srcOffset + length;
+		int matchFindLimit = srcEnd - MF_LIMIT;
+		int matchLimit = srcEnd - LAST_LITERALS;
+		int anchor = srcOffset;
+		int ip = srcOffset;
+		int op = dstOffset;
+		if (length > MF_LIMIT) {
+			Arrays.fill(hashTable, -1);
+			hashTable[hash(readInt(src, ip))] = ip;
+			ip++;
+			int searches = 1 << SKIP_TRIGGER;
+			while (ip < matchFindLimit) {
+				int sequence = readInt(src, ip);
+				int h = hash(sequence);
+				int ref = hashTable[h];
+				hashTable[h] = ip;
+				if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+					// step further ahead the longer nothing matches
+					ip += searches++ >>> SKIP_TRIGGER;
+					continue;
+				}
+				searches = 1 << SKIP_TRIGGER;
+				while (ip > anchor && ref > srcOffset && src[ip - 1] == src[ref - 1]) {
+					ip--;
+					ref--;
+				}
+				int literals = ip - anchor;
+				int token = op++;
+				op = writeLength(dst, op, literals);
+				System.arraycopy(src, anchor, dst, op, literals);
+				op += literals;
+				int offset = ip - ref;
+				dst[op++] = (byte) offset;
+				dst[op++] = (byte) (offset >>> 8);
+				ip += MIN_MATCH;
+				ref += MIN_MATCH;
+				int start = ip;
+				while (ip < matchLimit && src[ip] == src[ref]) {
+					ip++;
+					ref++;
+				}
+				int matchLength = ip - start;
+				dst[token] = (byte) ((Math.min(literals, RUN_MASK) << 4) | Math.min(matchLength, ML_MASK));
+				op = writeLength(dst, op, matchLength);
+				anchor = ip;
+				if (ip < matchFindLimit) {
+					hashTable[hash(readInt(src, ip - 2))] = ip - 2;
+				}
+			}
+		}
+		int literals = srcEnd - anchor;
+		dst[op++] = (byte) (Math.min(literals, RUN_MASK) << 4);
+		op = writeLength(dst, op, literals);
+		System.arraycopy(src, anchor, dst, op, literals);
+		op += literals;
+		int compressed = op - dstOffset;
+		return compressed < length ? compressed : -1;
+	}
+
+	@Override
+	public void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int rawLength)
+			throws IOException {
+		int ip = srcOffset;
+		int srcEnd = srcOffset + length;
+		int op = dstOffset;
+		int dstEnd = dstOffset + rawLength;
+		try {
+			while (ip < srcEnd) {
+				int token = src[ip++] & 0xFF;
+				int literals = token >>> 4;
+				if (literals == RUN_MASK) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						literals += b;
+					} while (b == 255);
+				}
+				if (op + literals > dstEnd || ip + literals > srcEnd) {
+					throw new IOException("Corrupt LZ4 block, literals overflow");
+				}
+				System.arraycopy(src, ip, dst, op, literals);
+				ip += literals;
+				op += literals;
+				if (ip == srcEnd) {
+					break;
+				}
+				int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+				ip += 2;
+				int matchLength = token & ML_MASK;
+				if (matchLength == ML_MASK) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				int ref = op - offset;
+				if (offset == 0 || ref < dstOffset || op + matchLength > dstEnd) {
+					throw new IOException("Corrupt LZ4 block, invalid match");
+				}
+				if (offset >= matchLength) {
+					System.arraycopy(dst, ref, dst, op, matchLength);
+					op += matchLength;
+				} else {
+					// overlapping match repeats the last offset bytes
+					for (int i = 0; i < matchLength; i++) {
+						dst[op++] = dst[ref++];
+					}
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Corrupt LZ4 block, truncated", e);
+		}
+		if (op != dstEnd) {
+			throw new IOException("Corrupt LZ4 block, expected " + rawLength + " bytes but got " + (op - dstOffset));
+		}
+	}
+
+	private static int writeLength(byte[] dst, int op, int length) {
+		if (length >= RUN_MASK) {
+			length -= RUN_MASK;
+			while (length >= 255) {
+				dst[op++] = (byte) 255;
+				length -= 255;
+			}
+			dst[op++] = (byte) length;
+		}
+		return op;
+	}
+
+	private static int readInt(byte[] src, int i) {
+		return (src[i] & 0xFF) | ((src[i + 1] & 0xFF) << 8) | ((src[i + 2] & 0xFF) << 16) | ((src[i + 3] & 0xFF) << 24);
+	}
+
+	private static int hash(int sequence) {
+		return (sequence * -1640531535) >>> (32 - HASH_LOG);
+	}
+
+}
@@ -15,6 +15,11 @@
  */
 package com.srotya.linea.network.netty;
 
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
 import com.srotya.linea.Tuple;
 import com.srotya.linea.network.Router;
 
@@ -23,33 +28,88 @@ import io.netty.channel.SimpleChannelInboundHandler;
 
 /**
  * IWC or Inter-Worker Communication Handler is the last Handler in the Netty
- * Pipeline for receiving {@link Event}s from other workers.
+ * Pipeline for receiving {@link Tuple}s from other workers. <br>
+ * <br>
+ * Tuples are collected for the duration of a read and handed to the
+ * {@link Router} as a batch when the read completes. Routing runs on the event
+ * loop and never waits for ring room: tuples that don't fit are held, reads
+ * from the connection are suspended and routing is retried on the event loop
+ * until they're routed. Other connections served by the same event loop,
+ * including their control tuples, keep flowing.
  * 
  * @author ambud
  */
 public class IWCHandler<E extends Tuple> extends SimpleChannelInboundHandler<E> {
 
+	private static final int BATCH_SIZE = 1024;
+	private static final long RETRY_MILLIS = 1;
+	private static final Logger logger = Logger.getLogger(IWCHandler.class.getName());
 	private Router<E> router;
+	private E[] batch;
+	private int size;
+	private boolean paused;
 
-	public IWCHandler(Router<E> router) {
+	@SuppressWarnings("unchecked")
+	public IWCHandler(Router<E> router, Class<E> classOf) {
 		this.router = router;
+		this.batch = (E[]) Array.newInstance(classOf, BATCH_SIZE);
 	}
 
 	@Override
-	protected void channelRead0(ChannelHandlerContext ctx, E msg) throws Exception {
-		E tuple = (E) msg;
-		System.out.println("Event:"+tuple);
-		router.directLocalRouteEvent(tuple.getNextBoltId(), tuple.getDestinationTaskId(), tuple);
+	protected void channelRead0(ChannelHandlerContext ctx, E tuple) throws Exception {
+		batch[size++] = tuple;
+		if (size == batch.length) {
+			route(ctx);
+			if (size == batch.length) {
+				// tuples decoded from the last read still arrive while paused
+				batch = Arrays.copyOf(batch, size * 2);
+			}
+		}
 	}
 
 	@Override
 	public void channelReadComplete(ChannelHandlerContext ctx) {
+		route(ctx);
+	}
+
+	/**
+	 * Route the batch without blocking, if some tuples are held reads are
+	 * suspended until a retry routes them
+	 * 
+	 * @param ctx
+	 */
+	private void route(ChannelHandlerContext ctx) {
+		if (size == 0) {
+			return;
+		}
+		int routed = router.tryDirectLocalRouteEvents(batch, 0, size);
+		System.arraycopy(batch, routed, batch, 0, size - routed);
+		Arrays.fill(batch, size - routed, size, null);
+		size -= routed;
+		if (size > 0 && !paused) {
+			paused = true;
+			ctx.channel().config().setAutoRead(false);
+			ctx.executor().schedule(() -> resume(ctx), RETRY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Retry held tuples and resume reading once they're routed
+	 * 
+	 * @param ctx
+	 */
+	private void resume(ChannelHandlerContext ctx) {
+		paused = false;
+		route(ctx);
+		if (!paused) {
+			ctx.channel().config().setAutoRead(true);
+		}
 	}
 
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-		cause.printStackTrace();
+		logger.severe("Closing worker connection:" + ctx.channel() + "\treason:" + cause.getMessage());
 		ctx.close();
 	}
 
-}
\ No newline at end of file
+}
@@ -15,114 +15,417 @@
  */
 package com.srotya.linea.network.netty;
 
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Logger;
 
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.lmax.disruptor.LifecycleAware;
 import com.srotya.linea.Tuple;
 import com.srotya.linea.clustering.WorkerEntry;
+import com.srotya.linea.network.FrameEncoder;
+import com.srotya.linea.network.Handshake;
 import com.srotya.linea.network.KryoCodec;
 import com.srotya.linea.network.NetworkClient;
+import com.srotya.linea.network.Reconnector;
+import com.srotya.linea.network.SpillBuffer;
+import com.srotya.linea.network.compression.COMPRESSION_TYPE;
+import com.srotya.linea.network.compression.FrameCompressor;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.LengthFieldPrepender;
-import io.netty.handler.codec.bytes.ByteArrayEncoder;
+import io.netty.channel.WriteBufferWaterMark;
 
 /**
+ * Netty Inter Worker Communication (IWC) client, implemented as a Disruptor
+ * handler. <br>
+ * <br>
+ * Tuples are Kryo serialized straight into pooled direct {@link ByteBuf}s
+ * using the same frame format as {@link FrameEncoder}, frames are written when
+ * they fill up and the connections are flushed only when the Disruptor batch
+ * ends. All clients of a worker share one event loop group, see
+ * {@link NettyUtils}. Compression is negotiated per connection by a
+ * {@link Handshake} and applied to the whole frame before it's written. <br>
+ * <br>
+ * A lost connection is re-established by a {@link Reconnector} in the
+ * background, meanwhile frames for that worker go to a bounded
+ * {@link SpillBuffer} and are written once the connection is back. Frames
+ * dropped by a full spill buffer are counted by {@link #getDroppedTuples()}.
+ * 
  * @author ambud
  */
-public class NettyClient<E extends Tuple> extends NetworkClient<E> {
+public class NettyClient<E extends Tuple> extends NetworkClient<E> implements LifecycleAware {
 
-	private Map<Integer, Channel> channelMap;
+	private static final long WRITABILITY_PARK_NANOS = 100_000;
+	private static final long HANDSHAKE_TIMEOUT_SECONDS = 10;
 	private Logger logger;
+	private EventLoopGroup group;
+	private boolean nativeTransport;
+	private Channel[] channels;
+	private ByteBuf[] frames;
+	private int[] counts;
+	private boolean[] unflushed;
+	private SpillBuffer[] spills;
+	private FrameCompressor[] compressors;
+	private COMPRESSION_TYPE[] compressions;
+	private COMPRESSION_TYPE[] negotiated;
+	private AtomicReferenceArray<Channel> reconnected;
+	private COMPRESSION_TYPE requestedCompression;
+	private Reconnector reconnector;
+	private ByteBufferOutput output;
+	private int frameSize;
+	private int maxFrameSize;
 
 	public NettyClient() {
 		this.logger = Logger.getLogger(NettyClient.class.getName());
-		channelMap = new HashMap<>();
+		this.output = new ByteBufferOutput();
 	}
 
 	public void start() throws Exception {
-		for (Entry<Integer, WorkerEntry> entry : getColumbus().getWorkerMap().entrySet()) {
-			if (entry.getKey() != getColumbus().getSelfWorkerId()) {
-				Integer key = entry.getKey();
-				WorkerEntry value = entry.getValue();
-				retryConnectLoop(key, value);
-			}
+		frameSize = Integer.parseInt(getConf().getOrDefault(FrameEncoder.FRAME_SIZE, FrameEncoder.DEFAULT_FRAME_SIZE));
+		maxFrameSize = Integer
+				.parseInt(getConf().getOrDefault(FrameEncoder.MAX_FRAME_SIZE, FrameEncoder.DEFAULT_MAX_FRAME_SIZE));
+		nativeTransport = NettyUtils.isNative(getConf());
+		group = NettyUtils.acquireClientGroup(getConf());
+		int maxWorkerId = 0;
+		for (Integer workerId : getColumbus().getWorkerMap().keySet()) {
+			maxWorkerId = Math.max(maxWorkerId, workerId);
 		}
-	}
-
-	protected void retryConnectLoop(Integer key, WorkerEntry value) throws InterruptedException, IOException {
-		boolean connected = false;
-		int retryCount = 1;
-		while (!connected && retryCount < 100) {
-			Channel channel = tryConnect(value, retryCount);
+		channels = new Channel[maxWorkerId + 1];
+		frames = new ByteBuf[maxWorkerId + 1];
+		counts = new int[maxWorkerId + 1];
+		unflushed = new boolean[maxWorkerId + 1];
+		spills = new SpillBuffer[maxWorkerId + 1];
+		compressors = new FrameCompressor[maxWorkerId + 1];
+		compressions = new COMPRESSION_TYPE[maxWorkerId + 1];
+		negotiated = new COMPRESSION_TYPE[maxWorkerId + 1];
+		reconnected = new AtomicReferenceArray<>(maxWorkerId + 1);
+		requestedCompression = FrameCompressor.getRequested(getConf());
+		reconnector = new Reconnector(getConf(), "netty-client-reconnect-" + getClientThreadId());
+		long spillSize = Long
+				.parseLong(getConf().getOrDefault(SpillBuffer.SPILL_MAX_BYTES, SpillBuffer.DEFAULT_SPILL_MAX_BYTES));
+		for (Integer key : getWorkerIds()) {
+			spills[key] = new SpillBuffer(spillSize, key);
+			// frames spilled before the first connection assume the requested
+			// codec is accepted
+			compressions[key] = requestedCompression;
+			compressors[key] = FrameCompressor.fromConf(getConf(), requestedCompression);
+			Channel channel = tryConnect(key, getColumbus().getWorkerMap().get(key));
 			if (channel != null) {
-				connected = true;
-				channelMap.put(key, channel);
+				install(key, channel);
+			} else {
+				reconnect(key);
 			}
-			retryCount++;
 		}
 	}
 
-	protected Channel tryConnect(WorkerEntry value, int retryCount) throws InterruptedException {
+	/**
+	 * Open a connection and run the handshake, the negotiated codec is left
+	 * in {@link #negotiated}
+	 * 
+	 * @param key
+	 * @param value
+	 * @return channel or null if the worker couldn't be reached
+	 */
+	protected Channel tryConnect(int key, WorkerEntry value) {
 		try {
-			EventLoopGroup group = new NioEventLoopGroup(2);
+			NettyHandshake.ClientHandler handshake = new NettyHandshake.ClientHandler(requestedCompression);
+			Bootstrap b = new Bootstrap();
+			b.group(group).channel(NettyUtils.getSocketChannelClass(nativeTransport))
+					.option(ChannelOption.SO_KEEPALIVE, true).option(ChannelOption.SO_SNDBUF, 1048576)
+					// frames are already batched, don't delay them further
+					.option(ChannelOption.TCP_NODELAY, true)
+					.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+					.option(ChannelOption.WRITE_BUFFER_WATER_MARK,
+							new WriteBufferWaterMark(frameSize * 8, frameSize * 32))
+					.handler(new ChannelInitializer<Channel>() {
+
+						@Override
+						protected void initChannel(Channel ch) throws Exception {
+							ch.pipeline().addLast(handshake).addLast(new ChannelInboundHandlerAdapter() {
+
+								@Override
+								public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+									logger.severe("Worker connection failed:" + value.getWorkerAddress()
+											+ "\treason:" + cause.getMessage());
+									ctx.close();
+								}
+
+							});
+						}
+
+					});
+			ChannelFuture f = b.connect(value.getWorkerAddress(), value.getDataPort()).sync();
+			Channel channel = f.channel();
 			try {
-				Bootstrap b = new Bootstrap();
-				b.group(group).channel(NioSocketChannel.class).option(ChannelOption.SO_KEEPALIVE, true)
-						.option(ChannelOption.SO_RCVBUF, 10485760).option(ChannelOption.SO_SNDBUF, 10485760)
-						.handler(new ChannelInitializer<SocketChannel>() {
-							@Override
-							public void initChannel(SocketChannel ch) throws Exception {
-								ChannelPipeline p = ch.pipeline();
-								p.addLast(new LengthFieldPrepender(4));
-								p.addLast(new ByteArrayEncoder());
-							}
-						});
-
-				// Start the client.
-				ChannelFuture f = b.connect(value.getWorkerAddress(), value.getDataPort()).sync();
-				return f.channel();
-			} finally {
-				// Shut down the event loop to terminate all threads.
-				group.shutdownGracefully();
+				channel.writeAndFlush(Unpooled.wrappedBuffer(Handshake.encode(requestedCompression)));
+				negotiated[key] = handshake.getAccepted().get(HANDSHAKE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			} catch (Exception e) {
+				channel.close();
+				throw e;
 			}
+			return channel;
 		} catch (Exception e) {
-			logger.warning("Worker connection refused:" + value.getWorkerAddress() + ". Retrying in " + retryCount
-					+ " seconds.....");
-			Thread.sleep(1000 * retryCount);
+			logger.warning("Worker connection refused:" + value.getWorkerAddress() + " reason:" + e.getMessage());
 		}
 		return null;
 	}
 
+	/**
+	 * Reconnect to a worker in the background
+	 * 
+	 * @param workerId
+	 */
+	private void reconnect(int workerId) {
+		WorkerEntry entry = getColumbus().getWorkerMap().get(workerId);
+		reconnector.reconnect(workerId, () -> {
+			Channel channel = tryConnect(workerId, entry);
+			if (channel == null) {
+				return false;
+			}
+			reconnected.set(workerId, channel);
+			return true;
+		});
+	}
+
+	/**
+	 * Start using a connection, frames spilled for an older codec are dropped
+	 * 
+	 * @param workerId
+	 * @param channel
+	 */
+	private void install(int workerId, Channel channel) {
+		channels[workerId] = channel;
+		COMPRESSION_TYPE type = negotiated[workerId];
+		if (type != compressions[workerId]) {
+			if (!spills[workerId].isEmpty()) {
+				logger.warning("Compression changed from " + compressions[workerId] + " to " + type
+						+ " on reconnect to WorkerId:" + workerId + ", dropping spilled frames");
+				spills[workerId].clear();
+			}
+			compressions[workerId] = type;
+			compressors[workerId] = FrameCompressor.fromConf(getConf(), type);
+		}
+	}
+
+	/**
+	 * @param workerId
+	 * @return true if the worker is connected and it's spilled frames have
+	 *         been handed to Netty
+	 */
+	private boolean isWritable(int workerId) {
+		Channel channel = channels[workerId];
+		if (channel != null && !channel.isActive()) {
+			logger.severe("Lost worker connection to WorkerId:" + workerId + "\tAddress:"
+					+ getColumbus().getWorkerMap().get(workerId));
+			channel.close();
+			channels[workerId] = null;
+			unflushed[workerId] = false;
+			reconnect(workerId);
+			return false;
+		}
+		if (channel == null) {
+			channel = reconnected.getAndSet(workerId, null);
+			if (channel == null) {
+				return false;
+			}
+			install(workerId, channel);
+		}
+		SpillBuffer spill = spills[workerId];
+		ByteBuffer frame;
+		while ((frame = spill.peek()) != null) {
+			channel.write(Unpooled.wrappedBuffer(frame), channel.voidPromise());
+			spill.remove();
+			unflushed[workerId] = true;
+		}
+		spill.endOutage();
+		return true;
+	}
+
 	@Override
 	public void onEvent(E event, long sequence, boolean endOfBatch) throws Exception {
+		// the outbound ring only carries tuples for workers owned by this
+		// client
 		int workerId = event.getDestinationWorkerId();
-		try {
-			if (workerId % getClientThreads() == getClientThreadId()) {
-				Channel channel = channelMap.get(workerId);
-				byte[] ary = KryoCodec.eventToByteArray(event);
-				channel.writeAndFlush(ary);
-				if (endOfBatch) {
-					channel.flush();
+		encode(workerId, event);
+		if (frames[workerId].writerIndex() - FrameCompressor.HEADER_SIZE >= frameSize) {
+			writeFrame(workerId);
+		}
+		if (endOfBatch) {
+			// flush every connection owned by this client
+			for (int i = 0; i < channels.length; i++) {
+				if (counts[i] > 0) {
+					writeFrame(i);
+				} else if (spills[i] != null && !spills[i].isEmpty()) {
+					isWritable(i);
+				}
+				if (unflushed[i]) {
+					channels[i].flush();
+					unflushed[i] = false;
+					awaitWritable(channels[i]);
 				}
 			}
-		} catch (Exception e) {
-			System.out.println("Exception:" + event + "\tSelf worker ID:" + getColumbus().getSelfWorkerId() + "\t"
-					+ workerId + "\t" + getColumbus().getWorkerMap());
-			throw e;
 		}
 	}
 
+	/**
+	 * Serialize the tuple at the end of the worker's current frame, growing
+	 * the frame buffer if the tuple doesn't fit. Room for the compressed frame
+	 * header is always reserved so the codec can change on reconnect without
+	 * re-encoding the frame.
+	 * 
+	 * @param workerId
+	 * @param event
+	 */
+	private void encode(int workerId, E event) {
+		ByteBuf frame = frames[workerId];
+		if (frame == null) {
+			frame = PooledByteBufAllocator.DEFAULT.directBuffer(Math.min(frameSize * 2, maxFrameSize),
+					maxFrameSize);
+			frame.writerIndex(FrameCompressor.HEADER_SIZE);
+			frames[workerId] = frame;
+		}
+		int start = frame.writerIndex();
+		while (true) {
+			output.setBuffer(frame.nioBuffer(start, frame.capacity() - start));
+			try {
+				KryoCodec.getKryo().writeObject(output, event);
+				frame.writerIndex(start + output.position());
+				break;
+			} catch (KryoException e) {
+				if (frame.capacity() >= frame.maxCapacity()) {
+					throw e;
+				}
+				frame.ensureWritable(Math.min(frame.capacity() * 2, frame.maxCapacity()) - start);
+			}
+		}
+		counts[workerId]++;
+	}
+
+	/**
+	 * Complete the header of the worker's current frame and hand it to Netty,
+	 * or spill it if the worker isn't connected. The frame buffer is released
+	 * by Netty once written.
+	 * 
+	 * @param workerId
+	 */
+	private void writeFrame(int workerId) {
+		boolean writable = isWritable(workerId);
+		ByteBuf frame = frames[workerId];
+		int count = counts[workerId];
+		if (compressors[workerId] != null) {
+			compress(compressors[workerId], frame, count);
+		} else {
+			frame.setInt(4, frame.writerIndex() - FrameCompressor.HEADER_SIZE);
+			frame.setInt(8, count);
+			frame.readerIndex(FrameCompressor.HEADER_SIZE - FrameEncoder.HEADER_SIZE);
+		}
+		frames[workerId] = null;
+		counts[workerId] = 0;
+		if (writable) {
+			Channel channel = channels[workerId];
+			channel.write(frame, channel.voidPromise());
+			unflushed[workerId] = true;
+			return;
+		}
+		// losses are counted and logged by the spill buffer
+		spills[workerId].offer(frame.nioBuffer(), count);
+		frame.release();
+	}
+
+	/**
+	 * Compress the payload of the frame in place, it's stored as is if it
+	 * doesn't compress
+	 * 
+	 * @param compressor
+	 * @param frame
+	 * @param count
+	 */
+	private void compress(FrameCompressor compressor, ByteBuf frame, int count) {
+		int rawLength = frame.writerIndex() - FrameCompressor.HEADER_SIZE;
+		frame.getBytes(FrameCompressor.HEADER_SIZE, compressor.getRawBuffer(rawLength), 0, rawLength);
+		int compressedLength = compressor.compress(rawLength);
+		if (compressedLength < 0) {
+			frame.setInt(0, rawLength + 4);
+			frame.setInt(4, count);
+			frame.setInt(8, -rawLength);
+			return;
+		}
+		// compressed payload is smaller than the raw one so it always fits
+		frame.setIndex(0, 0);
+		frame.writeInt(compressedLength + 4);
+		frame.writeInt(count);
+		frame.writeInt(rawLength);
+		frame.writeBytes(compressor.getCompressed(), FrameCompressor.HEADER_SIZE, compressedLength);
+	}
+
+	/**
+	 * Hold the Disruptor batch until Netty drains the outbound buffer of the
+	 * channel below it's low watermark, so a slow worker backs up the network
+	 * ring instead of memory
+	 * 
+	 * @param channel
+	 */
+	private void awaitWritable(Channel channel) {
+		while (!channel.isWritable() && channel.isActive()) {
+			LockSupport.parkNanos(WRITABILITY_PARK_NANOS);
+		}
+	}
+
+	/**
+	 * @param workerId
+	 * @return spill buffer of the worker
+	 */
+	public SpillBuffer getSpillBuffer(int workerId) {
+		return spills[workerId];
+	}
+
+	/**
+	 * @return tuples dropped by the spill buffers of all workers
+	 */
+	public long getDroppedTuples() {
+		long dropped = 0;
+		for (SpillBuffer spill : spills) {
+			if (spill != null) {
+				dropped += spill.getDroppedTuples();
+			}
+		}
+		return dropped;
+	}
+
+	@Override
+	public void onStart() {
+	}
+
+	@Override
+	public void onShutdown() {
+		if (channels == null) {
+			return;
+		}
+		reconnector.close();
+		for (int i = 0; i < channels.length; i++) {
+			if (frames[i] != null) {
+				frames[i].release();
+				frames[i] = null;
+			}
+			Channel channel = channels[i] != null ? channels[i] : reconnected.get(i);
+			if (channel != null) {
+				channel.close();
+			}
+		}
+		NettyUtils.releaseClientGroup();
+	}
+
 }
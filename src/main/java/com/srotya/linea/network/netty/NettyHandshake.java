@@ -0,0 +1,125 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.netty;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+import com.srotya.linea.network.Handshake;
+import com.srotya.linea.network.compression.COMPRESSION_TYPE;
+import com.srotya.linea.network.compression.FrameCompressor;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+/**
+ * Netty side of the {@link Handshake}, both handlers sit at the head of the
+ * pipeline and remove themselves once the handshake is complete.
+ * 
+ * @author ambud
+ */
+public class NettyHandshake {
+
+	private static final Logger logger = Logger.getLogger(NettyHandshake.class.getName());
+
+	private NettyHandshake() {
+	}
+
+	/**
+	 * Replies to the client's handshake and configures the frame decoder of
+	 * the connection with the accepted codec
+	 * 
+	 * @author ambud
+	 */
+	public static class ServerHandler extends ByteToMessageDecoder {
+
+		private Map<String, String> conf;
+		private NettyKryoObjectDecoder<?> decoder;
+		private int maxFrameSize;
+
+		public ServerHandler(Map<String, String> conf, NettyKryoObjectDecoder<?> decoder, int maxFrameSize) {
+			this.conf = conf;
+			this.decoder = decoder;
+			this.maxFrameSize = maxFrameSize;
+		}
+
+		@Override
+		protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+			if (in.readableBytes() < Handshake.SIZE) {
+				return;
+			}
+			COMPRESSION_TYPE type = FrameCompressor.accept(conf,
+					Handshake.decode(in.readSlice(Handshake.SIZE).nioBuffer()));
+			decoder.setCompressor(FrameCompressor.fromConf(conf, type), maxFrameSize);
+			ctx.writeAndFlush(Unpooled.wrappedBuffer(Handshake.encode(type)));
+			logger.info("Client:" + ctx.channel().remoteAddress() + " negotiated compression:" + type);
+			// bytes after the handshake are passed on to the frame decoder
+			ctx.pipeline().remove(this);
+		}
+
+	}
+
+	/**
+	 * Waits for the server's reply to the handshake
+	 * 
+	 * @author ambud
+	 */
+	public static class ClientHandler extends ByteToMessageDecoder {
+
+		private COMPRESSION_TYPE requested;
+		private CompletableFuture<COMPRESSION_TYPE> accepted;
+
+		public ClientHandler(COMPRESSION_TYPE requested) {
+			this.requested = requested;
+			this.accepted = new CompletableFuture<>();
+		}
+
+		@Override
+		protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+			if (in.readableBytes() < Handshake.SIZE) {
+				return;
+			}
+			try {
+				accepted.complete(
+						Handshake.accepted(requested, Handshake.decode(in.readSlice(Handshake.SIZE).nioBuffer())));
+			} catch (IOException e) {
+				accepted.completeExceptionally(e);
+				throw e;
+			}
+			ctx.pipeline().remove(this);
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+			accepted.completeExceptionally(new IOException("Connection closed during handshake"));
+			super.channelInactive(ctx);
+		}
+
+		/**
+		 * @return codec accepted by the server
+		 */
+		public CompletableFuture<COMPRESSION_TYPE> getAccepted() {
+			return accepted;
+		}
+
+	}
+
+}
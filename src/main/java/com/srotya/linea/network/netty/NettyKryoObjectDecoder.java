@@ -16,81 +16,119 @@
 package com.srotya.linea.network.netty;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.srotya.linea.Tuple;
+import com.srotya.linea.network.FrameEncoder;
 import com.srotya.linea.network.KryoCodec;
+import com.srotya.linea.network.compression.FrameCompressor;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 
 /**
- * Decodes {@link Kryo} Serialized {@link Tuple} objects. This Decoder
- * implementation has refactored utility methods that are used for both TCP and
- * UDP based transports.
+ * Decodes {@link Kryo} Serialized {@link Tuple} objects from frames written by
+ * {@link FrameEncoder} or {@link NettyClient}. Expects the frame length to be
+ * stripped by a {@link LengthFieldBasedFrameDecoder}, see
+ * {@link #newFrameDecoder(int)}, leaving the tuple count followed by the
+ * tuples. <br>
+ * <br>
+ * Tuples are read straight from the frame {@link ByteBuf} without copying it
+ * to an intermediate array, unless the connection negotiated compression in
+ * which case the payload is decompressed by a {@link FrameCompressor} first.
  * 
  * @author ambud
  */
 public class NettyKryoObjectDecoder<E extends Tuple> extends ByteToMessageDecoder {
 
 	private Class<E> classOf;
+	private ByteBufferInput input;
+	private int maxFrameSize;
+	private FrameCompressor compressor;
 
 	public NettyKryoObjectDecoder(Class<E> classOf) {
 		this.classOf = classOf;
+		this.input = new ByteBufferInput();
+	}
+
+	/**
+	 * @param maxFrameSize
+	 *            maximum payload size of a frame
+	 * @return decoder splitting the stream into frames for this decoder
+	 */
+	public static LengthFieldBasedFrameDecoder newFrameDecoder(int maxFrameSize) {
+		// length excludes the count, strip the length and keep the count
+		return new LengthFieldBasedFrameDecoder(maxFrameSize + FrameCompressor.HEADER_SIZE, 0, 4, 4, 4);
+	}
+
+	/**
+	 * @param compressor
+	 *            negotiated for the connection, null if frames are
+	 *            uncompressed
+	 * @param maxFrameSize
+	 */
+	public void setCompressor(FrameCompressor compressor, int maxFrameSize) {
+		this.compressor = compressor;
+		this.maxFrameSize = maxFrameSize;
 	}
 
 	/**
 	 * Takes a Netty {@link ByteBuf} as input and returns a list of events
 	 * deserialized from the buffer. <br>
-	 * The buffer must be length prefixed to get the number of events in the
-	 * buffer.
+	 * The buffer must be prefixed with the number of events in the buffer.
 	 * 
+	 * @param classOf
 	 * @param in
-	 * @return list of tauEvents
+	 * @return list of events
 	 */
 	public static <E> List<E> bytebufToEvents(Class<E> classOf, ByteBuf in) {
-		short count = in.readShort();
-		ByteBufInputStream bis = new ByteBufInputStream(in);
-		InputStream stream = bis;
-		List<E> events = new ArrayList<>(count);
-		Input input = new Input(stream);
-		int i = 0;
-		try {
-			for (; i < count; i++) {
-				E event = KryoCodec.kryoThreadLocal.get().readObject(input, classOf);
-				events.add(event);
-			}
-			return events;
-		} catch (Exception e) {
-			System.err.println("FAILURE to read count of events:" + count + "\tat i=" + i);
-			e.printStackTrace();
-			throw e;
-		} finally {
-			input.close();
-		}
+		List<E> events = new ArrayList<>();
+		readEvents(classOf, in, new ByteBufferInput(), events);
+		return events;
 	}
-	
-	public static <E> E bytebufToEvent(Class<E> classOf, ByteBuf in) throws IOException {
-		Input input = new Input(new ByteBufInputStream(in));
-		return KryoCodec.streamToEvent(classOf, input);
+
+	private static <E> void readEvents(Class<E> classOf, ByteBuf in, ByteBufferInput input, List<? super E> out) {
+		int count = in.readInt();
+		input.setBuffer(in.nioBuffer(in.readerIndex(), in.readableBytes()));
+		Kryo kryo = KryoCodec.getKryo();
+		for (int i = 0; i < count; i++) {
+			out.add(kryo.readObject(input, classOf));
+		}
+		in.skipBytes(in.readableBytes());
 	}
 
 	@Override
 	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-		System.out.println("Event");
 		if (in == null) {
 			return;
 		}
-//		List<E> tuples = bytebufToEvents(classOf, in);
-//		out.addAll(tuples);
-		E tuple = bytebufToEvent(classOf, in);
-		out.add(tuple);
+		if (compressor == null) {
+			readEvents(classOf, in, input, out);
+			return;
+		}
+		int count = in.readInt();
+		int rawLength = in.readInt();
+		if (rawLength <= 0) {
+			input.setBuffer(in.nioBuffer(in.readerIndex(), in.readableBytes()));
+		} else {
+			if (rawLength > maxFrameSize) {
+				throw new IOException("Invalid raw frame length:" + rawLength);
+			}
+			int length = in.readableBytes();
+			in.readBytes(compressor.getInputBuffer(length), 0, length);
+			input.setBuffer(ByteBuffer.wrap(compressor.decompress(length, rawLength), 0, rawLength));
+		}
+		Kryo kryo = KryoCodec.getKryo();
+		for (int i = 0; i < count; i++) {
+			out.add(kryo.readObject(input, classOf));
+		}
+		in.skipBytes(in.readableBytes());
 	}
 
-}
\ No newline at end of file
+}
@@ -16,11 +16,11 @@
 package com.srotya.linea.network.netty;
 
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import com.srotya.linea.Tuple;
+import com.srotya.linea.network.FrameEncoder;
 import com.srotya.linea.network.NetworkServer;
+import com.srotya.linea.network.nio.TCPServer;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
@@ -28,62 +28,55 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.bytes.ByteArrayDecoder;
-import io.netty.util.concurrent.DefaultEventExecutor;
-import io.netty.util.concurrent.EventExecutor;
 
 /**
+ * Netty Inter Worker Communication (IWC) server, decodes frames written by
+ * {@link NettyClient} or {@link com.srotya.linea.network.nio.TCPClient}. <br>
+ * <br>
+ * Connections are served by {@link TCPServer#IO_THREADS} event loops using
+ * native epoll when available, see {@link NettyUtils}. Frames are read into
+ * pooled direct buffers and decoded tuples are routed on the event loop.
+ * 
  * @author ambud
  */
 public class NettyServer<E extends Tuple> extends NetworkServer<E> {
 
-	private ExecutorService es;
-
+	private EventLoopGroup bossGroup;
+	private EventLoopGroup workerGroup;
 	private ChannelFuture channelFuture;
 
 	public NettyServer() {
 	}
 
 	public void start() throws InterruptedException {
-		EventLoopGroup bossGroup = new NioEventLoopGroup(1); // (1)
-		EventLoopGroup workerGroup = new NioEventLoopGroup(1);
-		es = Executors.newCachedThreadPool();
-		final EventExecutor e2 = new DefaultEventExecutor(es);
+		int ioThreads = Integer.parseInt(getConf().getOrDefault(TCPServer.IO_THREADS, TCPServer.DEFAULT_IO_THREADS));
+		int maxFrameSize = Integer
+				.parseInt(getConf().getOrDefault(FrameEncoder.MAX_FRAME_SIZE, FrameEncoder.DEFAULT_MAX_FRAME_SIZE));
+		boolean nativeTransport = NettyUtils.isNative(getConf());
+		bossGroup = NettyUtils.newEventLoopGroup(1, "netty-boss", nativeTransport);
+		workerGroup = NettyUtils.newEventLoopGroup(ioThreads, "netty-server", nativeTransport);
 		try {
-			ServerBootstrap bootstrap = new ServerBootstrap(); // (2)
-			bootstrap.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class) // (3)
-					.childHandler(new ChannelInitializer<SocketChannel>() { // (4)
+			ServerBootstrap bootstrap = new ServerBootstrap();
+			bootstrap.group(bossGroup, workerGroup).channel(NettyUtils.getServerSocketChannelClass(nativeTransport))
+					.childHandler(new ChannelInitializer<SocketChannel>() {
 						@Override
 						public void initChannel(SocketChannel ch) throws Exception {
-							ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(4096, 0, 4, 0, 4))
-									.addLast(new ByteArrayDecoder())
-									.addLast(new NettyKryoObjectDecoder<E>(getClassOf()))
-									.addLast(e2, new IWCHandler<>(getRouter()));
+							NettyKryoObjectDecoder<E> decoder = new NettyKryoObjectDecoder<E>(getClassOf());
+							ch.pipeline().addLast(new NettyHandshake.ServerHandler(getConf(), decoder, maxFrameSize))
+									.addLast(NettyKryoObjectDecoder.newFrameDecoder(maxFrameSize)).addLast(decoder)
+									.addLast(new IWCHandler<>(getRouter(), getClassOf()));
 						}
-					}).option(ChannelOption.SO_BACKLOG, 128) // (5)
-					.option(ChannelOption.SO_RCVBUF, 1024 * 1024 * 4).childOption(ChannelOption.SO_KEEPALIVE, true); // (6)
-
-			bootstrap.option(ChannelOption.TCP_NODELAY, false);
+					});
+			bootstrap.option(ChannelOption.SO_BACKLOG, 128);
 			bootstrap.option(ChannelOption.SO_REUSEADDR, true);
-			bootstrap.option(ChannelOption.SO_LINGER, 0);
-			bootstrap.childOption(ChannelOption.TCP_NODELAY, false);
-			bootstrap.childOption(ChannelOption.SO_REUSEADDR, true);
+			bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
 			bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
-			bootstrap.childOption(ChannelOption.SO_LINGER, 0);
-			bootstrap.childOption(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
 			bootstrap.childOption(ChannelOption.SO_RCVBUF, 1048576);
-			bootstrap.childOption(ChannelOption.SO_SNDBUF, 1048576);
 			bootstrap.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
 			channelFuture = bootstrap.bind(getBindAddress(), getDataPort()).sync();
 
-			// Wait until the server socket is closed.
-			// In this example, this does not happen, but you can do that to
-			// gracefully
-			// shut down your server.
+			// Wait until the server socket is closed by stop()
 			channelFuture.channel().closeFuture().sync();
 		} finally {
 			workerGroup.shutdownGracefully();
@@ -92,6 +85,9 @@ public class NettyServer<E extends Tuple> extends NetworkServer<E> {
 	}
 
 	public void stop() throws IOException {
+		if (channelFuture != null) {
+			channelFuture.channel().close();
+		}
 	}
 
 }
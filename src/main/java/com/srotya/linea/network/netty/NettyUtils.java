@@ -0,0 +1,130 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.netty;
+
+import java.util.Map;
+import java.util.logging.Logger;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Event loop and channel type selection shared by the Netty transport. Native
+ * epoll is used when it's available on the host unless disabled with
+ * {@link #NATIVE_TRANSPORT}, otherwise the JDK NIO transport is used. <br>
+ * <br>
+ * All {@link NettyClient} instances of a worker share one client event loop
+ * group which is reference counted and shut down when the last client stops.
+ * 
+ * @author ambud
+ */
+public class NettyUtils {
+
+	public static final String NATIVE_TRANSPORT = "network.netty.native";
+	public static final String DEFAULT_NATIVE_TRANSPORT = "true";
+	public static final String CLIENT_IO_THREADS = "network.client.io.threads";
+	public static final String DEFAULT_CLIENT_IO_THREADS = "1";
+	private static final Logger logger = Logger.getLogger(NettyUtils.class.getName());
+	private static EventLoopGroup clientGroup;
+	private static int clientGroupReferences;
+
+	private NettyUtils() {
+	}
+
+	/**
+	 * @param conf
+	 * @return true if native epoll is enabled and available
+	 */
+	public static boolean isNative(Map<String, String> conf) {
+		if (!Boolean.parseBoolean(conf.getOrDefault(NATIVE_TRANSPORT, DEFAULT_NATIVE_TRANSPORT))) {
+			return false;
+		}
+		if (!Epoll.isAvailable()) {
+			logger.fine("Native epoll transport unavailable:" + Epoll.unavailabilityCause());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param threads
+	 * @param name
+	 *            prefix of the event loop thread names
+	 * @param nativeTransport
+	 * @return new event loop group with daemon threads
+	 */
+	public static EventLoopGroup newEventLoopGroup(int threads, String name, boolean nativeTransport) {
+		DefaultThreadFactory threadFactory = new DefaultThreadFactory(name, true);
+		if (nativeTransport) {
+			return new EpollEventLoopGroup(threads, threadFactory);
+		} else {
+			return new NioEventLoopGroup(threads, threadFactory);
+		}
+	}
+
+	/**
+	 * @param nativeTransport
+	 * @return client channel class matching the event loop group
+	 */
+	public static Class<? extends SocketChannel> getSocketChannelClass(boolean nativeTransport) {
+		return nativeTransport ? EpollSocketChannel.class : NioSocketChannel.class;
+	}
+
+	/**
+	 * @param nativeTransport
+	 * @return server channel class matching the event loop group
+	 */
+	public static Class<? extends ServerSocketChannel> getServerSocketChannelClass(boolean nativeTransport) {
+		return nativeTransport ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+	}
+
+	/**
+	 * Get the client event loop group, creating it for the first client
+	 * 
+	 * @param conf
+	 * @return shared client event loop group
+	 */
+	public static synchronized EventLoopGroup acquireClientGroup(Map<String, String> conf) {
+		if (clientGroup == null) {
+			clientGroup = newEventLoopGroup(
+					Integer.parseInt(conf.getOrDefault(CLIENT_IO_THREADS, DEFAULT_CLIENT_IO_THREADS)),
+					"netty-client", isNative(conf));
+		}
+		clientGroupReferences++;
+		return clientGroup;
+	}
+
+	/**
+	 * Release a reference acquired with {@link #acquireClientGroup(Map)}, the
+	 * last release shuts the group down
+	 */
+	public static synchronized void releaseClientGroup() {
+		if (clientGroup != null && --clientGroupReferences == 0) {
+			clientGroup.shutdownGracefully();
+			clientGroup = null;
+		}
+	}
+
+}
@@ -15,96 +15,289 @@
  */
 package com.srotya.linea.network.nio;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Logger;
 
+import com.lmax.disruptor.LifecycleAware;
 import com.srotya.linea.Tuple;
 import com.srotya.linea.clustering.WorkerEntry;
-import com.srotya.linea.network.KryoCodec;
+import com.srotya.linea.network.FrameEncoder;
+import com.srotya.linea.network.Handshake;
 import com.srotya.linea.network.NetworkClient;
+import com.srotya.linea.network.Reconnector;
+import com.srotya.linea.network.SpillBuffer;
+import com.srotya.linea.network.compression.COMPRESSION_TYPE;
+import com.srotya.linea.network.compression.FrameCompressor;
 
 /**
  * Inter Worker Communication (IWC) client, implemented as a Disruptor handler.
+ * <br>
+ * <br>
+ * Tuples for each worker are batched into frames by a per connection
+ * {@link FrameEncoder} and written when the frame fills up or the Disruptor
+ * batch ends. Compression is negotiated with the server by a
+ * {@link Handshake} when connecting. <br>
+ * <br>
+ * A lost connection is re-established by a {@link Reconnector} in the
+ * background, meanwhile frames for that worker go to a bounded
+ * {@link SpillBuffer} and are written once the connection is back, so
+ * traffic to other workers keeps flowing. Frames dropped by a full spill
+ * buffer are counted by {@link #getDroppedTuples()}.
  * 
  * @author ambud
  */
-public class TCPClient<E extends Tuple> extends NetworkClient<E> {
+public class TCPClient<E extends Tuple> extends NetworkClient<E> implements LifecycleAware {
 
 	private Logger logger;
-	private Map<Integer, OutputStream> socketMap;
+	private SocketChannel[] channels;
+	private FrameEncoder[] encoders;
+	private SpillBuffer[] spills;
+	private COMPRESSION_TYPE[] compressions;
+	private COMPRESSION_TYPE[] negotiated;
+	private AtomicReferenceArray<SocketChannel> reconnected;
+	private COMPRESSION_TYPE requestedCompression;
+	private Reconnector reconnector;
 
 	public TCPClient() {
 		this.logger = Logger.getLogger(TCPClient.class.getName());
-		socketMap = new HashMap<>();
 	}
 
 	public void start() throws Exception {
-		for (Entry<Integer, WorkerEntry> entry : getColumbus().getWorkerMap().entrySet()) {
-			if (entry.getKey() != getColumbus().getSelfWorkerId()) {
-				Integer key = entry.getKey();
-				WorkerEntry value = entry.getValue();
-				retryConnectLoop(key, value);
+		int maxWorkerId = 0;
+		for (Integer workerId : getColumbus().getWorkerMap().keySet()) {
+			maxWorkerId = Math.max(maxWorkerId, workerId);
+		}
+		channels = new SocketChannel[maxWorkerId + 1];
+		encoders = new FrameEncoder[maxWorkerId + 1];
+		spills = new SpillBuffer[maxWorkerId + 1];
+		compressions = new COMPRESSION_TYPE[maxWorkerId + 1];
+		negotiated = new COMPRESSION_TYPE[maxWorkerId + 1];
+		reconnected = new AtomicReferenceArray<>(maxWorkerId + 1);
+		requestedCompression = FrameCompressor.getRequested(getConf());
+		reconnector = new Reconnector(getConf(), "tcp-client-reconnect-" + getClientThreadId());
+		long spillSize = Long
+				.parseLong(getConf().getOrDefault(SpillBuffer.SPILL_MAX_BYTES, SpillBuffer.DEFAULT_SPILL_MAX_BYTES));
+		for (Integer key : getWorkerIds()) {
+			encoders[key] = FrameEncoder.fromConf(getConf());
+			spills[key] = new SpillBuffer(spillSize, key);
+			// frames spilled before the first connection assume the
+			// requested codec is accepted
+			compressions[key] = requestedCompression;
+			encoders[key].setCompressor(FrameCompressor.fromConf(getConf(), requestedCompression));
+			SocketChannel channel = tryConnect(key, getColumbus().getWorkerMap().get(key));
+			if (channel != null) {
+				install(key, channel);
+			} else {
+				reconnect(key);
+			}
+		}
+	}
+
+	/**
+	 * Open a connection and run the handshake, the negotiated codec is left
+	 * in {@link #negotiated}
+	 * 
+	 * @param key
+	 * @param value
+	 * @return channel or null if the worker couldn't be reached
+	 */
+	private SocketChannel tryConnect(int key, WorkerEntry value) {
+		SocketChannel channel = null;
+		try {
+			channel = SocketChannel.open(new InetSocketAddress(value.getWorkerAddress(), value.getDataPort()));
+			channel.socket().setSendBufferSize(1048576);
+			channel.socket().setKeepAlive(true);
+			// frames are already batched, don't delay them further
+			channel.socket().setTcpNoDelay(true);
+			negotiated[key] = Handshake.negotiate(channel, requestedCompression);
+			return channel;
+		} catch (Exception e) {
+			logger.warning("Worker connection refused:" + value.getWorkerAddress() + " reason:" + e.getMessage());
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e1) {
+				}
 			}
 		}
+		return null;
+	}
+
+	/**
+	 * Reconnect to a worker in the background
+	 * 
+	 * @param workerId
+	 */
+	private void reconnect(int workerId) {
+		WorkerEntry entry = getColumbus().getWorkerMap().get(workerId);
+		reconnector.reconnect(workerId, () -> {
+			SocketChannel channel = tryConnect(workerId, entry);
+			if (channel == null) {
+				return false;
+			}
+			reconnected.set(workerId, channel);
+			return true;
+		});
 	}
 
-	private void retryConnectLoop(Integer key, WorkerEntry value) throws InterruptedException, IOException {
-		boolean connected = false;
-		int retryCount = 1;
-		while (!connected && retryCount < 100) {
-			Socket socket = tryConnect(value, retryCount);
-			if (socket != null) {
-				connected = true;
-				socketMap.put(key, new BufferedOutputStream(socket.getOutputStream(), 8192 * 4));
+	/**
+	 * Start using a connection, frames spilled for an older codec are dropped
+	 * 
+	 * @param workerId
+	 * @param channel
+	 */
+	private void install(int workerId, SocketChannel channel) {
+		channels[workerId] = channel;
+		COMPRESSION_TYPE type = negotiated[workerId];
+		if (type != compressions[workerId]) {
+			if (!spills[workerId].isEmpty()) {
+				logger.warning("Compression changed from " + compressions[workerId] + " to " + type
+						+ " on reconnect to WorkerId:" + workerId + ", dropping spilled frames");
+				spills[workerId].clear();
 			}
-			retryCount++;
+			compressions[workerId] = type;
+			encoders[workerId].setCompressor(FrameCompressor.fromConf(getConf(), type));
 		}
 	}
 
-	private Socket tryConnect(WorkerEntry value, int retryCount) throws InterruptedException {
+	/**
+	 * @param workerId
+	 * @return true if the worker is connected and it's spilled frames have
+	 *         been written
+	 */
+	private boolean isWritable(int workerId) {
+		if (channels[workerId] == null) {
+			SocketChannel channel = reconnected.getAndSet(workerId, null);
+			if (channel == null) {
+				return false;
+			}
+			install(workerId, channel);
+		}
+		SpillBuffer spill = spills[workerId];
+		ByteBuffer frame;
+		while ((frame = spill.peek()) != null) {
+			try {
+				while (frame.hasRemaining()) {
+					channels[workerId].write(frame);
+				}
+			} catch (IOException e) {
+				// the whole frame is resent on the next connection
+				frame.rewind();
+				connectionLost(workerId, e);
+				return false;
+			}
+			spill.remove();
+		}
+		spill.endOutage();
+		return true;
+	}
+
+	private void connectionLost(int workerId, IOException e) {
+		logger.severe("Lost worker connection to WorkerId:" + workerId + "\tAddress:"
+				+ getColumbus().getWorkerMap().get(workerId) + "\treason:" + e.getMessage());
 		try {
-			Socket socket = new Socket(value.getWorkerAddress(), value.getDataPort());
-			socket.setSendBufferSize(1048576);
-			socket.setKeepAlive(true);
-			socket.setPerformancePreferences(0, 1, 2);
-			return socket;
-		} catch (Exception e) {
-			logger.warning("Worker connection refused:" + value.getWorkerAddress() + ". Retrying in " + retryCount
-					+ " seconds.....");
-			Thread.sleep(1000 * retryCount);
+			channels[workerId].close();
+		} catch (IOException e1) {
 		}
-		return null;
+		channels[workerId] = null;
+		reconnect(workerId);
 	}
 
 	@Override
 	public void onEvent(E event, long sequence, boolean endOfBatch) throws Exception {
+		// the outbound ring only carries tuples for workers owned by this
+		// client
 		int workerId = event.getDestinationWorkerId();
-		try {
-			if (workerId % getClientThreads() == getClientThreadId()) {
-				OutputStream stream = socketMap.get(workerId);
-				byte[] bytes = KryoCodec.eventToByteArray(event);
-				stream.write(bytes);
-				if (endOfBatch) {
-					stream.flush();
+		FrameEncoder encoder = encoders[workerId];
+		encoder.add(event);
+		if (encoder.isFull()) {
+			writeFrame(workerId);
+		}
+		if (endOfBatch) {
+			// flush every connection owned by this client
+			for (int i = 0; i < encoders.length; i++) {
+				if (encoders[i] == null) {
+					continue;
+				}
+				if (!encoders[i].isEmpty()) {
+					writeFrame(i);
+				} else if (!spills[i].isEmpty()) {
+					isWritable(i);
 				}
 			}
-		} catch (Exception e) {
-			WorkerEntry entry = getColumbus().getWorkerMap().get(workerId);
-			logger.severe("Lost worker connection to WorkerId:" + workerId + "\tAddress:" + entry + "\treason:"
-					+ e.getMessage());
-			retryConnectLoop(workerId, entry);
-			if (workerId % getClientThreads() == getClientThreadId()) {
-				OutputStream stream = socketMap.get(workerId);
-				byte[] bytes = KryoCodec.eventToByteArray(event);
-				stream.write(bytes);
-				if (endOfBatch) {
-					stream.flush();
+		}
+	}
+
+	/**
+	 * Write the pending frame for a worker, or spill it if the worker isn't
+	 * connected
+	 * 
+	 * @param workerId
+	 */
+	private void writeFrame(int workerId) {
+		FrameEncoder encoder = encoders[workerId];
+		boolean writable = isWritable(workerId);
+		ByteBuffer frame = encoder.finish();
+		if (writable) {
+			int start = frame.position();
+			try {
+				while (frame.hasRemaining()) {
+					channels[workerId].write(frame);
+				}
+			} catch (IOException e) {
+				frame.position(start);
+				connectionLost(workerId, e);
+				writable = false;
+			}
+		}
+		if (!writable) {
+			// losses are counted and logged by the spill buffer
+			spills[workerId].offer(frame, encoder.getCount());
+		}
+		encoder.reset();
+	}
+
+	/**
+	 * @param workerId
+	 * @return spill buffer of the worker
+	 */
+	public SpillBuffer getSpillBuffer(int workerId) {
+		return spills[workerId];
+	}
+
+	/**
+	 * @return tuples dropped by the spill buffers of all workers
+	 */
+	public long getDroppedTuples() {
+		long dropped = 0;
+		for (SpillBuffer spill : spills) {
+			if (spill != null) {
+				dropped += spill.getDroppedTuples();
+			}
+		}
+		return dropped;
+	}
+
+	@Override
+	public void onStart() {
+	}
+
+	@Override
+	public void onShutdown() {
+		if (channels == null) {
+			return;
+		}
+		reconnector.close();
+		for (int i = 0; i < channels.length; i++) {
+			SocketChannel channel = channels[i] != null ? channels[i] : reconnected.get(i);
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
 				}
 			}
 		}
@@ -15,61 +15,330 @@
  */
 package com.srotya.linea.network.nio;
 
-import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.lang.reflect.Array;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import com.esotericsoftware.kryo.io.Input;
 import com.srotya.linea.Tuple;
-import com.srotya.linea.network.KryoCodec;
+import com.srotya.linea.network.FrameDecoder;
+import com.srotya.linea.network.FrameEncoder;
+import com.srotya.linea.network.Handshake;
 import com.srotya.linea.network.NetworkServer;
+import com.srotya.linea.network.Router;
+import com.srotya.linea.network.compression.COMPRESSION_TYPE;
+import com.srotya.linea.network.compression.FrameCompressor;
 
 /**
- * Inter Worker Communication (IWC) server.
+ * Inter Worker Communication (IWC) server, decodes frames written by
+ * {@link TCPClient}. <br>
+ * <br>
+ * Connections are accepted on the calling thread and spread across a fixed
+ * number of selector driven I/O threads, independent of the number of
+ * workers. Tuples decoded from a read are handed to the {@link Router} as a
+ * batch so consecutive tuples for the same task are published to its ring in
+ * one go. Every connection starts with a {@link Handshake} that settles the
+ * compression of it's frames. <br>
+ * <br>
+ * I/O threads never wait for room in a task's ring. Tuples that don't fit
+ * are held by their connection, which stops reading until they are routed, so
+ * the other connections of the I/O thread and their control tuples keep
+ * flowing. The socket buffer then fills up and TCP pushes back on the sender.
  * 
  * @author ambud
  */
 public class TCPServer<E extends Tuple> extends NetworkServer<E> {
 
-	private ServerSocket server;
+	public static final String IO_THREADS = "network.server.io.threads";
+	public static final String DEFAULT_IO_THREADS = "2";
+	private static final int BATCH_SIZE = 1024;
+	private static final long RETRY_MILLIS = 1;
+	private static final Logger logger = Logger.getLogger(TCPServer.class.getName());
+	private ServerSocketChannel server;
 	private ExecutorService es;
+	private IOLoop[] loops;
+	private volatile boolean running;
 
 	public TCPServer() {
 	}
 
+	@SuppressWarnings("unchecked")
 	public void start() throws Exception {
-		es = Executors.newFixedThreadPool(getColumbus().getWorkerCount());
-		server = new ServerSocket(getDataPort(), 100, InetAddress.getByName(getBindAddress()));
-		System.err.println("TCP Server started");
-		while (true) {
-			final Socket socket = server.accept();
-			System.err.println("Connected to client:" + socket.getInetAddress() + getClassOf());
-			socket.setReceiveBufferSize(1024 * 1024);
-			es.submit(new Thread() {
-				public void run() {
-					try {
-						InputStream stream = new BufferedInputStream(socket.getInputStream(), 4096);
-						Input input = new Input(stream);
-						while (true) {
-							E event = KryoCodec.streamToEvent(getClassOf(), input);
-							getRouter().directLocalRouteEvent(event.getNextBoltId(), event.getDestinationTaskId(),
-									event);
+		int ioThreads = Integer.parseInt(getConf().getOrDefault(IO_THREADS, DEFAULT_IO_THREADS));
+		int frameSize = Integer
+				.parseInt(getConf().getOrDefault(FrameEncoder.FRAME_SIZE, FrameEncoder.DEFAULT_FRAME_SIZE));
+		int maxFrameSize = Integer
+				.parseInt(getConf().getOrDefault(FrameEncoder.MAX_FRAME_SIZE, FrameEncoder.DEFAULT_MAX_FRAME_SIZE));
+		running = true;
+		es = Executors.newFixedThreadPool(ioThreads);
+		loops = new TCPServer.IOLoop[ioThreads];
+		for (int i = 0; i < ioThreads; i++) {
+			loops[i] = new IOLoop(frameSize * 2, maxFrameSize);
+			es.submit(loops[i]);
+		}
+		server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(InetAddress.getByName(getBindAddress()), getDataPort()), 100);
+		logger.info("TCP Server started with " + ioThreads + " I/O threads");
+		int next = 0;
+		while (running) {
+			SocketChannel socket;
+			try {
+				socket = server.accept();
+			} catch (IOException e) {
+				if (running) {
+					throw e;
+				}
+				break;
+			}
+			logger.info("Connected to client:" + socket.getRemoteAddress());
+			socket.socket().setReceiveBufferSize(1024 * 1024);
+			socket.configureBlocking(false);
+			loops[next++ % loops.length].register(socket);
+		}
+	}
+
+	public void stop() throws IOException {
+		running = false;
+		if (server != null) {
+			server.close();
+		}
+		if (loops != null) {
+			for (IOLoop loop : loops) {
+				loop.close();
+			}
+		}
+		if (es != null) {
+			es.shutdownNow();
+		}
+	}
+
+	/**
+	 * Selector loop serving a subset of the inbound connections
+	 * 
+	 * @author ambud
+	 */
+	private class IOLoop implements Runnable {
+
+		private Selector selector;
+		private Queue<SocketChannel> newConnections;
+		private List<Connection> paused;
+		private int bufferSize;
+		private int maxFrameSize;
+
+		public IOLoop(int bufferSize, int maxFrameSize) throws IOException {
+			this.bufferSize = bufferSize;
+			this.maxFrameSize = maxFrameSize;
+			this.selector = Selector.open();
+			this.newConnections = new ConcurrentLinkedQueue<>();
+			this.paused = new ArrayList<>();
+		}
+
+		public void register(SocketChannel channel) {
+			newConnections.add(channel);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				try {
+					if (paused.isEmpty()) {
+						selector.select();
+					} else {
+						selector.select(RETRY_MILLIS);
+						resume();
+					}
+					SocketChannel channel;
+					while ((channel = newConnections.poll()) != null) {
+						Connection connection = new Connection(channel, bufferSize, maxFrameSize);
+						connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+					}
+					Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+					while (iterator.hasNext()) {
+						SelectionKey key = iterator.next();
+						iterator.remove();
+						Connection connection = (Connection) key.attachment();
+						if (key.isValid() && key.isReadable()) {
+							if (!connection.read()) {
+								key.cancel();
+							} else if (connection.isBlocked()) {
+								// stop reading until the held tuples are routed
+								key.interestOps(0);
+								paused.add(connection);
+							}
 						}
-					} catch (Exception e) {
-						e.printStackTrace();
 					}
+				} catch (ClosedSelectorException e) {
+					break;
+				} catch (IOException e) {
+					logger.log(Level.SEVERE, "Network server I/O loop error", e);
+				}
+			}
+		}
+
+		/**
+		 * Route the tuples held by paused connections and read from those
+		 * that got through again
+		 */
+		private void resume() {
+			Iterator<Connection> iterator = paused.iterator();
+			while (iterator.hasNext()) {
+				Connection connection = iterator.next();
+				if (!connection.flush()) {
+					continue;
+				}
+				iterator.remove();
+				if (connection.key.isValid()) {
+					connection.key.interestOps(SelectionKey.OP_READ);
 				}
-			});
+			}
 		}
+
+		public void close() throws IOException {
+			selector.close();
+		}
+
 	}
 
-	public void stop() throws IOException {
-		server.close();
+	/**
+	 * Inbound connection state
+	 * 
+	 * @author ambud
+	 */
+	private class Connection implements Consumer<E> {
+
+		private SocketChannel channel;
+		private SelectionKey key;
+		private FrameDecoder<E> decoder;
+		private ByteBuffer handshake;
+		private E[] batch;
+		private int count;
+
+		@SuppressWarnings("unchecked")
+		public Connection(SocketChannel channel, int bufferSize, int maxFrameSize) {
+			this.channel = channel;
+			this.decoder = new FrameDecoder<>(getClassOf(), bufferSize, maxFrameSize);
+			this.batch = (E[]) Array.newInstance(getClassOf(), BATCH_SIZE);
+			this.handshake = ByteBuffer.allocate(Handshake.SIZE);
+		}
+
+		/**
+		 * Read the client's handshake and reply with the accepted codec
+		 * 
+		 * @return true once the handshake is complete
+		 * @throws IOException
+		 */
+		private boolean handshake() throws IOException {
+			if (channel.read(handshake) < 0) {
+				throw new EOFException("Connection closed during handshake");
+			}
+			if (handshake.hasRemaining()) {
+				return false;
+			}
+			handshake.flip();
+			COMPRESSION_TYPE type = FrameCompressor.accept(getConf(), Handshake.decode(handshake));
+			// the client waits for the reply before sending frames so the
+			// socket buffer is empty
+			ByteBuffer reply = Handshake.encode(type);
+			while (reply.hasRemaining()) {
+				channel.write(reply);
+			}
+			decoder.setCompressor(FrameCompressor.fromConf(getConf(), type));
+			handshake = null;
+			logger.info("Client:" + channel.getRemoteAddress() + " negotiated compression:" + type);
+			return true;
+		}
+
+		/**
+		 * Read and route everything available on the channel, reading stops
+		 * early if a task's ring is full
+		 * 
+		 * @return false if the connection was closed
+		 */
+		public boolean read() {
+			try {
+				if (handshake != null && !handshake()) {
+					return true;
+				}
+				int read;
+				while ((read = decoder.read(channel, this)) > 0 && flush()) {
+				}
+				if (read < 0) {
+					logger.info("Client disconnected:" + channel.getRemoteAddress());
+					close();
+					return false;
+				}
+				return true;
+			} catch (Exception e) {
+				// a bad frame only costs this connection, the client
+				// reconnects and resends
+				logger.log(Level.SEVERE, "Closing connection after decode failure", e);
+				flush();
+				close();
+				return false;
+			}
+		}
+
+		private void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.log(Level.FINE, "Failed to close connection", e);
+			}
+		}
+
+		/**
+		 * @return true if tuples are held because a task's ring was full
+		 */
+		public boolean isBlocked() {
+			return count > 0;
+		}
+
+		@Override
+		public void accept(E tuple) {
+			if (count == batch.length && !flush()) {
+				// tuples decoded from the last read are kept until routed,
+				// no more is read meanwhile
+				batch = Arrays.copyOf(batch, batch.length * 2);
+			}
+			batch[count++] = tuple;
+		}
+
+		/**
+		 * Route the held tuples without waiting for room in the rings
+		 * 
+		 * @return true if every tuple was routed
+		 */
+		private boolean flush() {
+			if (count > 0) {
+				int routed = getRouter().tryDirectLocalRouteEvents(batch, 0, count);
+				if (routed > 0) {
+					System.arraycopy(batch, routed, batch, 0, count - routed);
+					Arrays.fill(batch, count - routed, count, null);
+					count -= routed;
+				}
+			}
+			return count == 0;
+		}
+
 	}
 
 }
@@ -0,0 +1,330 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.shm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Consumer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.Output;
+import com.srotya.linea.Tuple;
+import com.srotya.linea.network.KryoCodec;
+
+import sun.misc.Unsafe;
+
+/**
+ * Single producer single consumer ring of {@link Kryo} serialized
+ * {@link Tuple}s in a memory mapped file, shared by two worker processes on
+ * the same host. <br>
+ * <br>
+ * The file starts with the producer and consumer positions on separate cache
+ * lines followed by the data region. Positions are ever increasing byte
+ * offsets. Records are 16 byte aligned and start with a commit marker, the
+ * record's position + 1, followed by the length and the serialized tuple. The
+ * producer writes the record before it's marker and clears the marker of the
+ * next record first, so the consumer reads a record only once it's marker
+ * matches it's own position and never has to read the producer's position.
+ * The consumer publishes it's position after reading to release space. A
+ * record that doesn't fit before the end of the data region is preceded by a
+ * padding record and written at the start. <br>
+ * <br>
+ * Markers and positions are aligned native order longs which direct buffers
+ * access with single loads and stores. The two processes don't share any
+ * Java object, so ordering is enforced with explicit fences: a store fence
+ * orders the record before it's marker, a load fence orders the marker before
+ * the record is read, and load fences order reads of the data before the
+ * positions that free or reuse its space. This holds on weakly ordered CPUs
+ * too, not only on x86. <br>
+ * <br>
+ * The producer creates the file fresh, the consumer opens an existing one.
+ * Neither side is thread-safe.
+ * 
+ * @author ambud
+ */
+public class MappedRing implements Closeable {
+
+	public static final int HEADER_SIZE = 128;
+	private static final int PRODUCER_OFFSET = 0;
+	private static final int CONSUMER_OFFSET = 64;
+	private static final int MARKER = 8;
+	private static final int RECORD_HEADER = MARKER + 4;
+	private static final int ALIGNMENT = 16;
+	private static final int PADDING = -1;
+	private static final Unsafe UNSAFE = loadUnsafe();
+	private File file;
+	private Object fileKey;
+	private RandomAccessFile raf;
+	private MappedByteBuffer mapped;
+	private ByteBuffer data;
+	private ByteBuffer writer;
+	private int capacity;
+	private int mask;
+	private long tail;
+	private long cachedHead;
+	private long head;
+	private Output output;
+	private ByteBufferInput input;
+
+	private MappedRing(File file, RandomAccessFile raf, int capacity) throws IOException {
+		this.file = file;
+		this.raf = raf;
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.fileKey = readFileKey(file);
+		this.mapped = raf.getChannel().map(MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+		mapped.order(ByteOrder.nativeOrder());
+		mapped.position(HEADER_SIZE);
+		this.data = mapped.slice().order(ByteOrder.nativeOrder());
+		this.writer = data.duplicate();
+		this.tail = mapped.getLong(PRODUCER_OFFSET);
+		this.head = mapped.getLong(CONSUMER_OFFSET);
+		this.cachedHead = head;
+		this.output = new Output(1024, -1);
+		this.input = new ByteBufferInput();
+	}
+
+	/**
+	 * Create a new ring for the producer, replacing any existing file
+	 * 
+	 * @param file
+	 * @param capacity
+	 *            size of the data region in bytes, a power of 2
+	 * @return producer side of the ring
+	 * @throws IOException
+	 */
+	public static MappedRing create(File file, int capacity) throws IOException {
+		if (Integer.bitCount(capacity) != 1 || capacity < 1024) {
+			throw new IllegalArgumentException("Ring capacity must be a power of 2 of at least 1024:" + capacity);
+		}
+		file.getParentFile().mkdirs();
+		Files.deleteIfExists(file.toPath());
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(HEADER_SIZE + capacity);
+		return new MappedRing(file, raf, capacity);
+	}
+
+	/**
+	 * Open the ring of a producer for consumption
+	 * 
+	 * @param file
+	 * @param capacity
+	 * @return consumer side of the ring or null if the producer hasn't
+	 *         created the file yet
+	 * @throws IOException
+	 */
+	public static MappedRing open(File file, int capacity) throws IOException {
+		if (!file.exists() || file.length() != HEADER_SIZE + capacity) {
+			return null;
+		}
+		return new MappedRing(file, new RandomAccessFile(file, "rw"), capacity);
+	}
+
+	/**
+	 * Serialize a tuple into the ring without blocking
+	 * 
+	 * @param tuple
+	 * @return true if the tuple was written, false if the ring is full
+	 * @throws IllegalArgumentException
+	 *             if the tuple is larger than the ring
+	 */
+	public boolean offer(Object tuple) {
+		Kryo kryo = KryoCodec.getKryo();
+		output.clear();
+		kryo.writeObject(output, tuple);
+		if (align(RECORD_HEADER + output.position()) + MARKER > capacity) {
+			output.clear();
+			throw new IllegalArgumentException("Tuple doesn't fit in a ring of " + capacity + " bytes");
+		}
+		return retry();
+	}
+
+	/**
+	 * Write the tuple of the last {@link #offer(Object)} that found the ring
+	 * full, without serializing it again
+	 * 
+	 * @return true if the tuple was written, false if the ring is still full
+	 */
+	public boolean retry() {
+		int length = output.position();
+		int size = align(RECORD_HEADER + length);
+		while (true) {
+			int index = (int) (tail & mask);
+			int contiguous = capacity - index;
+			long free = capacity - (tail - cachedHead);
+			// the marker after the record is cleared too so it must be free
+			if (size <= contiguous && size + MARKER <= free) {
+				write(index, size, length, output.getBuffer());
+				return true;
+			}
+			if (size > contiguous && contiguous + MARKER <= free) {
+				// continue from the start of the data region
+				write(index, contiguous, PADDING, null);
+				continue;
+			}
+			long head = mapped.getLong(CONSUMER_OFFSET);
+			if (head == cachedHead) {
+				return false;
+			}
+			// the consumer read the space before releasing it
+			UNSAFE.loadFence();
+			cachedHead = head;
+		}
+	}
+
+	/**
+	 * Read tuples from the ring and release their space to the producer
+	 * 
+	 * @param classOf
+	 * @param consumer
+	 * @param limit
+	 *            maximum number of tuples to read
+	 * @return number of tuples read
+	 */
+	public <E> int poll(Class<E> classOf, Consumer<? super E> consumer, int limit) {
+		Kryo kryo = KryoCodec.getKryo();
+		long start = head;
+		int count = 0;
+		while (count < limit) {
+			int index = (int) (head & mask);
+			if (data.getLong(index) != head + 1) {
+				break;
+			}
+			// the record was written before it's marker
+			UNSAFE.loadFence();
+			int length = data.getInt(index + MARKER);
+			if (length == PADDING) {
+				head += capacity - index;
+				continue;
+			}
+			input.setBuffer(slice(index + RECORD_HEADER, length));
+			consumer.accept(kryo.readObject(input, classOf));
+			head += align(RECORD_HEADER + length);
+			count++;
+		}
+		if (head != start) {
+			// the records are read before their space is freed
+			UNSAFE.loadFence();
+			mapped.putLong(CONSUMER_OFFSET, head);
+		}
+		return count;
+	}
+
+	/**
+	 * @return true if the file was deleted or recreated by the producer since
+	 *         it was opened
+	 * @throws IOException
+	 */
+	public boolean isReplaced() throws IOException {
+		try {
+			Object key = readFileKey(file);
+			return key != null && !key.equals(fileKey);
+		} catch (NoSuchFileException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * @return bytes written by the producer and not yet consumed
+	 */
+	public long getPending() {
+		return mapped.getLong(PRODUCER_OFFSET) - mapped.getLong(CONSUMER_OFFSET);
+	}
+
+	/**
+	 * @return size of the data region in bytes
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return file backing the ring
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Close the file, the mapping is released when the buffer is garbage
+	 * collected
+	 */
+	@Override
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	/**
+	 * Write a record at the tail and publish it
+	 * 
+	 * @param index
+	 * @param size
+	 *            aligned size of the record
+	 * @param length
+	 *            length of the payload or {@link #PADDING}
+	 * @param payload
+	 */
+	private void write(int index, int size, int length, byte[] payload) {
+		long position = tail;
+		data.putLong((int) ((position + size) & mask), 0L);
+		data.putInt(index + MARKER, length);
+		if (payload != null) {
+			writer.position(index + RECORD_HEADER);
+			writer.put(payload, 0, length);
+		}
+		// the record is written before it's marker
+		UNSAFE.storeFence();
+		data.putLong(index, position + 1);
+		tail = position + size;
+		mapped.putLong(PRODUCER_OFFSET, tail);
+	}
+
+	private ByteBuffer slice(int index, int length) {
+		ByteBuffer buffer = data.duplicate();
+		buffer.limit(index + length).position(index);
+		return buffer.slice();
+	}
+
+	private static int align(int length) {
+		return (length + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+	}
+
+	private static Unsafe loadUnsafe() {
+		try {
+			Field field = Unsafe.class.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			return (Unsafe) field.get(null);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private static Object readFileKey(File file) throws IOException {
+		return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+	}
+
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.shm;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.lmax.disruptor.LifecycleAware;
+import com.srotya.linea.Tuple;
+import com.srotya.linea.clustering.WorkerEntry;
+import com.srotya.linea.network.NetworkClient;
+import com.srotya.linea.network.Router;
+import com.srotya.linea.network.nio.TCPClient;
+
+/**
+ * Shared memory Inter Worker Communication (IWC) client for workers on the
+ * same host, implemented as a Disruptor handler. <br>
+ * <br>
+ * Tuples are Kryo serialized straight into a {@link MappedRing} per
+ * destination worker which is consumed by it's {@link SharedMemoryServer}.
+ * The handler is the single producer of each ring and waits for the consumer
+ * when a ring is full, backing up the outbound ring like a slow connection.
+ * <br>
+ * <br>
+ * If a ring stays full for longer than {@link SharedMemoryServer#SHM_OFFER_TIMEOUT}
+ * the consumer is presumed dead or stuck and tuples for that worker are sent
+ * by the configured network client instead, which reconnects and spills like
+ * it does for remote workers. The ring is tried again at the start of a
+ * Disruptor batch once per timeout and used again once it has room.
+ * 
+ * @author ambud
+ */
+public class SharedMemoryClient<E extends Tuple> extends NetworkClient<E> implements LifecycleAware {
+
+	private static final long FULL_PARK_NANOS = 10_000;
+	private static final Logger logger = Logger.getLogger(SharedMemoryClient.class.getName());
+	private MappedRing[] rings;
+	private boolean[] diverted;
+	private long[] retryAt;
+	private long offerTimeout;
+	private boolean batchStart;
+	private NetworkClient<E> fallback;
+
+	public SharedMemoryClient() {
+	}
+
+	@Override
+	public void start() throws Exception {
+		int maxWorkerId = 0;
+		for (Integer workerId : getColumbus().getWorkerMap().keySet()) {
+			maxWorkerId = Math.max(maxWorkerId, workerId);
+		}
+		rings = new MappedRing[maxWorkerId + 1];
+		diverted = new boolean[maxWorkerId + 1];
+		retryAt = new long[maxWorkerId + 1];
+		offerTimeout = Long.parseLong(getConf().getOrDefault(SharedMemoryServer.SHM_OFFER_TIMEOUT,
+				SharedMemoryServer.DEFAULT_SHM_OFFER_TIMEOUT));
+		batchStart = true;
+		int ringSize = SharedMemoryServer.getRingSize(getConf());
+		WorkerEntry self = getColumbus().getWorkerMap().get(getColumbus().getSelfWorkerId());
+		for (Integer workerId : getWorkerIds()) {
+			rings[workerId] = MappedRing.create(
+					SharedMemoryServer.getRingFile(getConf(), self, getColumbus().getWorkerMap().get(workerId)),
+					ringSize);
+		}
+	}
+
+	@Override
+	public void onEvent(E event, long sequence, boolean endOfBatch) throws Exception {
+		int workerId = event.getDestinationWorkerId();
+		MappedRing ring = rings[workerId];
+		if (diverted[workerId] && batchStart && System.currentTimeMillis() >= retryAt[workerId]) {
+			// the network client has flushed at the end of the last batch
+			if (ring.offer(event)) {
+				logger.info("Shared memory ring of WorkerId:" + workerId + " has room again");
+				diverted[workerId] = false;
+				batchStart = endOfBatch;
+				return;
+			}
+			retryAt[workerId] = System.currentTimeMillis() + offerTimeout;
+		} else if (!diverted[workerId] && !offer(ring, event)) {
+			logger.warning("Shared memory ring of WorkerId:" + workerId + " full for " + offerTimeout
+					+ "ms, sending over the network");
+			diverted[workerId] = true;
+			retryAt[workerId] = System.currentTimeMillis() + offerTimeout;
+		}
+		if (diverted[workerId]) {
+			getFallback().onEvent(event, sequence, endOfBatch);
+		}
+		batchStart = endOfBatch;
+	}
+
+	/**
+	 * Wait for room in a ring for up to the offer timeout
+	 * 
+	 * @param ring
+	 * @param event
+	 * @return true if the tuple was written
+	 */
+	private boolean offer(MappedRing ring, E event) {
+		if (ring.offer(event)) {
+			return true;
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(offerTimeout);
+		do {
+			LockSupport.parkNanos(FULL_PARK_NANOS);
+			if (ring.retry()) {
+				return true;
+			}
+		} while (System.nanoTime() - deadline < 0);
+		return false;
+	}
+
+	/**
+	 * @return network client for workers whose ring is stuck, created on
+	 *         first use
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	private NetworkClient<E> getFallback() throws Exception {
+		if (fallback == null) {
+			NetworkClient<E> client = (NetworkClient<E>) Class
+					.forName(getConf().getOrDefault(Router.NETWORK_CLIENT_CLASS, TCPClient.class.getName()))
+					.newInstance();
+			client.setColumbus(getColumbus());
+			client.setClientThreads(getClientThreads());
+			client.setClientThreadId(getClientThreadId());
+			client.setWorkerIds(getWorkerIds());
+			client.setConf(getConf());
+			client.start();
+			if (client instanceof LifecycleAware) {
+				((LifecycleAware) client).onStart();
+			}
+			fallback = client;
+		}
+		return fallback;
+	}
+
+	/**
+	 * @param workerId
+	 * @return true if tuples for the worker are sent over the network
+	 */
+	public boolean isDiverted(int workerId) {
+		return diverted[workerId];
+	}
+
+	@Override
+	public void onStart() {
+	}
+
+	@Override
+	public void onShutdown() {
+		if (fallback instanceof LifecycleAware) {
+			((LifecycleAware) fallback).onShutdown();
+		}
+		if (rings == null) {
+			return;
+		}
+		for (MappedRing ring : rings) {
+			if (ring != null) {
+				try {
+					ring.close();
+				} catch (IOException e) {
+					logger.log(Level.WARNING, "Failed to close ring:" + ring.getFile(), e);
+				}
+			}
+		}
+	}
+
+}
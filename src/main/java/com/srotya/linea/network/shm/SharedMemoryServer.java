@@ -0,0 +1,207 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.shm;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.srotya.linea.Tuple;
+import com.srotya.linea.clustering.Columbus;
+import com.srotya.linea.clustering.WorkerEntry;
+import com.srotya.linea.network.NetworkServer;
+
+/**
+ * Shared memory Inter Worker Communication (IWC) server for workers on the
+ * same host, consumes the {@link MappedRing}s written by the
+ * {@link SharedMemoryClient}s of co-located workers. <br>
+ * <br>
+ * A single thread polls the rings of all co-located workers, opening each
+ * ring once it's producer has created it and reopening it if the producer
+ * recreates it. Tuples are handed to the router in batches. The rings are
+ * deleted when the server stops.
+ * 
+ * @author ambud
+ */
+public class SharedMemoryServer<E extends Tuple> extends NetworkServer<E> implements Consumer<E> {
+
+	public static final String SHM_ENABLED = "network.shm.enabled";
+	public static final String DEFAULT_SHM_ENABLED = "true";
+	public static final String SHM_DIR = "network.shm.dir";
+	public static final String DEFAULT_SHM_DIR = System.getProperty("java.io.tmpdir") + File.separator + "linea-shm";
+	public static final String SHM_RING_SIZE = "network.shm.ring.size";
+	public static final String DEFAULT_SHM_RING_SIZE = String.valueOf(8 * 1024 * 1024);
+	/**
+	 * Time a client waits on a full ring before sending over the network
+	 * instead
+	 */
+	public static final String SHM_OFFER_TIMEOUT = "network.shm.offer.timeout.ms";
+	public static final String DEFAULT_SHM_OFFER_TIMEOUT = "1000";
+	private static final int BATCH_SIZE = 1024;
+	private static final long IDLE_PARK_NANOS = 50_000;
+	private static final long REOPEN_CHECK_INTERVAL = 1000;
+	private static final Logger logger = Logger.getLogger(SharedMemoryServer.class.getName());
+	private List<Integer> peers;
+	private MappedRing[] rings;
+	private E[] batch;
+	private int size;
+	private volatile boolean running;
+
+	public SharedMemoryServer() {
+	}
+
+	/**
+	 * @param conf
+	 * @param columbus
+	 * @param workerId
+	 * @return true if shared memory is enabled and the worker is on the same
+	 *         host as this worker
+	 */
+	public static boolean isColocated(Map<String, String> conf, Columbus columbus, int workerId) {
+		if (!Boolean.parseBoolean(conf.getOrDefault(SHM_ENABLED, DEFAULT_SHM_ENABLED))
+				|| workerId == columbus.getSelfWorkerId()) {
+			return false;
+		}
+		WorkerEntry self = columbus.getWorkerMap().get(columbus.getSelfWorkerId());
+		WorkerEntry peer = columbus.getWorkerMap().get(workerId);
+		return self != null && peer != null && self.getWorkerAddress().equals(peer.getWorkerAddress());
+	}
+
+	/**
+	 * Ring files are named after the data ports of the two workers, which are
+	 * unique on a host
+	 * 
+	 * @param conf
+	 * @param producer
+	 * @param consumer
+	 * @return file of the ring from producer to consumer
+	 */
+	public static File getRingFile(Map<String, String> conf, WorkerEntry producer, WorkerEntry consumer) {
+		return new File(conf.getOrDefault(SHM_DIR, DEFAULT_SHM_DIR),
+				producer.getDataPort() + "-" + consumer.getDataPort() + ".ring");
+	}
+
+	/**
+	 * @param conf
+	 * @return data region size of each ring
+	 */
+	public static int getRingSize(Map<String, String> conf) {
+		return Integer.parseInt(conf.getOrDefault(SHM_RING_SIZE, DEFAULT_SHM_RING_SIZE));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void start() throws Exception {
+		Columbus columbus = getColumbus();
+		int ringSize = getRingSize(getConf());
+		WorkerEntry self = columbus.getWorkerMap().get(columbus.getSelfWorkerId());
+		peers = new ArrayList<>();
+		int maxWorkerId = 0;
+		for (Integer workerId : columbus.getWorkerMap().keySet()) {
+			maxWorkerId = Math.max(maxWorkerId, workerId);
+			if (isColocated(getConf(), columbus, workerId)) {
+				peers.add(workerId);
+			}
+		}
+		rings = new MappedRing[maxWorkerId + 1];
+		batch = (E[]) Array.newInstance(getClassOf(), BATCH_SIZE);
+		running = true;
+		long lastCheck = System.currentTimeMillis();
+		while (running) {
+			int count = 0;
+			for (Integer workerId : peers) {
+				MappedRing ring = rings[workerId];
+				if (ring == null) {
+					rings[workerId] = MappedRing
+							.open(getRingFile(getConf(), columbus.getWorkerMap().get(workerId), self), ringSize);
+					continue;
+				}
+				try {
+					count += ring.poll(getClassOf(), this, BATCH_SIZE);
+				} catch (Exception e) {
+					logger.log(Level.SEVERE, "Failed to read ring of worker:" + workerId, e);
+					ring.close();
+					rings[workerId] = null;
+				}
+			}
+			route();
+			if (count == 0) {
+				long ts = System.currentTimeMillis();
+				if (ts - lastCheck >= REOPEN_CHECK_INTERVAL) {
+					lastCheck = ts;
+					reopenReplaced();
+				}
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Drop rings recreated by a restarted producer so they are opened again
+	 * 
+	 * @throws IOException
+	 */
+	private void reopenReplaced() throws IOException {
+		for (Integer workerId : peers) {
+			MappedRing ring = rings[workerId];
+			if (ring != null && ring.isReplaced()) {
+				logger.info("Ring of worker:" + workerId + " was recreated, reopening");
+				ring.close();
+				rings[workerId] = null;
+			}
+		}
+	}
+
+	@Override
+	public void accept(E tuple) {
+		batch[size++] = tuple;
+		if (size == batch.length) {
+			route();
+		}
+	}
+
+	private void route() {
+		if (size > 0) {
+			getRouter().directLocalRouteEvents(batch, 0, size);
+			for (int i = 0; i < size; i++) {
+				batch[i] = null;
+			}
+			size = 0;
+		}
+	}
+
+	@Override
+	public void stop() throws IOException {
+		running = false;
+		if (rings == null) {
+			return;
+		}
+		for (MappedRing ring : rings) {
+			if (ring != null) {
+				ring.close();
+				ring.getFile().delete();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.processors;
+
+import com.srotya.linea.Tuple;
+
+/**
+ * A {@link Bolt} that is notified when the batch of {@link Tuple}s currently
+ * available in its ring buffer has been drained. <br>
+ * <br>
+ * Sinks can use this to flush buffered writes, coalesce acks or amortize
+ * other per-batch costs without relying on tick tuples and the latency they
+ * add. Batches are naturally sized by load: under light load a batch may be a
+ * single tuple while under heavy load it grows up to the ring size.
+ * 
+ * @author ambud
+ */
+public interface BatchBolt<E extends Tuple> extends Bolt<E> {
+
+	/**
+	 * Method called on the bolt's own thread after the last {@link Tuple} of a
+	 * batch has been passed to {@link #process(Tuple)}. <br>
+	 * <br>
+	 * Bolts chained to an upstream bolt receive this callback whenever the
+	 * upstream batch ends, which may be without any tuples having been
+	 * processed since the previous call.
+	 */
+	public void onBatchEnd();
+
+}
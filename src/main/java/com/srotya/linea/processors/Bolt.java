@@ -19,6 +19,7 @@ import java.io.Serializable;
 import java.util.Map;
 
 import com.srotya.linea.Collector;
+import com.srotya.linea.KeyHasher;
 import com.srotya.linea.Tuple;
 import com.srotya.linea.disruptor.ROUTING_TYPE;
 
@@ -74,4 +75,14 @@ public interface Bolt<E extends Tuple> extends Serializable {
 	 */
 	public int tickTupleFrequency();
 
+	/**
+	 * Hasher for the grouping key of tuples routed to this bolt, only used
+	 * with {@link ROUTING_TYPE#GROUPBY}
+	 * 
+	 * @return key hasher or null to hash the tuple's group by key
+	 */
+	public default KeyHasher<E> getKeyHasher() {
+		return null;
+	}
+
 }
@@ -18,16 +18,20 @@ package com.srotya.linea.processors;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifecycleAware;
 import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.WaitStrategy;
 import com.lmax.disruptor.YieldingWaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
@@ -35,9 +39,13 @@ import com.srotya.linea.Collector;
 import com.srotya.linea.Topology;
 import com.srotya.linea.Tuple;
 import com.srotya.linea.TupleFactory;
+import com.srotya.linea.TupleIds;
+import com.srotya.linea.TuplePool;
 import com.srotya.linea.clustering.Columbus;
 import com.srotya.linea.disruptor.CopyTranslator;
 import com.srotya.linea.network.Router;
+import com.srotya.linea.processors.TickScheduler.Timer;
+import com.srotya.linea.utils.DisruptorUtils;
 
 /**
  * {@link Bolt} Executor is wrapper that instantiates and executes bolt code.
@@ -48,8 +56,13 @@ public class BoltExecutor<E extends Tuple> {
 
 	private static final Logger logger = Logger.getLogger(BoltExecutor.class.getName());
 	private ExecutorService es;
+	private ExecutorService readyEs;
 	private Bolt<E> templateBoltInstance;
 	private Map<Integer, BoltExecutorWrapper<E>> taskProcessorMap;
+	private BoltExecutorWrapper<E>[] taskProcessors;
+	private int taskOffset;
+	private int componentId = -1;
+	private String chainedTo;
 	private CopyTranslator<E> copyTranslator;
 	private int parallelism;
 	private Columbus columbus;
@@ -57,6 +70,8 @@ public class BoltExecutor<E extends Tuple> {
 	private Map<String, String> conf;
 	private Router<E> router;
 	private TupleFactory<E> factory;
+	private TickScheduler tickScheduler;
+	private TuplePool<E> tuplePool;
 
 	/**
 	 * @param conf
@@ -77,15 +92,21 @@ public class BoltExecutor<E extends Tuple> {
 		this.columbus = columbus;
 		this.parallelism = parallelism;
 		this.router = router;
-		this.taskProcessorMap = new HashMap<>();
+		this.taskProcessorMap = new LinkedHashMap<>();
 		this.templateBoltInstance = deserializeBoltInstance(serializedBoltInstance);
-		this.es = Executors.newFixedThreadPool(parallelism * 2);
+		// one event processor thread per task, ready methods (and with them
+		// spout loops) run on their own threads so they never starve a ring
+		this.es = Executors.newFixedThreadPool(parallelism);
+		this.readyEs = Executors.newCachedThreadPool();
 		this.copyTranslator = copyTranslator;
+		this.tuplePool = new TuplePool<>(factory,
+				Integer.parseInt(conf.getOrDefault(TuplePool.TUPLE_POOL_SIZE, TuplePool.DEFAULT_TUPLE_POOL_SIZE)));
 	}
 
 	/**
 	 * Start method for this bolt executor
 	 */
+	@SuppressWarnings("unchecked")
 	public void start() {
 		/**
 		 * First worker 0*4+0 = 0 0*4+1 = 1 0*4+2 = 2 = 3 Second worker 1*4+0 =
@@ -98,12 +119,31 @@ public class BoltExecutor<E extends Tuple> {
 		// es.submit(() -> {
 		// });
 		try {
+			taskOffset = columbus.getSelfWorkerId() * parallelism;
+			taskProcessors = new BoltExecutorWrapper[parallelism];
 			for (int i = 0; i < parallelism; i++) {
-				int taskId = columbus.getSelfWorkerId() * parallelism + i;
+				int taskId = taskOffset + i;
 				Bolt<E> object = deserializeBoltInstance(serializedBoltInstance);
-				object.configure(conf, taskId,
-						new Collector<E>(factory, router, object.getBoltName(), taskId, parallelism));
-				taskProcessorMap.put(taskId, new BoltExecutorWrapper<E>(factory, es, object, copyTranslator));
+				Collector<E> collector = new Collector<E>(factory, router, object.getBoltName(), taskId, parallelism);
+				// tasks run on their own threads, the per-thread pools are
+				// shared by all tasks of this executor
+				collector.setTuplePool(tuplePool);
+				object.configure(conf, taskId, collector);
+				String prefix = object.getBoltName() + ".";
+				if (object instanceof Spout) {
+					collector.setReliable(((Spout<E>) object).isReliable(conf));
+					collector.setMaxPending(Integer.parseInt(conf.getOrDefault(prefix + Topology.SPOUT_MAX_PENDING,
+							conf.getOrDefault(Topology.SPOUT_MAX_PENDING, Topology.DEFAULT_SPOUT_MAX_PENDING))));
+				}
+				BoltExecutorWrapper<E> wrapper = new BoltExecutorWrapper<E>(factory, es, object, copyTranslator,
+						isChained(), DisruptorUtils.getRingSize(conf, prefix),
+						DisruptorUtils.getWaitStrategy(conf, prefix));
+				wrapper.setCollector(collector);
+				wrapper.setReadyPool(readyEs);
+				wrapper.setTickScheduler(tickScheduler);
+				wrapper.setTask(componentId, taskId);
+				taskProcessors[i] = wrapper;
+				taskProcessorMap.put(taskId, wrapper);
 			}
 			for (Entry<Integer, BoltExecutorWrapper<E>> entry : taskProcessorMap.entrySet()) {
 				entry.getValue().start();
@@ -122,8 +162,10 @@ public class BoltExecutor<E extends Tuple> {
 		for (Entry<Integer, BoltExecutorWrapper<E>> entry : taskProcessorMap.entrySet()) {
 			entry.getValue().stop();
 		}
+		readyEs.shutdownNow();
 		es.shutdownNow();
 		es.awaitTermination(1000, TimeUnit.MILLISECONDS);
+		readyEs.awaitTermination(1000, TimeUnit.MILLISECONDS);
 	}
 
 	/**
@@ -142,6 +184,18 @@ public class BoltExecutor<E extends Tuple> {
 		return processor;
 	}
 
+	/**
+	 * Link each task of a chained downstream bolt to the task of this bolt
+	 * that drives it so that batch boundaries are propagated downstream.
+	 * 
+	 * @param downstream
+	 */
+	public void chain(BoltExecutor<E> downstream) {
+		for (int i = 0; i < parallelism; i++) {
+			taskProcessors[i].addChained(downstream.taskProcessors[i]);
+		}
+	}
+
 	/**
 	 * Method called by Router
 	 * 
@@ -149,15 +203,101 @@ public class BoltExecutor<E extends Tuple> {
 	 * @param tuple
 	 */
 	public void process(int taskId, E tuple) {
-		BoltExecutorWrapper<E> wrapper = taskProcessorMap.get(taskId);
-		if (wrapper != null) {
-			wrapper.getBuffer().publishEvent(copyTranslator, tuple);
+		int index = taskId - taskOffset;
+		if (index >= 0 && index < parallelism) {
+			if (chainedTo == null) {
+				taskProcessors[index].getBuffer().publishEvent(copyTranslator, tuple);
+			} else {
+				// fused with the upstream bolt, invoke on the caller's thread
+				// which is the upstream task, see Topology#chainBolt
+				taskProcessors[index].process(tuple);
+			}
 		} else {
 			logger.severe("Executor not found for:" + taskId + "\t" + columbus.getSelfWorkerId() + "\t"
 					+ taskProcessorMap + "\t" + tuple);
 		}
 	}
 
+	/**
+	 * Ring occupancy of the fullest task of this bolt, chained bolts don't
+	 * own a ring and always report 0
+	 * 
+	 * @return fraction of ring slots in use from 0 to 1
+	 */
+	public double getRingOccupancy() {
+		double max = 0;
+		if (taskProcessors != null) {
+			for (BoltExecutorWrapper<E> wrapper : taskProcessors) {
+				max = Math.max(max, wrapper.getRingOccupancy());
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Free ring capacity of a local task
+	 * 
+	 * @param taskId
+	 * @return free ring slots or -1 if the task isn't local or the bolt is
+	 *         chained and doesn't own a ring
+	 */
+	public long getRemainingCapacity(int taskId) {
+		int index = taskId - taskOffset;
+		if (chainedTo != null || taskProcessors == null || index < 0 || index >= parallelism) {
+			return -1;
+		}
+		RingBuffer<E> buffer = taskProcessors[index].getBuffer();
+		return buffer != null ? buffer.remainingCapacity() : -1;
+	}
+
+	/**
+	 * Method called by Router for a batch of tuples destined to the same task
+	 * 
+	 * @param taskId
+	 * @param tuples
+	 * @param offset
+	 * @param length
+	 */
+	public void process(int taskId, E[] tuples, int offset, int length) {
+		int index = taskId - taskOffset;
+		if (chainedTo != null || index < 0 || index >= parallelism) {
+			for (int i = offset; i < offset + length; i++) {
+				process(taskId, tuples[i]);
+			}
+			return;
+		}
+		RingBuffer<E> buffer = taskProcessors[index].getBuffer();
+		int maxBatch = buffer.getBufferSize();
+		for (int start = offset; start < offset + length; start += maxBatch) {
+			buffer.publishEvents(copyTranslator, start, Math.min(maxBatch, offset + length - start), tuples);
+		}
+	}
+
+	/**
+	 * Method called by Router for a batch of tuples destined to the same task
+	 * when the caller can't wait for room in the task's ring
+	 * 
+	 * @param taskId
+	 * @param tuples
+	 * @param offset
+	 * @param length
+	 * @return number of tuples from the start of the batch that were
+	 *         published, the rest didn't fit in the ring
+	 */
+	public int tryProcess(int taskId, E[] tuples, int offset, int length) {
+		int index = taskId - taskOffset;
+		if (chainedTo != null || index < 0 || index >= parallelism) {
+			process(taskId, tuples, offset, length);
+			return length;
+		}
+		RingBuffer<E> buffer = taskProcessors[index].getBuffer();
+		int size = (int) Math.min(length, buffer.remainingCapacity());
+		if (size > 0 && buffer.tryPublishEvents(copyTranslator, offset, size, tuples)) {
+			return size;
+		}
+		return 0;
+	}
+
 	/**
 	 * @return templatedBoltInstance
 	 */
@@ -172,6 +312,60 @@ public class BoltExecutor<E extends Tuple> {
 		return parallelism;
 	}
 
+	/**
+	 * @return the componentId
+	 */
+	public int getComponentId() {
+		return componentId;
+	}
+
+	/**
+	 * Dense integer id of this bolt in the topology, assigned when the
+	 * topology is started and used by the {@link Router} to index its
+	 * routing tables.
+	 * 
+	 * @param componentId
+	 *            the componentId to set
+	 */
+	public void setComponentId(int componentId) {
+		this.componentId = componentId;
+	}
+
+	/**
+	 * @return true if this bolt is fused with its upstream bolt
+	 */
+	public boolean isChained() {
+		return chainedTo != null;
+	}
+
+	/**
+	 * @return name of the upstream bolt this bolt is fused with
+	 */
+	public String getChainedTo() {
+		return chainedTo;
+	}
+
+	/**
+	 * Fuse this bolt with an upstream bolt of the same parallelism. Tuples are
+	 * handed to a chained bolt directly on the thread of the emitting upstream
+	 * task instead of being copied into a ring buffer of its own.
+	 * 
+	 * @param chainedTo
+	 *            name of the upstream bolt
+	 */
+	public void setChainedTo(String chainedTo) {
+		this.chainedTo = chainedTo;
+	}
+
+	/**
+	 * @param tickScheduler
+	 *            scheduler that publishes tick tuples to the tasks of this
+	 *            bolt
+	 */
+	public void setTickScheduler(TickScheduler tickScheduler) {
+		this.tickScheduler = tickScheduler;
+	}
+
 	/**
 	 * @return the taskProcessorMap
 	 */
@@ -191,34 +385,69 @@ public class BoltExecutor<E extends Tuple> {
 	 * 
 	 * @author ambud
 	 */
-	public static class BoltExecutorWrapper<E extends Tuple> implements EventHandler<E> {
+	public static class BoltExecutorWrapper<E extends Tuple> implements EventHandler<E>, LifecycleAware {
 
 		private Bolt<E> bolt;
+		private BatchBolt<E> batchBolt;
+		private List<BoltExecutorWrapper<E>> chainedWrappers;
+		private Collector<E> collector;
+		private boolean spout;
 		private Disruptor<E> disruptor;
 		private RingBuffer<E> buffer;
 		private ExecutorService pool;
+		private ExecutorService readyPool;
 		private TupleFactory<E> factory;
-		private volatile boolean flag;
+		private TickScheduler tickScheduler;
+		private volatile Timer tickTimer;
 		private CopyTranslator<E> copyTranslator;
+		private TuplePool<E> tuplePool;
+		private int componentId = -1;
+		private int taskId = -1;
 
-		@SuppressWarnings("unchecked")
 		public BoltExecutorWrapper(TupleFactory<E> factory, ExecutorService pool, Bolt<E> processor,
 				CopyTranslator<E> copyTranslator) {
+			this(factory, pool, processor, copyTranslator, false, 1024 * 8, new YieldingWaitStrategy());
+		}
+
+		/**
+		 * @param factory
+		 * @param pool
+		 * @param processor
+		 * @param copyTranslator
+		 * @param chained
+		 *            chained wrappers don't own a ring buffer, tuples are
+		 *            processed on the thread of the upstream bolt
+		 * @param ringSize
+		 * @param waitStrategy
+		 */
+		@SuppressWarnings("unchecked")
+		public BoltExecutorWrapper(TupleFactory<E> factory, ExecutorService pool, Bolt<E> processor,
+				CopyTranslator<E> copyTranslator, boolean chained, int ringSize, WaitStrategy waitStrategy) {
 			this.copyTranslator = copyTranslator;
-			this.flag = true;
 			this.factory = factory;
+			this.tuplePool = new TuplePool<>(factory, 1);
 			this.pool = pool;
+			this.readyPool = pool;
 			this.bolt = processor;
-			disruptor = new Disruptor<>(factory, 1024 * 8, pool, ProducerType.MULTI, new YieldingWaitStrategy());
-			disruptor.handleEventsWith(this);
+			this.spout = processor instanceof Spout;
+			if (processor instanceof BatchBolt) {
+				this.batchBolt = (BatchBolt<E>) processor;
+			}
+			this.chainedWrappers = new CopyOnWriteArrayList<>();
+			if (!chained) {
+				disruptor = new Disruptor<>(factory, ringSize, pool, ProducerType.MULTI, waitStrategy);
+				disruptor.handleEventsWith(this);
+			}
 		}
 
 		/**
 		 * Start {@link BoltExecutorWrapper}
 		 */
 		public void start() {
-			buffer = disruptor.start();
-			pool.submit(() -> {
+			if (disruptor != null) {
+				buffer = disruptor.start();
+			}
+			readyPool.submit(() -> {
 				try {
 					// wait 3 seconds before launching ready methods
 					Thread.sleep(3000);
@@ -226,33 +455,152 @@ public class BoltExecutor<E extends Tuple> {
 					return;
 				}
 				bolt.ready();
-				if (bolt.tickTupleFrequency() > 0) {
-					while (flag) {
-						E tickTuple = factory.buildTuple();
-						tickTuple.setComponentName(Topology.TICK_TUPLE);
-						buffer.publishEvent(copyTranslator, tickTuple);
-						try {
-							Thread.sleep(bolt.tickTupleFrequency());
-						} catch (InterruptedException e) {
-							e.printStackTrace();
-							break;
-						}
-					}
+				if (buffer != null && tickScheduler != null && bolt.tickTupleFrequency() > 0) {
+					tickTimer = tickScheduler.schedule(this::publishTick, 0, bolt.tickTupleFrequency());
 				}
 			});
 		}
 
+		/**
+		 * Publish a tick tuple without blocking the shared tick thread
+		 * 
+		 * @return false if the ring is full and the tick should be retried
+		 */
+		private boolean publishTick() {
+			E tickTuple = tuplePool.acquire();
+			tickTuple.setComponentId(Topology.TICK_TUPLE_ID);
+			boolean published = buffer.tryPublishEvent(copyTranslator, tickTuple);
+			tuplePool.release(tickTuple);
+			return published;
+		}
+
 		/**
 		 * Stop {@link BoltExecutorWrapper}
 		 */
 		public void stop() {
-			flag = true;
-			disruptor.shutdown();
+			if (tickTimer != null) {
+				tickTimer.cancel();
+			}
+			if (disruptor != null) {
+				disruptor.shutdown();
+			}
 		}
 
 		@Override
-		public void onEvent(E event, long arg1, boolean arg2) throws Exception {
-			bolt.process(event);
+		public void onEvent(E event, long sequence, boolean endOfBatch) throws Exception {
+			if (spout && collector != null && event.getGroupByKey() != null) {
+				// tuple tree completed (ack or fail), release before the
+				// callback so that a replay from fail can emit without waiting
+				collector.releasePending();
+			}
+			process(event);
+			if (endOfBatch) {
+				onBatchEnd();
+			}
+		}
+
+		/**
+		 * Notify the {@link BatchBolt} and any chained downstream bolts that
+		 * the current batch has ended
+		 */
+		public void onBatchEnd() {
+			if (batchBolt != null) {
+				batchBolt.onBatchEnd();
+			}
+			for (BoltExecutorWrapper<E> wrapper : chainedWrappers) {
+				wrapper.onBatchEnd();
+			}
+		}
+
+		/**
+		 * Add a chained downstream wrapper whose bolt runs on this wrapper's
+		 * thread
+		 * 
+		 * @param wrapper
+		 */
+		public void addChained(BoltExecutorWrapper<E> wrapper) {
+			chainedWrappers.add(wrapper);
+		}
+
+		@Override
+		public void onStart() {
+			if (collector != null) {
+				collector.setHandlerThread(Thread.currentThread());
+			}
+			if (taskId >= 0) {
+				TupleIds.getGenerator().bind(componentId, taskId);
+			}
+		}
+
+		@Override
+		public void onShutdown() {
+		}
+
+		/**
+		 * @param tickScheduler
+		 *            worker wide scheduler that drives tick tuples
+		 */
+		public void setTickScheduler(TickScheduler tickScheduler) {
+			this.tickScheduler = tickScheduler;
+		}
+
+		/**
+		 * @param readyPool
+		 *            pool that runs {@link Bolt#ready()}, defaults to the
+		 *            event processor pool
+		 */
+		public void setReadyPool(ExecutorService readyPool) {
+			this.readyPool = readyPool;
+		}
+
+		/**
+		 * @param componentId
+		 * @param taskId
+		 *            task drained by this wrapper's thread
+		 */
+		public void setTask(int componentId, int taskId) {
+			this.componentId = componentId;
+			this.taskId = taskId;
+		}
+
+		/**
+		 * @param collector
+		 *            collector of the bolt instance, told which thread drains
+		 *            this wrapper's ring
+		 */
+		public void setCollector(Collector<E> collector) {
+			this.collector = collector;
+			this.tuplePool = collector.getTuplePool();
+		}
+
+		/**
+		 * Process {@link Tuple} on the calling thread with acks coalesced
+		 * until the bolt returns, called directly for chained bolts
+		 * 
+		 * @param tuple
+		 */
+		public void process(E tuple) {
+			if (collector == null) {
+				bolt.process(tuple);
+				return;
+			}
+			collector.startCoalescing();
+			try {
+				bolt.process(tuple);
+			} finally {
+				collector.flushAcks();
+			}
+		}
+
+		/**
+		 * @return fraction of ring slots in use from 0 to 1
+		 */
+		public double getRingOccupancy() {
+			RingBuffer<E> ring = buffer;
+			if (ring == null) {
+				return 0;
+			}
+			return 1.0 - (double) ring.remainingCapacity() / ring.getBufferSize();
 		}
 
 		/**
@@ -15,6 +15,9 @@
  */
 package com.srotya.linea.processors;
 
+import java.util.Map;
+
+import com.srotya.linea.Topology;
 import com.srotya.linea.Tuple;
 import com.srotya.linea.disruptor.ROUTING_TYPE;
 
@@ -59,6 +62,20 @@ public abstract class Spout<E extends Tuple> implements Bolt<E> {
 	}
 	
 	public abstract String getSpoutName();
+
+	/**
+	 * Reliable spouts have every tuple tree tracked by the acker and receive
+	 * {@link #ack(Long)} / {@link #fail(Long)} callbacks. Unreliable spouts
+	 * emit at-most-once, their tuples generate no ack traffic at all.
+	 * Override or set {@link Topology#SPOUT_RELIABLE} to change.
+	 * 
+	 * @param conf
+	 * @return true if tuples emitted by this spout are tracked
+	 */
+	public boolean isReliable(Map<String, String> conf) {
+		return Boolean.parseBoolean(conf.getOrDefault(getBoltName() + "." + Topology.SPOUT_RELIABLE,
+				conf.getOrDefault(Topology.SPOUT_RELIABLE, Topology.DEFAULT_SPOUT_RELIABLE)));
+	}
 	
 	@Override
 	public ROUTING_TYPE getRoutingType() {
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.processors;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.srotya.linea.Topology;
+
+/**
+ * Hashed timer wheel that drives the tick tuples of every task on a worker
+ * from a single thread, instead of one sleeping thread per task. <br>
+ * <br>
+ * Timers are kept in intrusive lists hashed by their deadline tick, advancing
+ * the wheel only touches the bucket of the current tick. Deadlines are
+ * absolute so periodic timers don't drift, a task that asks to be retried
+ * runs again on the next tick without moving the deadlines of the periods
+ * that follow. An optional random jitter
+ * added to the first deadline spreads tasks with the same period so they
+ * don't all fire in the same tick.
+ * 
+ * @author ambud
+ */
+public class TickScheduler implements Runnable {
+
+	private static final Logger logger = Logger.getLogger(TickScheduler.class.getName());
+	private static final int WHEEL_SIZE = 512;
+	private static final int MASK = WHEEL_SIZE - 1;
+	private final Timer[] wheel;
+	private final Queue<Timer> newTimers;
+	private final long resolutionNanos;
+	private final long maxJitter;
+	private long startNanos;
+	private long currentTick;
+	private volatile boolean running;
+	private Thread thread;
+
+	/**
+	 * @param resolution
+	 *            tick duration in milliseconds
+	 * @param maxJitter
+	 *            maximum random delay in milliseconds added to the first
+	 *            deadline of each timer
+	 */
+	public TickScheduler(long resolution, long maxJitter) {
+		if (resolution < 1) {
+			throw new IllegalArgumentException("Tick resolution must be at least 1ms:" + resolution);
+		}
+		this.resolutionNanos = TimeUnit.MILLISECONDS.toNanos(resolution);
+		this.maxJitter = maxJitter;
+		this.wheel = new Timer[WHEEL_SIZE];
+		this.newTimers = new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * Start the wheel thread
+	 */
+	public void start() {
+		running = true;
+		startNanos = System.nanoTime();
+		thread = new Thread(this, "tick-scheduler");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop the wheel thread
+	 */
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Schedule a periodic task, the task runs on the wheel thread and must
+	 * not block.
+	 * 
+	 * @param task
+	 *            returns false if it couldn't run and should be retried on the
+	 *            next tick
+	 * @param initialDelay
+	 *            in milliseconds
+	 * @param period
+	 *            in milliseconds
+	 * @return timer that can be cancelled
+	 */
+	public Timer schedule(Task task, long initialDelay, long period) {
+		if (period < 1) {
+			throw new IllegalArgumentException("Period must be at least 1ms:" + period);
+		}
+		long jitter = maxJitter > 0 ? ThreadLocalRandom.current().nextLong(maxJitter + 1) : 0;
+		Timer timer = new Timer(task, toTicks(initialDelay + jitter), Math.max(1, toTicks(period)));
+		newTimers.add(timer);
+		return timer;
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			long next = startNanos + (currentTick + 1) * resolutionNanos;
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+				if (Thread.currentThread().isInterrupted()) {
+					break;
+				}
+				continue;
+			}
+			advance();
+		}
+	}
+
+	/**
+	 * Advance the wheel by one tick and run the timers that are due
+	 */
+	protected void advance() {
+		currentTick++;
+		addNewTimers();
+		expire();
+	}
+
+	private void addNewTimers() {
+		Timer timer;
+		while ((timer = newTimers.poll()) != null) {
+			timer.deadline = currentTick + timer.delayTicks;
+			timer.due = timer.deadline;
+			add(timer);
+		}
+	}
+
+	private void expire() {
+		int bucket = (int) (currentTick & MASK);
+		Timer timer = wheel[bucket];
+		wheel[bucket] = null;
+		while (timer != null) {
+			Timer next = timer.next;
+			timer.next = null;
+			if (timer.cancelled) {
+				// dropped
+			} else if (timer.due > currentTick) {
+				// due in a later round
+				add(timer);
+			} else {
+				boolean done;
+				try {
+					done = timer.task.run();
+				} catch (Exception e) {
+					logger.log(Level.SEVERE, "Tick task failed", e);
+					done = true;
+				}
+				if (done) {
+					// next period after this tick, skipping the ones missed
+					// while retrying
+					timer.deadline += ((currentTick - timer.deadline) / timer.periodTicks + 1) * timer.periodTicks;
+					timer.due = timer.deadline;
+				} else {
+					timer.due = currentTick + 1;
+				}
+				add(timer);
+			}
+			timer = next;
+		}
+	}
+
+	private void add(Timer timer) {
+		int bucket = (int) (timer.due & MASK);
+		timer.next = wheel[bucket];
+		wheel[bucket] = timer;
+	}
+
+	private long toTicks(long millis) {
+		return (TimeUnit.MILLISECONDS.toNanos(millis) + resolutionNanos - 1) / resolutionNanos;
+	}
+
+	/**
+	 * @param conf
+	 * @return scheduler configured with {@link Topology#TICK_RESOLUTION} and
+	 *         {@link Topology#TICK_JITTER}
+	 */
+	public static TickScheduler fromConf(Map<String, String> conf) {
+		return new TickScheduler(
+				Long.parseLong(conf.getOrDefault(Topology.TICK_RESOLUTION, Topology.DEFAULT_TICK_RESOLUTION)),
+				Long.parseLong(conf.getOrDefault(Topology.TICK_JITTER, Topology.DEFAULT_TICK_JITTER)));
+	}
+
+	/**
+	 * Work run by a {@link Timer}
+	 * 
+	 * @author ambud
+	 */
+	public static interface Task {
+
+		/**
+		 * @return false to retry on the next tick instead of waiting a full
+		 *         period
+		 */
+		public boolean run();
+
+	}
+
+	/**
+	 * Handle of a scheduled periodic {@link Task}
+	 * 
+	 * @author ambud
+	 */
+	public static class Timer {
+
+		private final Task task;
+		private final long delayTicks;
+		private final long periodTicks;
+		private long deadline;
+		private long due;
+		private Timer next;
+		private volatile boolean cancelled;
+
+		private Timer(Task task, long delayTicks, long periodTicks) {
+			this.task = task;
+			this.delayTicks = delayTicks;
+			this.periodTicks = periodTicks;
+		}
+
+		/**
+		 * Stop the timer, it's removed from the wheel when its bucket is next
+		 * visited
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * @return true if cancelled
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+	}
+
+}
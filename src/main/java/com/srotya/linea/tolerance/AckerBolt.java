@@ -15,17 +15,18 @@
  */
 package com.srotya.linea.tolerance;
 
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.Logger;
 
 import com.srotya.linea.Collector;
+import com.srotya.linea.ComponentRegistry;
 import com.srotya.linea.Topology;
 import com.srotya.linea.Tuple;
+import com.srotya.linea.TuplePool;
 import com.srotya.linea.disruptor.ROUTING_TYPE;
 import com.srotya.linea.processors.Bolt;
+import com.srotya.linea.processors.Spout;
+import com.srotya.linea.tolerance.AckerLedger.ExpiryListener;
 
 /**
  * Inspired by the XOR Ledger concept of Apache Storm by Nathan Marz. <br>
@@ -41,9 +42,11 @@ public class AckerBolt<E extends Tuple> implements Bolt<E> {
 	private static final int PRINT_COUNT = 100000;
 	private static final long serialVersionUID = 1L;
 	public static final String ACKER_BOLT_NAME = "_acker";
-	private static final float ACKER_MAP_LOAD_FACTOR = 0.9f;
-	private static final int ACKER_MAP_SIZE = 1000000;
-	private transient RotatingMap<Long, AckerEntry> ackerMap;
+	public static final String ACKER_LEDGER_CAPACITY = "acker.ledger.capacity";
+	public static final String DEFAULT_ACKER_LEDGER_CAPACITY = String.valueOf(1 << 18);
+	private static final int ACKER_GENERATIONS = 3;
+	private transient AckerLedger ackerLedger;
+	private transient ExpiryListener expiryListener;
 	private transient int taskId;
 	private transient Collector<E> collector;
 	private transient int c;
@@ -60,7 +63,10 @@ public class AckerBolt<E extends Tuple> implements Bolt<E> {
 		this.logger = Logger.getLogger(AckerBolt.class.getName());
 		this.tupleTimeout = Integer.parseInt(conf.getOrDefault(Topology.TICK_TUPLE_FREQUENCY, "90")) * 1000;
 		logger.info("Acker using tuple timeout:" + tupleTimeout/1000 + " seconds");
-		this.ackerMap = new RotatingMap<>(3);
+		this.ackerLedger = new AckerLedger(
+				Integer.parseInt(conf.getOrDefault(ACKER_LEDGER_CAPACITY, DEFAULT_ACKER_LEDGER_CAPACITY)),
+				ACKER_GENERATIONS);
+		this.expiryListener = (sourceId, spoutId, sourceTaskId) -> notifySource(spoutId, sourceTaskId, sourceId);
 	}
 
 	@Override
@@ -75,151 +81,95 @@ public class AckerBolt<E extends Tuple> implements Bolt<E> {
 
 	@Override
 	public void process(E event) {
-		boolean tickTuple = event.getComponentName().equals(Topology.TICK_TUPLE);
-		if (tickTuple) {
+		if (event.getComponentId() == Topology.TICK_TUPLE_ID) {
 			// tick event
 			expireEvents();
 		} else {
-			Object sourceId = event.getGroupByKey();
-			String source = event.getComponentName();
-			// logger.info("Sourceid:"+sourceId+"\t"+source);
-			updateAckerMap(source, event.getTaskId(), (Long) sourceId, (Long) event.getGroupByValue());
+			// acks carry the origin tuple id and the XOR update as their ids
+			updateAckerMap(event.getComponentId(), event.getTaskId(), event.getOriginTupleId(),
+					event.getTupleId());
 		}
 	}
 
 	/**
-	 * Expire events in the Map that have not yet received all the acks.
+	 * Expire events in the ledger that have not yet received all the acks.
 	 */
 	public void expireEvents() {
-		Map<Long, AckerEntry> evictionEntries = ackerMap.rotate();
-		for (Entry<Long, AckerEntry> entry : evictionEntries.entrySet()) {
-			if (entry.getValue().isComplete()) {
-				// exception; entry was asynchronously acked
-			} else {
-				// notify source
-				E event = collector.getFactory().buildTuple();
-				event.setOriginTupleId(entry.getKey());
-				event.setGroupByKey(entry.getKey());
-				event.setAck(true);
-				collector.emitDirect(entry.getValue().getSourceSpout(), entry.getValue().getSourceTaskId(), event);
-			}
-		}
+		ackerLedger.rotate(expiryListener);
+	}
+
+	/**
+	 * Notify source spout of a tuple tree. The notification is recycled once
+	 * routed, the boxed source id is what the {@link Spout} callbacks receive.
+	 * 
+	 * @param spoutId
+	 *            {@link ComponentRegistry} id of the spout
+	 * @param sourceTaskId
+	 * @param sourceId
+	 */
+	private void notifySource(int spoutId, int sourceTaskId, long sourceId) {
+		TuplePool<E> pool = collector.getTuplePool();
+		E event = pool.acquire();
+		event.setOriginTupleId(sourceId);
+		event.setGroupByKey(sourceId);
+		event.setAck(true);
+		collector.emitDirect(spoutId, sourceTaskId, event);
+		pool.release(event);
 	}
 
 	/**
-	 * Update Rotating map for this ack. This may lead to an updated XOR and if
+	 * Update the ledger for this ack. This may lead to an updated XOR and if
 	 * the XOR value is 0 then results in an Ack Event to the source Spout.
 	 * 
 	 * @param source
+	 *            {@link ComponentRegistry} id of the spout
 	 * @param sourceTaskId
 	 * @param sourceId
 	 * @param nextEvent
 	 */
-	public void updateAckerMap(String source, Object sourceTaskId, Long sourceId, Long nextEvent) {
-		AckerEntry trackerValue = ackerMap.get(sourceId);
-		if (trackerValue == null) {
-			if (!source.contains("Spout")) {
+	public void updateAckerMap(int source, int sourceTaskId, long sourceId, long nextEvent) {
+		int slot = ackerLedger.find(sourceId);
+		if (slot < 0) {
+			if (!ComponentRegistry.isSpout(source)) {
 				// reject message
-				logger.info("Incorrect event ordering:" + sourceId + "\t" + source + "\t" + "\t" + taskId);
+				logger.info("Incorrect event ordering:" + sourceId + "\t" + ComponentRegistry.getName(source) + "\t"
+						+ "\t" + taskId);
 				return;
 			}
 			// this is the first time we are seeing this event
-			trackerValue = new AckerEntry(source, (Integer) sourceTaskId, sourceId);
-			ackerMap.put(sourceId, trackerValue);
+			ackerLedger.insert(sourceId, sourceId, source, sourceTaskId);
 		} else {
 			// event tree xor logic
-			trackerValue.setValue(trackerValue.getValue() ^ nextEvent);
-			if (trackerValue.isComplete()) {
+			long value = ackerLedger.getXor(slot) ^ nextEvent;
+			if (value != 0) {
+				ackerLedger.setXor(slot, value);
+			} else {
 				// means event processing tree is complete
 				c++;
 				if (c % PRINT_COUNT == 0) {
 					logger.fine("Acked " + PRINT_COUNT + ":" + taskId + "\t" + sourceId);
 				}
-				logger.fine("Acking event:" + sourceId + "\t" + trackerValue.getSourceSpout());
+				int spoutId = ackerLedger.getSpoutId(slot);
+				int spoutTaskId = ackerLedger.getTaskId(slot);
 
-				// remove entry from ackerMap
-				ackerMap.remove(sourceId);
+				// remove entry from ledger
+				ackerLedger.remove(slot);
 
 				// notify source that event's completely processed
-				E event = collector.getFactory().buildTuple();
-				event.setOriginTupleId(sourceId);
-				event.setGroupByKey(sourceId);
-				event.setAck(true);
-				collector.emitDirect(trackerValue.getSourceSpout(), trackerValue.getSourceTaskId(), event);
+				notifySource(spoutId, spoutTaskId, sourceId);
 			}
 		}
 	}
 
-	/**
-	 * Rotating map is used to efficiently track different acker entries for a
-	 * timed eviction of expired events.
-	 * 
-	 * @author ambud
-	 *
-	 * @param <K>
-	 * @param <V>
-	 */
-	public static class RotatingMap<K, V> {
-
-		private LinkedList<Map<K, V>> buckets;
-
-		public RotatingMap(int bucketCount) {
-			buckets = new LinkedList<>();
-			for (int i = 0; i < bucketCount; i++) {
-				buckets.add(new HashMap<>(ACKER_MAP_SIZE / bucketCount, ACKER_MAP_LOAD_FACTOR));
-			}
-		}
-
-		public Map<K, V> rotate() {
-			Map<K, V> expiredMap = buckets.remove();
-			buckets.addLast(new HashMap<>());
-			return expiredMap;
-		}
-
-		public void put(K key, V value) {
-			buckets.getLast().put(key, value);
-		}
-
-		public V get(K key) {
-			for (Map<K, V> map : buckets) {
-				V value = map.get(key);
-				if (value != null) {
-					return value;
-				}
-			}
-			return null;
-		}
-
-		public V remove(K key) {
-			for (Map<K, V> map : buckets) {
-				V remove = map.remove(key);
-				if (remove != null) {
-					return remove;
-				}
-			}
-			return null;
-		}
-
-		@Override
-		public String toString() {
-			return buckets.toString();
-		}
-
-		public int size() {
-			return buckets.size();
-		}
-
-	}
-
 	@Override
 	public void ready() {
 	}
 
 	/**
-	 * @return ackerMap
+	 * @return ackerLedger
 	 */
-	protected RotatingMap<Long, AckerEntry> getAckerMap() {
-		return ackerMap;
+	protected AckerLedger getAckerLedger() {
+		return ackerLedger;
 	}
 
 	@Override
@@ -0,0 +1,297 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.tolerance;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Off-heap open addressing ledger of tuple trees tracked by the
+ * {@link AckerBolt}, keyed by the primitive origin tuple id. <br>
+ * <br>
+ * Each slot is a fixed 32 byte record in a direct {@link ByteBuffer} holding
+ * the key, the running XOR of the tree, the source spout, the source task id
+ * and the generation the tree was first seen in, so tracking a tuple tree
+ * allocates nothing on the heap. <br>
+ * <br>
+ * Expiry is bucketed by generation: {@link #rotate(ExpiryListener)} advances
+ * the generation and evicts trees that have lived through all generations,
+ * which is equivalent to the rotating map of buckets this replaces but with a
+ * single probe sequence per lookup. Removed slots are tombstoned and cleaned
+ * up when the table is rebuilt on rotation or when it fills up.
+ * 
+ * @author ambud
+ */
+public class AckerLedger {
+
+	private static final int SLOT_SIZE = 32;
+	private static final int KEY_OFFSET = 0;
+	private static final int XOR_OFFSET = 8;
+	private static final int SPOUT_OFFSET = 16;
+	private static final int TASK_OFFSET = 20;
+	private static final int GENERATION_OFFSET = 24;
+	private static final int STATE_OFFSET = 28;
+	private static final int EMPTY = 0;
+	private static final int LIVE = 1;
+	private static final int TOMBSTONE = 2;
+	private static final float LOAD_FACTOR = 0.7f;
+	private ByteBuffer table;
+	private ByteBuffer spare;
+	private int capacity;
+	private int mask;
+	private int size;
+	private int used;
+	private int generation;
+	private int generations;
+
+	/**
+	 * @param initialCapacity
+	 *            number of slots, rounded up to a power of 2
+	 * @param generations
+	 *            number of rotations a tuple tree survives before it's
+	 *            expired
+	 */
+	public AckerLedger(int initialCapacity, int generations) {
+		if (generations < 1) {
+			throw new IllegalArgumentException("Generations must be at least 1:" + generations);
+		}
+		this.generations = generations;
+		allocate(Math.max(16, Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1));
+	}
+
+	private void allocate(int newCapacity) {
+		capacity = newCapacity;
+		mask = newCapacity - 1;
+		table = ByteBuffer.allocateDirect(newCapacity * SLOT_SIZE).order(ByteOrder.nativeOrder());
+		spare = ByteBuffer.allocateDirect(newCapacity * SLOT_SIZE).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Find the slot tracking a tuple tree
+	 * 
+	 * @param key
+	 * @return slot or -1 if the tree isn't tracked
+	 */
+	public int find(long key) {
+		int slot = hash(key) & mask;
+		while (true) {
+			int offset = slot * SLOT_SIZE;
+			int state = table.getInt(offset + STATE_OFFSET);
+			if (state == EMPTY) {
+				return -1;
+			}
+			if (state == LIVE && table.getLong(offset + KEY_OFFSET) == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Start tracking a tuple tree, the key must not already be tracked.
+	 * 
+	 * @param key
+	 * @param xor
+	 * @param spoutId
+	 * @param taskId
+	 * @return slot of the new entry
+	 */
+	public int insert(long key, long xor, int spoutId, int taskId) {
+		if (used + 1 > capacity * LOAD_FACTOR) {
+			// grow only if live entries are filling the table, otherwise
+			// reclaiming tombstones is enough
+			rebuild(size + 1 > capacity * LOAD_FACTOR / 2 ? capacity << 1 : capacity, null);
+		}
+		int slot = hash(key) & mask;
+		while (true) {
+			int offset = slot * SLOT_SIZE;
+			int state = table.getInt(offset + STATE_OFFSET);
+			if (state != LIVE) {
+				if (state == EMPTY) {
+					used++;
+				}
+				write(table, offset, key, xor, spoutId, taskId, generation);
+				size++;
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * @param slot
+	 * @return XOR value of the tree
+	 */
+	public long getXor(int slot) {
+		return table.getLong(slot * SLOT_SIZE + XOR_OFFSET);
+	}
+
+	/**
+	 * @param slot
+	 * @param xor
+	 */
+	public void setXor(int slot, long xor) {
+		table.putLong(slot * SLOT_SIZE + XOR_OFFSET, xor);
+	}
+
+	/**
+	 * @param slot
+	 * @return id of the spout that emitted the tree
+	 */
+	public int getSpoutId(int slot) {
+		return table.getInt(slot * SLOT_SIZE + SPOUT_OFFSET);
+	}
+
+	/**
+	 * @param slot
+	 * @return task id of the spout that emitted the tree
+	 */
+	public int getTaskId(int slot) {
+		return table.getInt(slot * SLOT_SIZE + TASK_OFFSET);
+	}
+
+	/**
+	 * Stop tracking the tree in this slot
+	 * 
+	 * @param slot
+	 */
+	public void remove(int slot) {
+		table.putInt(slot * SLOT_SIZE + STATE_OFFSET, TOMBSTONE);
+		size--;
+	}
+
+	/**
+	 * Advance the generation and expire trees that have survived all
+	 * generations.
+	 * 
+	 * @param listener
+	 *            notified of each expired tree, may be null
+	 */
+	public void rotate(ExpiryListener listener) {
+		generation++;
+		rebuild(capacity, listener);
+	}
+
+	/**
+	 * Copy live, unexpired entries into a clean table of the requested
+	 * capacity, dropping tombstones
+	 * 
+	 * @param newCapacity
+	 * @param listener
+	 */
+	private void rebuild(int newCapacity, ExpiryListener listener) {
+		ByteBuffer old = table;
+		int oldCapacity = capacity;
+		if (newCapacity != capacity) {
+			allocate(newCapacity);
+		} else {
+			table = spare;
+			spare = old;
+			clear(table);
+		}
+		int expiredGeneration = generation - generations;
+		size = 0;
+		used = 0;
+		for (int i = 0; i < oldCapacity; i++) {
+			int offset = i * SLOT_SIZE;
+			if (old.getInt(offset + STATE_OFFSET) != LIVE) {
+				continue;
+			}
+			long key = old.getLong(offset + KEY_OFFSET);
+			long xor = old.getLong(offset + XOR_OFFSET);
+			int spoutId = old.getInt(offset + SPOUT_OFFSET);
+			int taskId = old.getInt(offset + TASK_OFFSET);
+			int entryGeneration = old.getInt(offset + GENERATION_OFFSET);
+			if (entryGeneration <= expiredGeneration) {
+				if (listener != null) {
+					listener.expired(key, spoutId, taskId);
+				}
+				continue;
+			}
+			int slot = hash(key) & mask;
+			while (table.getInt(slot * SLOT_SIZE + STATE_OFFSET) != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			write(table, slot * SLOT_SIZE, key, xor, spoutId, taskId, entryGeneration);
+			size++;
+			used++;
+		}
+	}
+
+	private static void write(ByteBuffer buffer, int offset, long key, long xor, int spoutId, int taskId,
+			int generation) {
+		buffer.putLong(offset + KEY_OFFSET, key);
+		buffer.putLong(offset + XOR_OFFSET, xor);
+		buffer.putInt(offset + SPOUT_OFFSET, spoutId);
+		buffer.putInt(offset + TASK_OFFSET, taskId);
+		buffer.putInt(offset + GENERATION_OFFSET, generation);
+		buffer.putInt(offset + STATE_OFFSET, LIVE);
+	}
+
+	private void clear(ByteBuffer buffer) {
+		for (int i = 0; i < capacity; i++) {
+			buffer.putInt(i * SLOT_SIZE + STATE_OFFSET, EMPTY);
+		}
+	}
+
+	private static int hash(long key) {
+		// murmur3 64-bit finalizer
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	/**
+	 * @return number of tuple trees being tracked
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of slots
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of rotations a tree survives
+	 */
+	public int getGenerations() {
+		return generations;
+	}
+
+	/**
+	 * Callback for tuple trees evicted on rotation
+	 * 
+	 * @author ambud
+	 */
+	public static interface ExpiryListener {
+
+		/**
+		 * @param key
+		 * @param spoutId
+		 * @param taskId
+		 */
+		public void expired(long key, int spoutId, int taskId);
+
+	}
+
+}
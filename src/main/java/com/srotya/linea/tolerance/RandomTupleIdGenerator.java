@@ -0,0 +1,34 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.tolerance;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.srotya.linea.TupleIdGenerator;
+
+/**
+ * Random 64 bit tuple ids, ids carry no information about their origin.
+ * 
+ * @author ambud
+ */
+public class RandomTupleIdGenerator implements TupleIdGenerator {
+
+	@Override
+	public long nextId() {
+		return ThreadLocalRandom.current().nextLong();
+	}
+
+}
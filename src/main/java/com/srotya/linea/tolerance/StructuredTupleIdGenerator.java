@@ -0,0 +1,228 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.tolerance;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.srotya.linea.TupleIdGenerator;
+
+/**
+ * Default {@link TupleIdGenerator}. An id is built from the worker id, a lane
+ * and a sequence number:
+ * 
+ * <pre>
+ * | worker (16 bits) | lane (16 bits) | sequence (32 bits) |
+ * </pre>
+ * 
+ * Every generating thread owns a lane of the worker so ids are unique
+ * without any coordination, a task's thread records itself as the owner of
+ * its lane for tracing. Once the worker has handed out all 2^16 lanes, a new
+ * thread takes over the lane of a thread that has terminated and continues
+ * its sequence, so short lived threads never wrap the lanes into ids that are
+ * still in flight. The sequence is a plain per lane counter, it wraps after
+ * 2^32 ids which at 1M tuples/s per task is over an hour, far beyond any
+ * tuple timeout.<br>
+ * <br>
+ * The worker id is the one the worker registered with, it's only known once
+ * the worker joined the cluster. Sequences start at a random epoch of the
+ * generator's incarnation, so a restarted worker doesn't reissue the ids of
+ * tuple trees its previous incarnation left in flight.<br>
+ * <br>
+ * Counters XOR to 0 all the time (e.g. 0^1^2^3) which would complete tuple
+ * trees in the acker early, so the structured value is scrambled with a
+ * bijective 64 bit mixer. Scrambled ids are as XOR safe and as evenly spread
+ * over tasks by SHUFFLE routing as random ids, and
+ * {@link #unscramble(long)} recovers the structure.
+ * 
+ * @author ambud
+ */
+public class StructuredTupleIdGenerator implements TupleIdGenerator {
+
+	public static final int SEQUENCE_BITS = 32;
+	public static final int LANE_BITS = 16;
+	private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+	private static final int LANE_MASK = (1 << LANE_BITS) - 1;
+	private static final long M1 = 0xbf58476d1ce4e5b9L;
+	private static final long M2 = 0x94d049bb133111ebL;
+	private static final long M1_INVERSE = inverse(M1);
+	private static final long M2_INVERSE = inverse(M2);
+	private final Lane[] lanes;
+	private final long epoch;
+	private int allocated;
+	private int reclaimCursor;
+	private Map<Integer, String> laneOwners;
+	private ThreadLocal<Lane> lane;
+	private volatile long workerBits;
+
+	public StructuredTupleIdGenerator() {
+		this(1 << LANE_BITS, ThreadLocalRandom.current().nextLong());
+	}
+
+	/**
+	 * @param laneCount
+	 *            number of lanes that can be owned at once, at most 2^16
+	 * @param epoch
+	 *            first sequence of every lane
+	 */
+	StructuredTupleIdGenerator(int laneCount, long epoch) {
+		if (laneCount < 1 || laneCount > 1 << LANE_BITS) {
+			throw new IllegalArgumentException("Lane count must be between 1 and " + (1 << LANE_BITS) + ":" + laneCount);
+		}
+		lanes = new Lane[laneCount];
+		this.epoch = epoch & SEQUENCE_MASK;
+		laneOwners = new ConcurrentHashMap<>();
+		lane = ThreadLocal.withInitial(this::acquireLane);
+	}
+
+	/**
+	 * Hand the calling thread a lane that has never been used or whose owner
+	 * has terminated. {@link Thread#isAlive()} returning false makes the
+	 * sequence written by the previous owner visible to the new one.
+	 * 
+	 * @return lane owned by the calling thread
+	 */
+	private synchronized Lane acquireLane() {
+		Thread thread = Thread.currentThread();
+		if (allocated < lanes.length) {
+			Lane free = new Lane(allocated, thread);
+			lanes[allocated++] = free;
+			return free;
+		}
+		for (int i = 0; i < lanes.length; i++) {
+			Lane reclaimed = lanes[reclaimCursor];
+			reclaimCursor = (reclaimCursor + 1) % lanes.length;
+			if (!reclaimed.owner.isAlive()) {
+				reclaimed.owner = thread;
+				laneOwners.remove(reclaimed.id);
+				return reclaimed;
+			}
+		}
+		throw new IllegalStateException("All " + lanes.length + " tuple id lanes are owned by live threads");
+	}
+
+	@Override
+	public void setWorkerId(int workerId) {
+		workerBits = (long) (workerId & 0xFFFF) << (LANE_BITS + SEQUENCE_BITS);
+	}
+
+	@Override
+	public void bind(int componentId, int taskId) {
+		laneOwners.put(lane.get().id, componentId + ":" + taskId);
+	}
+
+	@Override
+	public long nextId() {
+		Lane current = lane.get();
+		return scramble(workerBits | current.bits | (current.sequence++ & SEQUENCE_MASK));
+	}
+
+	/**
+	 * Describe where an id generated by this worker came from
+	 * 
+	 * @param id
+	 * @return worker, lane, owning component:task if known and sequence
+	 */
+	public String describe(long id) {
+		long value = unscramble(id);
+		int laneId = getLane(value);
+		return "worker:" + getWorkerId(value) + " lane:" + laneId + " task:" + laneOwners.get(laneId)
+				+ " sequence:" + getSequence(value);
+	}
+
+	/**
+	 * splitmix64 finalizer, a bijection on 64 bit values
+	 * 
+	 * @param value
+	 * @return scrambled value
+	 */
+	public static long scramble(long value) {
+		value = (value ^ (value >>> 30)) * M1;
+		value = (value ^ (value >>> 27)) * M2;
+		return value ^ (value >>> 31);
+	}
+
+	/**
+	 * Inverse of {@link #scramble(long)}
+	 * 
+	 * @param id
+	 * @return structured value
+	 */
+	public static long unscramble(long id) {
+		id ^= (id >>> 31) ^ (id >>> 62);
+		id *= M2_INVERSE;
+		id ^= (id >>> 27) ^ (id >>> 54);
+		id *= M1_INVERSE;
+		return id ^ (id >>> 30) ^ (id >>> 60);
+	}
+
+	/**
+	 * @param value
+	 *            unscrambled id
+	 * @return worker id
+	 */
+	public static int getWorkerId(long value) {
+		return (int) (value >>> (LANE_BITS + SEQUENCE_BITS));
+	}
+
+	/**
+	 * @param value
+	 *            unscrambled id
+	 * @return lane
+	 */
+	public static int getLane(long value) {
+		return (int) (value >>> SEQUENCE_BITS) & LANE_MASK;
+	}
+
+	/**
+	 * @param value
+	 *            unscrambled id
+	 * @return sequence
+	 */
+	public static long getSequence(long value) {
+		return value & SEQUENCE_MASK;
+	}
+
+	/**
+	 * Multiplicative inverse of an odd number modulo 2^64 by Newton's
+	 * iteration, each step doubles the correct low bits
+	 */
+	private static long inverse(long odd) {
+		long inverse = odd;
+		for (int i = 0; i < 5; i++) {
+			inverse *= 2 - odd * inverse;
+		}
+		return inverse;
+	}
+
+	private final class Lane {
+
+		private final int id;
+		private final long bits;
+		private long sequence;
+		private Thread owner;
+
+		private Lane(int id, Thread owner) {
+			this.id = id;
+			this.owner = owner;
+			this.bits = (long) id << SEQUENCE_BITS;
+			this.sequence = epoch;
+		}
+
+	}
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.utils;
+
+import java.util.Map;
+
+import com.lmax.disruptor.WaitStrategy;
+import com.srotya.linea.Topology;
+import com.srotya.linea.disruptor.WAIT_STRATEGY;
+
+/**
+ * Utilities to read Disruptor ring buffer settings from topology
+ * configuration. Settings are looked up with a prefix (e.g. the bolt name)
+ * first and then fall back to the topology wide value.
+ * 
+ * @author ambud
+ */
+public class DisruptorUtils {
+
+	private DisruptorUtils() {
+	}
+
+	/**
+	 * Ring size for the supplied prefix, must be a power of 2
+	 * 
+	 * @param conf
+	 * @param prefix
+	 * @return ring size
+	 */
+	public static int getRingSize(Map<String, String> conf, String prefix) {
+		int ringSize = Integer.parseInt(getValue(conf, prefix, Topology.RING_SIZE, Topology.DEFAULT_RING_SIZE));
+		if (ringSize < 1 || Integer.bitCount(ringSize) != 1) {
+			throw new IllegalArgumentException("Ring size must be a power of 2:" + prefix + Topology.RING_SIZE
+					+ "=" + ringSize);
+		}
+		return ringSize;
+	}
+
+	/**
+	 * Build the {@link WaitStrategy} configured for the supplied prefix
+	 * 
+	 * @param conf
+	 * @param prefix
+	 * @return wait strategy
+	 */
+	public static WaitStrategy getWaitStrategy(Map<String, String> conf, String prefix) {
+		String strategy = getValue(conf, prefix, Topology.WAIT_STRATEGY, Topology.DEFAULT_WAIT_STRATEGY);
+		return WAIT_STRATEGY.valueOf(strategy.trim().toUpperCase()).build();
+	}
+
+	private static String getValue(Map<String, String> conf, String prefix, String key, String defaultValue) {
+		String value = conf.get(prefix + key);
+		if (value == null) {
+			value = conf.getOrDefault(key, defaultValue);
+		}
+		return value;
+	}
+
+}
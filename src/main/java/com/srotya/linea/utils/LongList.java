@@ -0,0 +1,170 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Growable list of primitive longs. The {@link java.util.List} view boxes
+ * and is kept for compatibility, the hot path uses {@link #getLong(int)} and
+ * {@link #addLong(long)} which never allocate once the backing array has
+ * grown to its working size. Clearing keeps the backing array so a recycled
+ * list doesn't need to grow again.
+ * 
+ * @author ambud
+ */
+public class LongList extends AbstractList<Long> implements RandomAccess {
+
+	private static final long[] EMPTY = new long[0];
+	private static final int INITIAL_CAPACITY = 4;
+	private long[] values;
+	private int size;
+
+	public LongList() {
+		values = EMPTY;
+	}
+
+	/**
+	 * @param index
+	 * @return value at index
+	 */
+	public long getLong(int index) {
+		checkIndex(index);
+		return values[index];
+	}
+
+	/**
+	 * @param value
+	 */
+	public void addLong(long value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, Math.max(INITIAL_CAPACITY, size * 2));
+		}
+		values[size++] = value;
+	}
+
+	/**
+	 * @param index
+	 * @param value
+	 * @return previous value at index
+	 */
+	public long setLong(int index, long value) {
+		checkIndex(index);
+		long previous = values[index];
+		values[index] = value;
+		return previous;
+	}
+
+	/**
+	 * Replace the contents of this list with the contents of the supplied
+	 * list
+	 * 
+	 * @param other
+	 */
+	public void copyFrom(LongList other) {
+		if (values.length < other.size) {
+			values = Arrays.copyOf(values, Math.max(INITIAL_CAPACITY, other.size));
+		}
+		System.arraycopy(other.values, 0, values, 0, other.size);
+		size = other.size;
+	}
+
+	/**
+	 * Exchange the contents of this list with the contents of the supplied
+	 * list without copying
+	 * 
+	 * @param other
+	 */
+	public void swap(LongList other) {
+		long[] values = this.values;
+		int size = this.size;
+		this.values = other.values;
+		this.size = other.size;
+		other.values = values;
+		other.size = size;
+		modCount++;
+		other.modCount++;
+	}
+
+	/**
+	 * @param value
+	 * @return true if the list contains the value
+	 */
+	public boolean containsLong(long value) {
+		for (int i = 0; i < size; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Long get(int index) {
+		return getLong(index);
+	}
+
+	@Override
+	public Long set(int index, Long element) {
+		return setLong(index, element);
+	}
+
+	@Override
+	public boolean add(Long value) {
+		addLong(value);
+		return true;
+	}
+
+	@Override
+	public void add(int index, Long element) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index:" + index + " size:" + size);
+		}
+		addLong(element);
+		System.arraycopy(values, index, values, index + 1, size - index - 1);
+		values[index] = element;
+		modCount++;
+	}
+
+	@Override
+	public Long remove(int index) {
+		long previous = getLong(index);
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		size--;
+		modCount++;
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index:" + index + " size:" + size);
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares hashing GROUPBY keys through their String form, as the router
+ * used to, with the typed {@link MurmurHash} methods used by
+ * {@link KeyHasher}. Run with <code>-prof gc</code> to see the allocation
+ * per hash.<br>
+ * <br>
+ * Run with <code>main</code> from the test classpath, it's not part of the
+ * unit test suite.
+ * 
+ * @author ambud
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GroupByHashBenchmark {
+
+	private Long longKey;
+	private String stringKey;
+	private byte[] bytesKey;
+	private ByteBuffer bufferKey;
+	private String host;
+	private long timestamp;
+
+	@Setup
+	public void setup() {
+		longKey = 1234567890123L;
+		stringKey = "host-0042.dc1.example.com";
+		bytesKey = stringKey.getBytes(StandardCharsets.UTF_8);
+		bufferKey = ByteBuffer.allocateDirect(bytesKey.length);
+		bufferKey.put(bytesKey).flip();
+		host = stringKey;
+		timestamp = 1483228800000L;
+	}
+
+	@Benchmark
+	public int longAsString() {
+		return MurmurHash.hash32(longKey.toString());
+	}
+
+	@Benchmark
+	public int longTyped() {
+		return KeyHasher.hashKey(longKey);
+	}
+
+	@Benchmark
+	public int stringEncoded() {
+		return MurmurHash.hash32(stringKey);
+	}
+
+	@Benchmark
+	public int stringChars() {
+		return KeyHasher.hashKey(stringKey);
+	}
+
+	@Benchmark
+	public int bytesAsString() {
+		return MurmurHash.hash32(new String(bytesKey, StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public int bytesTyped() {
+		return KeyHasher.hashKey(bytesKey);
+	}
+
+	@Benchmark
+	public int directBufferTyped() {
+		return KeyHasher.hashKey(bufferKey);
+	}
+
+	/**
+	 * Composite key built as a String before hashing
+	 */
+	@Benchmark
+	public int compositeMaterialized() {
+		return MurmurHash.hash32(host + ":" + timestamp);
+	}
+
+	/**
+	 * Composite key combined by a {@link KeyHasher} from its fields
+	 */
+	@Benchmark
+	public int compositeCombined() {
+		return 31 * MurmurHash.hash32Chars(host) + MurmurHash.hash32(timestamp);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(GroupByHashBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
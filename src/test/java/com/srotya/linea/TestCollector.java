@@ -16,13 +16,23 @@
 package com.srotya.linea;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -46,6 +56,14 @@ public class TestCollector {
 	@Mock
 	private Router<TestTuple> router;
 
+	@Before
+	public void before() {
+		ComponentRegistry.register(
+				Arrays.asList("testSpout", "SpouttestSpout", "testBolt", "testBolt2", "nextBolt",
+						AckerBolt.ACKER_BOLT_NAME),
+				new HashSet<>(Arrays.asList("testSpout", "SpouttestSpout")));
+	}
+
 	@Test
 	public void testConstructor() {
 		TestTupleFactory factory = new TestTupleFactory();
@@ -66,7 +84,7 @@ public class TestCollector {
 
 			@Override
 			public Void answer(InvocationOnMock invocation) throws Throwable {
-				ackEvent.set(invocation.getArgumentAt(0, TestTuple.class));
+				ackEvent.set(snapshot(invocation.getArgumentAt(0, TestTuple.class)));
 				return null;
 			}
 		}).when(router).routeTuple(any(TestTuple.class));
@@ -79,8 +97,37 @@ public class TestCollector {
 		TestTuple ackTuple = ackEvent.get();
 		assertEquals(AckerBolt.ACKER_BOLT_NAME, ackTuple.getNextBoltId());
 		assertEquals(0, ackTuple.getDestinationTaskId());
-		assertEquals(11023231L, ackTuple.getGroupByKey());
-		assertEquals(tuple.getTupleId(), ackTuple.getGroupByValue());
+		assertTrue(ackTuple.isAck());
+		assertEquals(11023231L, ackTuple.getOriginTupleId());
+		assertEquals(tuple.getTupleId(), ackTuple.getTupleId());
+		assertNull(ackTuple.getGroupByKey());
+	}
+
+	@Test
+	public void testAckTupleRecycled() {
+		TestTupleFactory factory = new TestTupleFactory();
+		@SuppressWarnings("unchecked")
+		Router<TestTuple> router = mock(Router.class);
+		final List<TestTuple> routed = new ArrayList<>();
+		Mockito.doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				routed.add(invocation.getArgumentAt(0, TestTuple.class));
+				return null;
+			}
+		}).when(router).routeTuple(any(TestTuple.class));
+		Collector<TestTuple> collector = new Collector<>(factory, router, "testBolt", 1, 2);
+		TestTuple tuple = factory.buildTuple();
+		tuple.getSourceIds().add(11023231L);
+		collector.ack(tuple);
+		collector.ack(tuple);
+		assertEquals(2, routed.size());
+		// the same instance is reused once routed and is reset in the pool
+		assertSame(routed.get(0), routed.get(1));
+		assertEquals(1, collector.getTuplePool().size());
+		assertNull(routed.get(0).getNextBoltId());
+		assertFalse(routed.get(0).isAck());
 	}
 
 	@Test
@@ -105,6 +152,121 @@ public class TestCollector {
 		assertEquals(tuple, nextTuple);
 	}
 
+	@Test
+	public void testAckCoalescing() {
+		TestTupleFactory factory = new TestTupleFactory();
+		@SuppressWarnings("unchecked")
+		Router<TestTuple> router = mock(Router.class);
+		final List<TestTuple> acks = new ArrayList<>();
+		Mockito.doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				TestTuple tuple = invocation.getArgumentAt(0, TestTuple.class);
+				if (AckerBolt.ACKER_BOLT_NAME.equals(tuple.getNextBoltId())) {
+					acks.add(snapshot(tuple));
+				}
+				return null;
+			}
+		}).when(router).routeTuple(any(TestTuple.class));
+		Collector<TestTuple> collector = new Collector<>(factory, router, "testBolt", 1, 2);
+		TestTuple input = factory.buildTuple();
+		input.setOriginTupleId(11023231L);
+		input.getSourceIds().add(11023231L);
+		input.setComponentName("SpouttestSpout");
+
+		collector.startCoalescing();
+		TestTuple child1 = factory.buildTuple();
+		TestTuple child2 = factory.buildTuple();
+		collector.emit("nextBolt", child1, input);
+		collector.emit("nextBolt", child2, input);
+		collector.ack(input);
+		// children are routed right away, acks wait for the flush
+		verify(router, times(2)).routeTuple(any(TestTuple.class));
+		assertEquals(0, acks.size());
+		collector.flushAcks();
+		assertEquals(1, acks.size());
+		assertEquals(11023231L, acks.get(0).getOriginTupleId());
+		assertEquals(child1.getTupleId() ^ child2.getTupleId() ^ input.getTupleId(),
+				acks.get(0).getTupleId());
+
+		// outside of coalescing acks are sent immediately
+		collector.ack(child1);
+		assertEquals(2, acks.size());
+		collector.flushAcks();
+		assertEquals(2, acks.size());
+	}
+
+	@Test
+	public void testUnreliableSpoutEmit() {
+		TestTupleFactory factory = new TestTupleFactory();
+		@SuppressWarnings("unchecked")
+		Router<TestTuple> router = mock(Router.class);
+		Collector<TestTuple> spoutCollector = new Collector<>(factory, router, "SpouttestSpout", 1, 2);
+		spoutCollector.setReliable(false);
+		spoutCollector.setMaxPending(1);
+		TestTuple tuple = factory.buildTuple();
+		spoutCollector.spoutEmit("testBolt", tuple);
+		assertTrue(spoutCollector.trySpoutEmit("testBolt", factory.buildTuple()));
+		// no acks, pending slots aren't used
+		verify(router, times(2)).routeTuple(any(TestTuple.class));
+		assertEquals(0, spoutCollector.getPending());
+		assertTrue(tuple.getSourceIds().isEmpty());
+
+		// downstream emits and acks of the untracked tuple skip the acker
+		Collector<TestTuple> collector = new Collector<>(factory, router, "testBolt", 1, 2);
+		TestTuple child = factory.buildTuple();
+		collector.emit("nextBolt", child, tuple);
+		collector.ack(tuple);
+		verify(router, times(3)).routeTuple(any(TestTuple.class));
+		assertTrue(child.getSourceIds().isEmpty());
+	}
+
+	@Test
+	public void testRelayUnreliableTuple() {
+		TestTupleFactory factory = new TestTupleFactory();
+		@SuppressWarnings("unchecked")
+		Router<TestTuple> router = mock(Router.class);
+		Collector<TestTuple> spoutCollector = new Collector<>(factory, router, "SpouttestSpout", 1, 2);
+		spoutCollector.setReliable(false);
+		TestTuple tuple = factory.buildTuple();
+		spoutCollector.spoutEmit("testBolt", tuple);
+
+		// a bolt re-emitting it's input doesn't start a tree for it
+		Collector<TestTuple> collector = new Collector<>(factory, router, "testBolt", 1, 2);
+		collector.emit("nextBolt", tuple, tuple);
+		collector.ack(tuple);
+		verify(router, times(2)).routeTuple(any(TestTuple.class));
+		assertTrue(tuple.getSourceIds().isEmpty());
+	}
+
+	@Test
+	public void testSpoutMaxPending() {
+		TestTupleFactory factory = new TestTupleFactory();
+		@SuppressWarnings("unchecked")
+		Router<TestTuple> router = mock(Router.class);
+		Collector<TestTuple> collector = new Collector<>(factory, router, "testSpout", 1, 2);
+		collector.setMaxPending(2);
+		assertTrue(collector.trySpoutEmit("testBolt", factory.buildTuple()));
+		collector.spoutEmit("testBolt", factory.buildTuple());
+		assertEquals(2, collector.getPending());
+		// limit reached, tuple is not emitted
+		assertFalse(collector.trySpoutEmit("testBolt", factory.buildTuple()));
+		verify(router, times(4)).routeTuple(any(TestTuple.class));
+		collector.releasePending();
+		assertEquals(1, collector.getPending());
+		assertTrue(collector.trySpoutEmit("testBolt", factory.buildTuple()));
+		collector.releasePending();
+		collector.releasePending();
+		collector.releasePending();
+		assertEquals(0, collector.getPending());
+
+		// backpressure holds emission as well
+		when(router.isThrottled()).thenReturn(true);
+		assertFalse(collector.trySpoutEmit("testBolt", factory.buildTuple()));
+		assertEquals(0, collector.getPending());
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void testEmitDirect() {
@@ -147,4 +309,21 @@ public class TestCollector {
 		verify(router, times(2)).routeTuple(any(TestTuple.class));
 		assertEquals(tuple, outputTuple.get());
 	}
+
+	/**
+	 * Ack tuples are recycled once routed, copy the header like a ring buffer
+	 * publish would
+	 */
+	private static TestTuple snapshot(TestTuple tuple) {
+		TestTuple copy = new TestTupleFactory().buildTuple();
+		copy.setEventId(tuple.getTupleId());
+		copy.setOriginTupleId(tuple.getOriginTupleId());
+		copy.setGroupByKey(tuple.getGroupByKey());
+		copy.setNextBoltId(tuple.getNextBoltId());
+		copy.setDestinationTaskId(tuple.getDestinationTaskId());
+		copy.setComponentName(tuple.getComponentName());
+		copy.setTaskId(tuple.getTaskId());
+		copy.setAck(tuple.isAck());
+		return copy;
+	}
 }
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.srotya.linea.network.BackpressureMonitor;
+import com.srotya.linea.network.CreditManager;
+
+/**
+ * Unit tests for {@link ComponentRegistry}
+ * 
+ * @author ambud
+ */
+public class TestComponentRegistry {
+
+	@Before
+	public void before() {
+		ComponentRegistry.register(Arrays.asList("registryTestSpout", "registryTestBolt"),
+				Collections.singleton("registryTestSpout"));
+	}
+
+	@Test
+	public void testRegister() {
+		assertEquals(2, ComponentRegistry.size());
+		assertEquals(0, ComponentRegistry.getId("registryTestSpout"));
+		assertEquals(1, ComponentRegistry.getId(new String("registryTestBolt")));
+		assertEquals("registryTestBolt", ComponentRegistry.getName(1));
+		assertTrue(ComponentRegistry.isSpout(0));
+		assertFalse(ComponentRegistry.isSpout(1));
+
+		// unknown names aren't assigned ids on use
+		assertEquals(ComponentRegistry.NONE, ComponentRegistry.getId("SpoutunknownBolt"));
+		assertEquals(2, ComponentRegistry.size());
+		assertNull(ComponentRegistry.getName(2));
+		assertFalse(ComponentRegistry.isSpout(2));
+
+		assertEquals(ComponentRegistry.NONE, ComponentRegistry.getId(null));
+		assertNull(ComponentRegistry.getName(ComponentRegistry.NONE));
+		assertFalse(ComponentRegistry.isSpout(ComponentRegistry.NONE));
+
+		// a topology's ids replace the previous ones
+		ComponentRegistry.register(Arrays.asList("registryTestBolt"), Collections.emptySet());
+		assertEquals(0, ComponentRegistry.getId("registryTestBolt"));
+		assertEquals(ComponentRegistry.NONE, ComponentRegistry.getId("registryTestSpout"));
+	}
+
+	@Test
+	public void testSystemStreams() {
+		int tick = ComponentRegistry.getId(Topology.TICK_TUPLE);
+		int backpressure = ComponentRegistry.getId(BackpressureMonitor.BACKPRESSURE_TUPLE);
+		int credit = ComponentRegistry.getId(CreditManager.CREDIT_TUPLE);
+		assertEquals(Topology.TICK_TUPLE_ID, tick);
+		assertEquals(BackpressureMonitor.BACKPRESSURE_TUPLE_ID, backpressure);
+		assertEquals(CreditManager.CREDIT_TUPLE_ID, credit);
+		for (int id : new int[] { tick, backpressure, credit }) {
+			assertTrue(id < ComponentRegistry.NONE);
+			assertFalse(ComponentRegistry.isSpout(id));
+		}
+		assertEquals(CreditManager.CREDIT_TUPLE, ComponentRegistry.getName(credit));
+		// system stream ids don't depend on the registered components
+		ComponentRegistry.register(Arrays.asList("registryTestBolt"), Collections.emptySet());
+		assertEquals(tick, ComponentRegistry.getId(Topology.TICK_TUPLE));
+		assertNull(ComponentRegistry.getName(CreditManager.CREDIT_TUPLE_ID - 1));
+	}
+
+	@Test
+	public void testTupleNames() {
+		TestTuple tuple = new TestTuple();
+		assertNull(tuple.getComponentName());
+		assertNull(tuple.getNextBoltId());
+		tuple.setComponentName("registryTestBolt");
+		tuple.setNextBoltId(Topology.TICK_TUPLE);
+		assertEquals(1, tuple.getComponentId());
+		assertEquals(Topology.TICK_TUPLE_ID, tuple.getNextComponentId());
+		assertEquals(Topology.TICK_TUPLE, tuple.getNextBoltId());
+	}
+
+}
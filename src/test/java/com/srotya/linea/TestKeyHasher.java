@@ -0,0 +1,56 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link KeyHasher}
+ * 
+ * @author ambud
+ */
+public class TestKeyHasher {
+
+	@Test
+	public void testHashKey() {
+		assertEquals(MurmurHash.hash32(42L), KeyHasher.hashKey(42L));
+		// integral keys route the same whatever their boxed type
+		assertEquals(KeyHasher.hashKey(42L), KeyHasher.hashKey(42));
+		assertEquals(KeyHasher.hashKey(42L), KeyHasher.hashKey((short) 42));
+		assertEquals(MurmurHash.hash32Chars("key"), KeyHasher.hashKey("key"));
+		assertEquals(KeyHasher.hashKey("key"), KeyHasher.hashKey(new StringBuilder("key")));
+		byte[] bytes = "key".getBytes(StandardCharsets.UTF_8);
+		assertEquals(MurmurHash.hash32(bytes, bytes.length), KeyHasher.hashKey(bytes));
+		assertEquals(KeyHasher.hashKey(bytes), KeyHasher.hashKey(ByteBuffer.wrap(bytes)));
+		assertEquals(KeyHasher.hashKey("4.5"), KeyHasher.hashKey(4.5));
+	}
+
+	@Test
+	public void testCustomHasher() {
+		KeyHasher<Tuple> hasher = tuple -> 31 * MurmurHash.hash32(tuple.getTaskId())
+				+ KeyHasher.hashKey(tuple.getGroupByKey());
+		Tuple tuple = new TestTuple();
+		tuple.setTaskId(3);
+		tuple.setGroupByKey("user");
+		assertEquals(31 * MurmurHash.hash32(3) + MurmurHash.hash32Chars("user"), hasher.hash(tuple));
+	}
+
+}
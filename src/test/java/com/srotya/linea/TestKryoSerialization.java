@@ -15,15 +15,26 @@
  */
 package com.srotya.linea;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.junit.Before;
 import org.junit.Test;
 
+import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.srotya.linea.example.simple.Event;
 import com.srotya.linea.network.KryoCodec;
+import com.srotya.linea.network.KryoRegistrar;
 
 /**
  * @author ambud
@@ -32,6 +43,12 @@ public class TestKryoSerialization {
 	
 	private static final Class<Event> CLS = Event.class;
 
+	@Before
+	public void before() {
+		ComponentRegistry.register(Arrays.asList("testSpout", "transformBolt", "printerBolt"),
+				Collections.singleton("testSpout"));
+	}
+
 	@Test
 	public void testSerializationSize() throws Exception {
 		Event event = new Event();
@@ -60,4 +77,93 @@ public class TestKryoSerialization {
 		assertEquals(e1, e2);
 	}
 
+	@Test
+	public void testLazyPayload() throws Exception {
+		Event e1 = new Event();
+		e1.getHeaders().put("host", "xyz.srotya.com");
+		e1.getHeaders().put("value", 10);
+		e1.setNextBoltId("printerBolt");
+		e1.setGroupByKey("xyz.srotya.com");
+		e1.setDestinationTaskId(3);
+		e1.setSourceWorkerId(1);
+		e1.setSenderWorkerId(2);
+		e1.getSourceIds().add(12L);
+		byte[] ary = KryoCodec.eventToByteArray(e1);
+
+		Event e2 = KryoCodec.streamToEvent(CLS, new Input(new ByteArrayInputStream(ary)));
+		assertEquals(e1, e2);
+		assertEquals("printerBolt", e2.getNextBoltId());
+		assertEquals("xyz.srotya.com", e2.getGroupByKey());
+		assertEquals(3, e2.getDestinationTaskId());
+		assertEquals(1, e2.getSourceWorkerId());
+		assertEquals(2, e2.getSenderWorkerId());
+		assertEquals(Arrays.asList(12L), e2.getSourceIds());
+		assertNotNull(e2.getPayload());
+
+		// untouched payload is passed through as is
+		assertArrayEquals(ary, KryoCodec.eventToByteArray(e2));
+		assertNotNull(e2.getPayload());
+
+		assertEquals(e1.getHeaders(), e2.getHeaders());
+		assertNull(e2.getPayload());
+		assertArrayEquals(ary, KryoCodec.eventToByteArray(e2));
+	}
+
+	@Test
+	public void testEagerPayload() throws Exception {
+		TestTuple t1 = new TestTuple();
+		t1.setField("test");
+		t1.setGroupByValue(10L);
+		byte[] ary = KryoCodec.eventToByteArray(t1);
+
+		TestTuple t2 = KryoCodec.streamToEvent(TestTuple.class, new Input(new ByteArrayInputStream(ary)));
+		assertNull(t2.getPayload());
+		assertEquals("test", t2.getField());
+		assertEquals(10L, t2.getGroupByValue());
+	}
+
+	@Test
+	public void testConfiguredCodec() throws Exception {
+		Event e1 = new Event();
+		e1.getHeaders().put("host", "xyz.srotya.com");
+		e1.setNextBoltId("printerBolt");
+		e1.setComponentName("transformBolt");
+		e1.setGroupByKey("xyz.srotya.com");
+		int unconfiguredSize = KryoCodec.eventToByteArray(e1).length;
+
+		Map<String, String> conf = new HashMap<>();
+		conf.put(KryoCodec.KRYO_REGISTRATION_REQUIRED, "true");
+		conf.put(KryoCodec.KRYO_REGISTRARS, TestRegistrar.class.getName());
+		try {
+			KryoCodec.configure(conf, CLS);
+			byte[] ary = KryoCodec.eventToByteArray(e1);
+			// component ids are written as they are, the codec holds no names
+			assertEquals(unconfiguredSize, ary.length);
+			Event e2 = KryoCodec.streamToEvent(CLS, new Input(new ByteArrayInputStream(ary)));
+			assertEquals("printerBolt", e2.getNextBoltId());
+			assertEquals("transformBolt", e2.getComponentName());
+			assertEquals(e1.getHeaders(), e2.getHeaders());
+			assertTrue(TestRegistrar.registered);
+
+			// system streams have fixed ids
+			e1.setNextBoltId("_tick");
+			ary = KryoCodec.eventToByteArray(e1);
+			e2 = KryoCodec.streamToEvent(CLS, new Input(new ByteArrayInputStream(ary)));
+			assertEquals("_tick", e2.getNextBoltId());
+		} finally {
+			KryoCodec.configure(new HashMap<>(), null);
+		}
+	}
+
+	public static class TestRegistrar implements KryoRegistrar {
+
+		private static volatile boolean registered;
+
+		@Override
+		public void register(Kryo kryo) {
+			registered = true;
+		}
+
+	}
+
 }
@@ -1,8 +1,13 @@
 package com.srotya.linea;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
 import org.junit.Test;
 
 /** 
@@ -199,4 +204,56 @@ public class TestMurmurHash {
 		assertTrue( hash == 0xa8b33145194985a2l);
 	}
 
+	
+	@Test
+	public void testHash32ByteArraySlice() {
+		for (int i=0; i<input.length; i++) {
+			byte[] padded = new byte[input[i].length+5];
+			System.arraycopy( input[i], 0, padded, 3, input[i].length);
+			assertEquals( results32_seed[i], MurmurHash.hash32( padded, 3, input[i].length, 0x71b4954d));
+		}
+	}
+
+	
+	@Test
+	public void testHash32ByteBuffer() {
+		for (int i=0; i<input.length; i++) {
+			ByteBuffer heap = ByteBuffer.wrap( input[i]);
+			assertEquals( results32_standard[i], MurmurHash.hash32( heap));
+			ByteBuffer direct = ByteBuffer.allocateDirect( input[i].length+2).order( ByteOrder.LITTLE_ENDIAN);
+			direct.position( 2);
+			direct.put( input[i]);
+			direct.position( 2);
+			assertEquals( results32_standard[i], MurmurHash.hash32( direct));
+			assertEquals( 2, direct.position());
+			assertEquals( results32_seed[i], MurmurHash.hash32( direct, 2, input[i].length, 0x71b4954d));
+		}
+	}
+
+	
+	@Test
+	public void testHash32Chars() {
+		byte[] bytes = text.getBytes( StandardCharsets.UTF_16LE);
+		assertEquals( MurmurHash.hash32( bytes, bytes.length), MurmurHash.hash32Chars( text));
+		assertEquals( MurmurHash.hash32Chars( text), MurmurHash.hash32Chars( new StringBuilder( text)));
+		String odd = text.substring( 1);
+		bytes = odd.getBytes( StandardCharsets.UTF_16LE);
+		assertEquals( MurmurHash.hash32( bytes, bytes.length), MurmurHash.hash32Chars( odd));
+		bytes = text.substring( 2, text.length()-3).getBytes( StandardCharsets.UTF_16LE);
+		assertEquals( MurmurHash.hash32( bytes, bytes.length, 0x71b4954d),
+				MurmurHash.hash32Chars( text, 2, text.length()-5, 0x71b4954d));
+	}
+
+	
+	@Test
+	public void testHash32Primitives() {
+		long[] values = { 0L, 1L, -1L, Long.MIN_VALUE, 0x0123456789abcdefL };
+		for (long value : values) {
+			byte[] bytes = ByteBuffer.allocate( 8).order( ByteOrder.LITTLE_ENDIAN).putLong( value).array();
+			assertEquals( MurmurHash.hash32( bytes, bytes.length), MurmurHash.hash32( value));
+			bytes = ByteBuffer.allocate( 4).order( ByteOrder.LITTLE_ENDIAN).putInt( (int) value).array();
+			assertEquals( MurmurHash.hash32( bytes, bytes.length), MurmurHash.hash32( (int) value));
+		}
+	}
+
 }
\ No newline at end of file
@@ -15,6 +15,8 @@
  */
 package com.srotya.linea;
 
+import static org.junit.Assert.fail;
+
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -28,6 +30,7 @@ import com.srotya.linea.example.simple.EventFactory;
 import com.srotya.linea.example.simple.EventTranslator;
 import com.srotya.linea.example.simple.PrinterBolt;
 import com.srotya.linea.example.simple.TestSpout;
+import com.srotya.linea.example.simple.TransformBolt;
 
 /**
  * Simple test topology to validate how Linea will launch and run pipelines and
@@ -58,6 +61,58 @@ public class TestSimpleTopology {
 		topology.stop();
 	}
 
+	@Test
+	public void testChainBolt() throws Exception {
+		Map<String, String> conf = new HashMap<>();
+		conf.put(Columbus.KEEPER_CLASS_FQCN, SingletonNodeClusterKeeper.class.getName());
+		conf.put(Topology.WORKER_ID, "0");
+		conf.put(Topology.WORKER_COUNT, "1");
+		Topology<Event> topology = new Topology<Event>(conf, new EventFactory(), new EventTranslator(), Event.class);
+		topology.addSpout(new TestSpout(1), 1).addBolt(new TransformBolt(), 2);
+		try {
+			topology.chainBolt(new ChainedBolt(), "SpouttestSpout");
+			fail("Bolts can't be chained to spouts");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			topology.chainBolt(new ChainedBolt(), "missingBolt");
+			fail("Upstream bolt must exist");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			topology.chainBolt(new PrinterBolt(), "transformBolt");
+			fail("Only shuffled bolts can be chained");
+		} catch (IllegalArgumentException e) {
+		}
+		topology.chainBolt(new ChainedBolt(), "transformBolt");
+		try {
+			topology.chainBolt(new ChainedBolt(), "transformBolt");
+			fail("Bolt is already added");
+		} catch (IllegalArgumentException e) {
+		}
+		topology.validateChains();
+
+		// upstream replaced with a different parallelism, the chain is
+		// rejected before the topology starts
+		topology.addBolt(new TransformBolt(), 1);
+		try {
+			topology.start();
+			fail("Chains must be validated on start");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	public static class ChainedBolt extends TransformBolt {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public String getBoltName() {
+			return "chainedBolt";
+		}
+
+	}
+
 //	@Test
 //	public void testMultiNodeTopologyEndToEnd() throws Exception {
 //		Map<String, String> worker1 = new HashMap<>();
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TuplePool}
+ * 
+ * @author ambud
+ */
+public class TestTuplePool {
+
+	@Before
+	public void before() {
+		ComponentRegistry.register(Arrays.asList("testSpout", "testBolt"), Collections.singleton("testSpout"));
+	}
+
+	@Test
+	public void testRecycle() {
+		TuplePool<TestTuple> pool = new TuplePool<>(new TestTupleFactory(), 2);
+		TestTuple tuple = pool.acquire();
+		long tupleId = tuple.getTupleId();
+		tuple.setOriginTupleId(10);
+		tuple.getSourceIds().addLong(10);
+		tuple.setGroupByKey("key");
+		tuple.setNextBoltId("testBolt");
+		tuple.setComponentName("testSpout");
+		tuple.setAck(true);
+		tuple.setSourceWorkerId(3);
+		tuple.setSenderWorkerId(4);
+		pool.release(tuple);
+		assertEquals(1, pool.size());
+
+		TestTuple recycled = pool.acquire();
+		assertSame(tuple, recycled);
+		assertEquals(0, pool.size());
+		assertNotEquals(tupleId, recycled.getTupleId());
+		assertEquals(0, recycled.getOriginTupleId());
+		assertTrue(recycled.getSourceIds().isEmpty());
+		assertNull(recycled.getGroupByKey());
+		assertNull(recycled.getNextBoltId());
+		assertNull(recycled.getComponentName());
+		assertFalse(recycled.isAck());
+		assertEquals(-1, recycled.getSourceWorkerId());
+		assertEquals(-1, recycled.getSenderWorkerId());
+	}
+
+	@Test
+	public void testCapacity() {
+		TuplePool<TestTuple> pool = new TuplePool<>(new TestTupleFactory(), 2);
+		TestTuple[] tuples = new TestTuple[] { pool.acquire(), pool.acquire(), pool.acquire() };
+		for (TestTuple tuple : tuples) {
+			pool.release(tuple);
+		}
+		// tuples over capacity are left to the garbage collector
+		assertEquals(2, pool.size());
+	}
+
+	@Test
+	public void testPerThread() throws InterruptedException {
+		final TuplePool<TestTuple> pool = new TuplePool<>(new TestTupleFactory(), 2);
+		TestTuple tuple = pool.acquire();
+		pool.release(tuple);
+		final AtomicReference<TestTuple> other = new AtomicReference<>();
+		Thread thread = new Thread(() -> other.set(pool.acquire()));
+		thread.start();
+		thread.join();
+		assertNotSame(tuple, other.get());
+		assertEquals(1, pool.size());
+	}
+
+	@Test
+	public void testLazyTupleId() {
+		final AtomicLong drawn = new AtomicLong();
+		TupleIdGenerator generator = TupleIds.getGenerator();
+		TupleIds.setGenerator(() -> drawn.incrementAndGet());
+		try {
+			TuplePool<TestTuple> pool = new TuplePool<>(new TestTupleFactory(), 2);
+			TestTuple tuple = pool.acquire();
+			// decoded tuples are given the id of the sender
+			tuple.setEventId(42);
+			assertEquals(42, tuple.getTupleId());
+			pool.release(tuple);
+			tuple = pool.acquire();
+			assertEquals(0, drawn.get());
+			// ids are drawn once, when first read
+			assertEquals(1, tuple.getTupleId());
+			assertEquals(1, tuple.getTupleId());
+			assertEquals(1, drawn.get());
+		} finally {
+			TupleIds.setGenerator(generator);
+		}
+	}
+
+}
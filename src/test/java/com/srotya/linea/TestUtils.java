@@ -17,8 +17,14 @@ package com.srotya.linea;
 
 import static org.junit.Assert.*;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Test;
 
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.srotya.linea.utils.DisruptorUtils;
 import com.srotya.linea.utils.NetUtils;
 
 /**
@@ -39,4 +45,24 @@ public class TestUtils {
 		String ipString = NetUtils.toStringIP(ip);
 		assertEquals("192.168.1.2", ipString);
 	}
+
+	@Test
+	public void testDisruptorConf() {
+		Map<String, String> conf = new HashMap<>();
+		assertEquals(8192, DisruptorUtils.getRingSize(conf, "testBolt."));
+		assertTrue(DisruptorUtils.getWaitStrategy(conf, "testBolt.") instanceof YieldingWaitStrategy);
+		conf.put(Topology.RING_SIZE, "1024");
+		conf.put("testBolt." + Topology.RING_SIZE, "64");
+		conf.put("testBolt." + Topology.WAIT_STRATEGY, "busy_spin");
+		assertEquals(64, DisruptorUtils.getRingSize(conf, "testBolt."));
+		assertEquals(1024, DisruptorUtils.getRingSize(conf, "otherBolt."));
+		assertTrue(DisruptorUtils.getWaitStrategy(conf, "testBolt.") instanceof BusySpinWaitStrategy);
+		assertTrue(DisruptorUtils.getWaitStrategy(conf, "otherBolt.") instanceof YieldingWaitStrategy);
+		conf.put(Topology.RING_SIZE, "1000");
+		try {
+			DisruptorUtils.getRingSize(conf, "otherBolt.");
+			fail("Ring size must be a power of 2");
+		} catch (IllegalArgumentException e) {
+		}
+	}
 }
@@ -17,8 +17,13 @@ package com.srotya.linea.disruptor;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
 import org.junit.Test;
 
+import com.srotya.linea.ComponentRegistry;
 import com.srotya.linea.TestTuple;
 import com.srotya.linea.TestTupleFactory;
 
@@ -29,6 +34,11 @@ import com.srotya.linea.TestTupleFactory;
  */
 public class TestCopyTranslator {
 
+	@Before
+	public void before() {
+		ComponentRegistry.register(Arrays.asList("test", "uid"), Collections.emptySet());
+	}
+
 	@Test
 	public void testTranslateTo() {
 		TestTupleFactory factory = new TestTupleFactory();
@@ -44,6 +54,7 @@ public class TestCopyTranslator {
 		input.setNextBoltId("uid");
 		input.getSourceIds().add(13123123L);
 		input.setSourceWorkerId(22);
+		input.setSenderWorkerId(23);
 		TestTuple output = factory.buildTuple();
 		CopyTranslator<TestTuple> copy = new TestTupleTranslator();
 		copy.translateTo(output, 1L, input);
@@ -56,6 +67,7 @@ public class TestCopyTranslator {
 		assertEquals(input.getOriginTupleId(), output.getOriginTupleId());
 		assertEquals(input.getSourceIds(), output.getSourceIds());
 		assertEquals(input.getSourceWorkerId(), output.getSourceWorkerId());
+		assertEquals(input.getSenderWorkerId(), output.getSenderWorkerId());
 		assertEquals(input.getTupleId(), output.getTupleId());
 		assertEquals(input.getTaskId(), output.getTaskId());
 	}
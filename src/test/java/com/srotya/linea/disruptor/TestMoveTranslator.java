@@ -0,0 +1,104 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.disruptor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.srotya.linea.ComponentRegistry;
+import com.srotya.linea.TestTuple;
+import com.srotya.linea.TestTupleFactory;
+
+/**
+ * Unit tests for {@link MoveTranslator}
+ * 
+ * @author ambud
+ */
+public class TestMoveTranslator {
+
+	@Before
+	public void before() {
+		ComponentRegistry.register(Arrays.asList("test", "uid"), Collections.emptySet());
+	}
+
+	@Test
+	public void testTranslateTo() {
+		TestTupleFactory factory = new TestTupleFactory();
+		TestTuple input = factory.buildTuple();
+		input.setAck(true);
+		input.setComponentName("test");
+		input.setDestinationTaskId(2);
+		input.setDestinationWorkerId(2);
+		input.setGroupByKey("test2");
+		input.setOriginTupleId(123213L);
+		input.setTaskId(1);
+		input.setNextBoltId("uid");
+		input.getSourceIds().addLong(13123123L);
+		input.getSourceIds().addLong(13123124L);
+		input.setField("payload");
+		TestTuple output = factory.buildTuple();
+		output.getSourceIds().addLong(1L);
+		output.setField("stale");
+		MoveTranslator<TestTuple> move = new TestTupleMover();
+		move.translateTo(output, 1L, input);
+		assertEquals("test", output.getComponentName());
+		assertEquals(2, output.getDestinationTaskId());
+		assertEquals("test2", output.getGroupByKey());
+		assertEquals(123213L, output.getOriginTupleId());
+		assertEquals(input.getTupleId(), output.getTupleId());
+		assertEquals(Arrays.asList(13123123L, 13123124L), output.getSourceIds());
+		assertEquals("payload", output.getField());
+		// the published tuple gets the slot's containers back, emptied
+		assertTrue(input.getSourceIds().isEmpty());
+		assertEquals("stale", input.getField());
+	}
+
+	@Test
+	public void testSerializedPayload() {
+		TestTupleFactory factory = new TestTupleFactory();
+		TestTuple input = factory.buildTuple();
+		byte[] payload = new byte[] { 1, 2, 3 };
+		input.setPayload(payload);
+		TestTuple output = factory.buildTuple();
+		new TestTupleMover().translateTo(output, 1L, input);
+		assertArrayEquals(payload, output.getPayload());
+		assertNull(input.getPayload());
+		assertNull(output.getField());
+	}
+
+	/**
+	 * @author ambud
+	 */
+	public static class TestTupleMover extends MoveTranslator<TestTuple> {
+
+		@Override
+		protected void move(TestTuple outputTuple, TestTuple inputTuple) {
+			String field = outputTuple.getField();
+			outputTuple.setField(inputTuple.getField());
+			inputTuple.setField(field);
+		}
+
+	}
+
+}
@@ -41,6 +41,7 @@ public class Event extends AbstractTuple {
 	 * @return
 	 */
 	public Map<String, Object> getHeaders() {
+		materialize();
 		return headers;
 	}
 
@@ -48,7 +49,13 @@ public class Event extends AbstractTuple {
 	 * @param headers
 	 */
 	public void setHeaders(Map<String, Object> headers) {
+		materialize();
 		this.headers = headers;
 	}
 
+	@Override
+	public boolean isLazyPayload() {
+		return true;
+	}
+
 }
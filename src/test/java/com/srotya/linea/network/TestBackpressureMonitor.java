@@ -0,0 +1,132 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.srotya.linea.TestTuple;
+import com.srotya.linea.TestTupleFactory;
+import com.srotya.linea.clustering.Columbus;
+import com.srotya.linea.clustering.WorkerEntry;
+import com.srotya.linea.processors.BoltExecutor;
+import com.srotya.linea.processors.TestBoltExecutor.TestBoltInstance;
+import com.srotya.linea.processors.TestBoltExecutor.TestSpoutInstance;
+
+/**
+ * Unit tests for {@link BackpressureMonitor}
+ * 
+ * @author ambud
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TestBackpressureMonitor {
+
+	@Mock
+	private Router<TestTuple> router;
+	@Mock
+	private Columbus columbus;
+	@Mock
+	private BoltExecutor<TestTuple> spout;
+	@Mock
+	private BoltExecutor<TestTuple> bolt;
+	private BackpressureMonitor<TestTuple> monitor;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void before() {
+		Map<Integer, WorkerEntry> workerMap = new HashMap<>();
+		workerMap.put(0, null);
+		workerMap.put(1, null);
+		when(columbus.getSelfWorkerId()).thenReturn(0);
+		when(columbus.getWorkerMap()).thenReturn(workerMap);
+		when(spout.getTemplateBoltInstance()).thenReturn(new TestSpoutInstance());
+		when(bolt.getTemplateBoltInstance()).thenReturn(new TestBoltInstance());
+		when(router.tryNetworkRouteEvent(any(TestTuple.class))).thenReturn(true);
+		monitor = new BackpressureMonitor<>(new HashMap<>(), router, columbus, new TestTupleFactory(),
+				new BoltExecutor[] { spout, bolt });
+	}
+
+	@Test
+	public void testLocalBackpressure() {
+		when(bolt.getRingOccupancy()).thenReturn(0.5);
+		monitor.check();
+		assertFalse(monitor.isThrottled());
+		assertEquals("testBolt", monitor.getBottleneck());
+		verify(router, never()).tryNetworkRouteEvent(any(TestTuple.class));
+
+		when(bolt.getRingOccupancy()).thenReturn(0.9);
+		monitor.check();
+		assertTrue(monitor.isThrottled());
+		assertEquals(0.9, monitor.getBottleneckOccupancy(), 0.001);
+		assertEquals(1L, (long) monitor.getThrottleCounts().get("testBolt"));
+		assertEquals(0L, (long) monitor.getThrottleCounts().get(new TestSpoutInstance().getBoltName()));
+		// remote worker notified
+		verify(router, times(1)).tryNetworkRouteEvent(any(TestTuple.class));
+
+		// hysteresis, still throttled between the watermarks
+		when(bolt.getRingOccupancy()).thenReturn(0.6);
+		monitor.check();
+		assertTrue(monitor.isThrottled());
+		verify(router, times(2)).tryNetworkRouteEvent(any(TestTuple.class));
+
+		when(bolt.getRingOccupancy()).thenReturn(0.1);
+		monitor.check();
+		assertFalse(monitor.isThrottled());
+		// release is sent once
+		verify(router, times(3)).tryNetworkRouteEvent(any(TestTuple.class));
+		monitor.check();
+		verify(router, times(3)).tryNetworkRouteEvent(any(TestTuple.class));
+	}
+
+	@Test
+	public void testRemoteBackpressure() {
+		TestTuple signal = new TestTupleFactory().buildTuple();
+		signal.setNextBoltId(BackpressureMonitor.BACKPRESSURE_TUPLE);
+		signal.setSourceWorkerId(1);
+		signal.setGroupByValue(true);
+		monitor.onSignal(signal);
+		assertTrue(monitor.isThrottled());
+		assertFalse(monitor.isLocalThrottled());
+		signal.setGroupByValue(false);
+		monitor.onSignal(signal);
+		assertFalse(monitor.isThrottled());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWatermarks() {
+		Map<String, String> conf = new HashMap<>();
+		conf.put(BackpressureMonitor.HIGH_WATERMARK, "0.3");
+		conf.put(BackpressureMonitor.LOW_WATERMARK, "0.5");
+		new BackpressureMonitor<>(conf, router, columbus, new TestTupleFactory(), new BoltExecutor[0]);
+	}
+
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.srotya.linea.TestTuple;
+import com.srotya.linea.TestTupleFactory;
+import com.srotya.linea.clustering.Columbus;
+import com.srotya.linea.clustering.WorkerEntry;
+import com.srotya.linea.processors.BoltExecutor;
+
+/**
+ * Unit tests for {@link CreditManager}
+ * 
+ * @author ambud
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TestCreditManager {
+
+	@Mock
+	private Router<TestTuple> router;
+	@Mock
+	private Columbus columbus;
+	@Mock
+	private BoltExecutor<TestTuple> bolt;
+	private Map<String, String> conf;
+
+	@Before
+	public void before() {
+		Map<Integer, WorkerEntry> workerMap = new HashMap<>();
+		workerMap.put(0, null);
+		workerMap.put(1, null);
+		when(columbus.getSelfWorkerId()).thenReturn(0);
+		when(columbus.getWorkerMap()).thenReturn(workerMap);
+		when(bolt.getParallelism()).thenReturn(2);
+		when(router.tryNetworkRouteEvent(any(TestTuple.class))).thenReturn(true);
+		conf = new HashMap<>();
+		conf.put(CreditManager.INITIAL_CREDITS, "10");
+	}
+
+	@SuppressWarnings("unchecked")
+	private CreditManager<TestTuple> newManager() {
+		return new CreditManager<>(conf, router, columbus, new TestTupleFactory(), new BoltExecutor[] { bolt });
+	}
+
+	private static TestTuple grant(long... grants) {
+		TestTuple tuple = new TestTupleFactory().buildTuple();
+		tuple.setSourceWorkerId(1);
+		tuple.setGroupByValue(grants);
+		return tuple;
+	}
+
+	@Test
+	public void testGrant() {
+		CreditManager<TestTuple> credits = newManager();
+		when(bolt.getRemainingCapacity(0)).thenReturn(100L);
+		when(bolt.getRemainingCapacity(1)).thenReturn(-1L);
+		credits.grant();
+		ArgumentCaptor<TestTuple> captor = ArgumentCaptor.forClass(TestTuple.class);
+		verify(router, times(1)).tryNetworkRouteEvent(captor.capture());
+		TestTuple tuple = captor.getValue();
+		assertEquals(CreditManager.CREDIT_TUPLE, tuple.getNextBoltId());
+		assertEquals(1, tuple.getDestinationWorkerId());
+		assertArrayEquals(new long[] { credits.getEpoch(), 0, 0, 0, 100 }, (long[]) tuple.getGroupByValue());
+
+		// nothing changed, nothing sent
+		credits.grant();
+		verify(router, times(1)).tryNetworkRouteEvent(any(TestTuple.class));
+
+		// received tuples extend the window even if free capacity is the same
+		credits.onReceived(1, 0, 0, 50);
+		credits.grant();
+		verify(router, times(2)).tryNetworkRouteEvent(captor.capture());
+		assertArrayEquals(new long[] { credits.getEpoch(), 0, 0, 50, 150 },
+				(long[]) captor.getValue().getGroupByValue());
+	}
+
+	@Test
+	public void testAcquire() {
+		conf.put(CreditManager.INITIAL_CREDITS, "0");
+		conf.put(CreditManager.MAX_HOLD, "0");
+		CreditManager<TestTuple> credits = newManager();
+		assertFalse(credits.tryAcquire(0, 3));
+
+		credits.onGrant(grant(7, 0, 3, 0, 2));
+		assertEquals(2, credits.getCredits(0, 3));
+		assertTrue(credits.tryAcquire(0, 3));
+		credits.acquire(0, 3, 1);
+		assertFalse(credits.tryAcquire(0, 3));
+		assertEquals(0, credits.getHeldTuples(1));
+
+		// a stale grant doesn't take credits back
+		credits.onGrant(grant(7, 0, 3, 0, 1));
+		assertEquals(0, credits.getCredits(0, 3));
+
+		// out of credit, sent anyway once the hold expires
+		credits.acquire(0, 3, 1);
+		assertEquals(1, credits.getOverdrafts(1));
+		assertEquals(1, credits.getHeldTuples(1));
+		assertEquals(-1, credits.getCredits(0, 3));
+	}
+
+	@Test
+	public void testOverdrawn() {
+		conf.put(CreditManager.INITIAL_CREDITS, "0");
+		conf.put(CreditManager.MAX_HOLD, "1000");
+		CreditManager<TestTuple> credits = newManager();
+		TestTuple grant = grant(7, 0, 3, 0, 0);
+
+		// the first tuple without credit is held, the following ones aren't
+		long start = System.nanoTime();
+		credits.acquire(0, 3, 1);
+		assertTrue(credits.isOverdrawn(1));
+		for (int i = 0; i < 100; i++) {
+			credits.acquire(0, 2, 1);
+		}
+		assertTrue(System.nanoTime() - start < 5_000_000_000L);
+		assertEquals(101, credits.getOverdrafts(1));
+		assertEquals(1, credits.getHeldTuples(1));
+
+		// holding resumes once the worker grants again
+		credits.onGrant(grant);
+		assertFalse(credits.isOverdrawn(1));
+	}
+
+	@Test
+	public void testLostTuples() {
+		conf.put(CreditManager.INITIAL_CREDITS, "0");
+		conf.put(CreditManager.MAX_HOLD, "0");
+		CreditManager<TestTuple> credits = newManager();
+		credits.onGrant(grant(7, 0, 3, 0, 10));
+		for (int i = 0; i < 10; i++) {
+			assertTrue(credits.tryAcquire(0, 3));
+		}
+		assertFalse(credits.tryAcquire(0, 3));
+
+		// only 4 of the 10 tuples arrived, the rest may still be in flight
+		credits.onGrant(grant(7, 0, 3, 4, 14));
+		assertEquals(4, credits.getCredits(0, 3));
+
+		// still missing a grant later, they were lost and are written off
+		credits.onGrant(grant(7, 0, 3, 4, 14));
+		assertEquals(10, credits.getCredits(0, 3));
+
+		// tuples written off that arrive after all are counted again
+		credits.onGrant(grant(7, 0, 3, 10, 14));
+		assertEquals(4, credits.getCredits(0, 3));
+	}
+
+	@Test
+	public void testLostTuplesInFlight() {
+		conf.put(CreditManager.INITIAL_CREDITS, "0");
+		CreditManager<TestTuple> credits = newManager();
+		credits.onGrant(grant(7, 0, 3, 0, 10));
+		for (int i = 0; i < 10; i++) {
+			assertTrue(credits.tryAcquire(0, 3));
+		}
+		credits.onGrant(grant(7, 0, 3, 4, 14));
+		credits.onGrant(grant(7, 0, 3, 4, 14));
+		// missing tuples aren't written off before the hold expires
+		assertEquals(4, credits.getCredits(0, 3));
+	}
+
+	@Test
+	public void testReceiverRestart() {
+		conf.put(CreditManager.INITIAL_CREDITS, "0");
+		CreditManager<TestTuple> credits = newManager();
+		credits.onGrant(grant(7, 0, 3, 0, 10));
+		for (int i = 0; i < 10; i++) {
+			assertTrue(credits.tryAcquire(0, 3));
+		}
+		credits.onGrant(grant(7, 0, 3, 5, 15));
+		for (int i = 0; i < 5; i++) {
+			assertTrue(credits.tryAcquire(0, 3));
+		}
+		assertFalse(credits.tryAcquire(0, 3));
+
+		// the restarted worker starts counting from 0 with a new epoch
+		credits.onGrant(grant(9, 0, 3, 0, 10));
+		assertEquals(10, credits.getCredits(0, 3));
+	}
+
+	@Test
+	public void testSenderRestart() {
+		conf.put(CreditManager.INITIAL_CREDITS, "0");
+		CreditManager<TestTuple> credits = newManager();
+		// the receiver counted tuples of this worker's previous incarnation
+		credits.onGrant(grant(7, 0, 3, 500, 510));
+		assertEquals(10, credits.getCredits(0, 3));
+	}
+
+}
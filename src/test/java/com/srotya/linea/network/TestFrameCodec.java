@@ -0,0 +1,175 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.srotya.linea.ComponentRegistry;
+import com.srotya.linea.example.simple.Event;
+import com.srotya.linea.network.compression.COMPRESSION_TYPE;
+import com.srotya.linea.network.compression.CompressionMetrics;
+import com.srotya.linea.network.compression.FrameCompressor;
+
+/**
+ * Unit tests for {@link FrameEncoder} and {@link FrameDecoder}
+ * 
+ * @author ambud
+ */
+public class TestFrameCodec {
+
+	@Before
+	public void before() {
+		ComponentRegistry.register(Arrays.asList("printerBolt"), Collections.emptySet());
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		FrameEncoder encoder = new FrameEncoder(1024, 1024 * 1024);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		List<Event> sent = new ArrayList<>();
+		int frames = 0;
+		for (int i = 0; i < 1000; i++) {
+			Event event = new Event();
+			event.getHeaders().put("host", "xyz.srotya.com");
+			event.getHeaders().put("value", i);
+			event.setNextBoltId("printerBolt");
+			sent.add(event);
+			encoder.add(event);
+			if (encoder.isFull()) {
+				encoder.writeTo(Channels.newChannel(bytes));
+				frames++;
+			}
+		}
+		if (!encoder.isEmpty()) {
+			encoder.writeTo(Channels.newChannel(bytes));
+			frames++;
+		}
+		assertTrue(encoder.isEmpty());
+		assertTrue(frames > 1 && frames < 1000);
+
+		List<Event> received = new ArrayList<>();
+		// small initial buffer and tiny reads exercise partial frames and
+		// buffer growth
+		FrameDecoder<Event> decoder = new FrameDecoder<>(Event.class, 64, 1024 * 1024);
+		ReadableByteChannel channel = new TrickleChannel(bytes.toByteArray(), 100);
+		while (decoder.read(channel, received::add) >= 0) {
+		}
+		assertEquals(sent.size(), received.size());
+		for (int i = 0; i < sent.size(); i++) {
+			assertEquals(sent.get(i), received.get(i));
+			assertEquals("printerBolt", received.get(i).getNextBoltId());
+		}
+		assertTrue(decoder.getCapacity() >= 1024);
+	}
+
+	@Test
+	public void testCompressedRoundTrip() throws IOException {
+		for (COMPRESSION_TYPE type : new COMPRESSION_TYPE[] { COMPRESSION_TYPE.LZ4, COMPRESSION_TYPE.DEFLATE }) {
+			CompressionMetrics.getInstance().reset();
+			FrameEncoder encoder = new FrameEncoder(1024, 1024 * 1024);
+			encoder.setCompressor(new FrameCompressor(type, 256));
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			List<Event> sent = new ArrayList<>();
+			for (int i = 0; i < 1000; i++) {
+				Event event = new Event();
+				event.getHeaders().put("host", "xyz.srotya.com");
+				event.getHeaders().put("value", i);
+				sent.add(event);
+				encoder.add(event);
+				// a small frame now and then is stored uncompressed
+				if (encoder.isFull() || i % 100 == 0) {
+					encoder.writeTo(Channels.newChannel(bytes));
+				}
+			}
+			encoder.writeTo(Channels.newChannel(bytes));
+
+			List<Event> received = new ArrayList<>();
+			FrameDecoder<Event> decoder = new FrameDecoder<>(Event.class, 64, 1024 * 1024);
+			decoder.setCompressor(new FrameCompressor(type, 256));
+			ReadableByteChannel channel = new TrickleChannel(bytes.toByteArray(), 100);
+			while (decoder.read(channel, received::add) >= 0) {
+			}
+			assertEquals(type.name(), sent, received);
+			CompressionMetrics metrics = CompressionMetrics.getInstance();
+			assertTrue(type.name(), metrics.getCompressedFrames() > 0);
+			assertTrue(type.name(), metrics.getStoredFrames() > 0);
+			assertEquals(type.name(), metrics.getCompressedFrames(), metrics.getDecompressedFrames());
+			assertTrue(type.name(), metrics.getRatio() > 1.5);
+			assertTrue(bytes.size() < metrics.getRawBytes());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidFrame() throws IOException {
+		ByteBuffer frame = ByteBuffer.allocate(16);
+		frame.putInt(Integer.MAX_VALUE).putInt(1).putLong(0);
+		FrameDecoder<Event> decoder = new FrameDecoder<>(Event.class, 64, 1024);
+		decoder.read(Channels.newChannel(new ByteArrayInputStream(frame.array())), e -> {
+		});
+	}
+
+	/**
+	 * Channel returning at most a fixed number of bytes per read
+	 */
+	private static class TrickleChannel implements ReadableByteChannel {
+
+		private ByteBuffer source;
+		private int chunk;
+
+		public TrickleChannel(byte[] data, int chunk) {
+			this.source = ByteBuffer.wrap(data);
+			this.chunk = chunk;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (!source.hasRemaining()) {
+				return -1;
+			}
+			int length = Math.min(chunk, Math.min(dst.remaining(), source.remaining()));
+			for (int i = 0; i < length; i++) {
+				dst.put(source.get());
+			}
+			return length;
+		}
+
+	}
+
+}
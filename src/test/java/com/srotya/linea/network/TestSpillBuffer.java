@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SpillBuffer}
+ * 
+ * @author ambud
+ */
+public class TestSpillBuffer {
+
+	@Test
+	public void testSpill() {
+		SpillBuffer spill = new SpillBuffer(100);
+		assertTrue(spill.isEmpty());
+		ByteBuffer frame = ByteBuffer.allocate(60);
+		frame.putInt(0, 1);
+		frame.position(20);
+		assertTrue(spill.offer(frame, 3));
+		// the source frame isn't consumed
+		assertEquals(20, frame.position());
+		assertEquals(40, spill.getBytes());
+		frame.putInt(20, 2);
+		assertTrue(spill.offer(frame, 4));
+		assertEquals(80, spill.getBytes());
+
+		// the oldest frame makes room for the new one
+		frame.putInt(20, 3);
+		assertTrue(spill.offer(frame, 5));
+		assertEquals(1, spill.getDroppedFrames());
+		assertEquals(3, spill.getDroppedTuples());
+		assertEquals(2, spill.peek().getInt(0));
+		spill.remove();
+		assertEquals(3, spill.peek().getInt(0));
+		assertEquals(40, spill.peek().remaining());
+		spill.remove();
+		assertTrue(spill.isEmpty());
+		assertNull(spill.peek());
+		assertEquals(0, spill.getBytes());
+	}
+
+	@Test
+	public void testOutage() {
+		SpillBuffer spill = new SpillBuffer(10, 1);
+		assertTrue(spill.offer(ByteBuffer.allocate(10), 1));
+		assertTrue(spill.offer(ByteBuffer.allocate(10), 2));
+		assertTrue(spill.offer(ByteBuffer.allocate(10), 3));
+		assertEquals(3, spill.getDroppedTuples());
+		spill.remove();
+		spill.endOutage();
+		// counters keep the total across outages
+		assertTrue(spill.offer(ByteBuffer.allocate(10), 4));
+		assertFalse(spill.offer(ByteBuffer.allocate(11), 5));
+		assertEquals(3, spill.getDroppedFrames());
+		assertEquals(8, spill.getDroppedTuples());
+	}
+
+	@Test
+	public void testOversizedFrame() {
+		SpillBuffer spill = new SpillBuffer(10);
+		assertFalse(spill.offer(ByteBuffer.allocate(11), 2));
+		assertTrue(spill.isEmpty());
+		assertEquals(2, spill.getDroppedTuples());
+		assertTrue(spill.offer(ByteBuffer.allocate(10), 1));
+		spill.clear();
+		assertTrue(spill.isEmpty());
+		assertEquals(3, spill.getDroppedTuples());
+	}
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Compressor} implementations
+ * 
+ * @author ambud
+ */
+public class TestCompressors {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Random random = new Random(7);
+		for (COMPRESSION_TYPE type : new COMPRESSION_TYPE[] { COMPRESSION_TYPE.LZ4, COMPRESSION_TYPE.DEFLATE }) {
+			Compressor compressor = type.newCompressor();
+			for (int length : new int[] { 256, 4096, 70000, 300000 }) {
+				byte[] data = new byte[length];
+				for (int i = 0; i < length; i++) {
+					// skewed bytes with repeats at short and long distances
+					data[i] = i > 70 && random.nextInt(4) > 0 ? data[i - (i % 2 == 0 ? 7 : 70)]
+							: (byte) random.nextInt(16);
+				}
+				byte[] compressed = new byte[3 + compressor.maxCompressedLength(length)];
+				int compressedLength = compressor.compress(data, 0, length, compressed, 3);
+				assertTrue(type + ":" + length, compressedLength > 0 && compressedLength < length);
+				byte[] raw = new byte[length + 5];
+				compressor.decompress(compressed, 3, compressedLength, raw, 5, length);
+				assertArrayEquals(type + ":" + length, data, Arrays.copyOfRange(raw, 5, length + 5));
+			}
+		}
+	}
+
+	@Test
+	public void testIncompressible() {
+		Random random = new Random(7);
+		byte[] data = new byte[8192];
+		random.nextBytes(data);
+		for (COMPRESSION_TYPE type : new COMPRESSION_TYPE[] { COMPRESSION_TYPE.LZ4, COMPRESSION_TYPE.DEFLATE }) {
+			Compressor compressor = type.newCompressor();
+			byte[] compressed = new byte[compressor.maxCompressedLength(data.length)];
+			assertEquals(type.name(), -1, compressor.compress(data, 0, data.length, compressed, 0));
+		}
+	}
+
+	@Test
+	public void testLZ4BlockFormat() throws IOException {
+		// token 0x5F: 5 literals, match of 15 + 4 + 1 bytes at offset 5,
+		// followed by the 5 trailing literals
+		byte[] block = new byte[] { 0x5F, 'a', 'b', 'c', 'd', 'e', 5, 0, 1, 0x50, 'v', 'w', 'x', 'y', 'z' };
+		byte[] raw = new byte[30];
+		new LZ4Compressor().decompress(block, 0, block.length, raw, 0, raw.length);
+		assertEquals("abcdeabcdeabcdeabcdeabcdevwxyz", new String(raw, StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void testCorruptBlock() {
+		byte[] data = "linea linea linea linea linea linea linea linea".getBytes(StandardCharsets.US_ASCII);
+		for (COMPRESSION_TYPE type : new COMPRESSION_TYPE[] { COMPRESSION_TYPE.LZ4, COMPRESSION_TYPE.DEFLATE }) {
+			Compressor compressor = type.newCompressor();
+			byte[] compressed = new byte[compressor.maxCompressedLength(data.length)];
+			int length = compressor.compress(data, 0, data.length, compressed, 0);
+			try {
+				compressor.decompress(compressed, 0, length - 2, new byte[data.length], 0, data.length);
+				fail(type + " truncated block should fail");
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	@Test
+	public void testNegotiation() {
+		assertEquals(COMPRESSION_TYPE.LZ4, FrameCompressor.accept(new HashMap<>(), 1));
+		assertEquals(COMPRESSION_TYPE.NONE, FrameCompressor.accept(new HashMap<>(), 42));
+		Map<String, String> conf = new HashMap<>();
+		conf.put(FrameCompressor.COMPRESSION_ACCEPT, "false");
+		assertEquals(COMPRESSION_TYPE.NONE, FrameCompressor.accept(conf, 1));
+		conf.put(FrameCompressor.COMPRESSION, "lz4");
+		assertEquals(COMPRESSION_TYPE.LZ4, FrameCompressor.getRequested(conf));
+	}
+
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.srotya.linea.TestTuple;
+import com.srotya.linea.TestTupleFactory;
+import com.srotya.linea.network.Router;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * Unit tests for {@link IWCHandler}
+ * 
+ * @author ambud
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TestIWCHandler {
+
+	@Mock
+	private Router<TestTuple> router;
+
+	@Test
+	public void testPauseOnFullRing() throws InterruptedException {
+		EmbeddedChannel channel = new EmbeddedChannel(new IWCHandler<>(router, TestTuple.class));
+		TestTupleFactory factory = new TestTupleFactory();
+		// only one of the two tuples fits
+		when(router.tryDirectLocalRouteEvents(any(TestTuple[].class), eq(0), eq(2))).thenReturn(1);
+		when(router.tryDirectLocalRouteEvents(any(TestTuple[].class), eq(0), eq(1))).thenReturn(0);
+		channel.writeInbound(factory.buildTuple(), factory.buildTuple());
+		assertFalse(channel.config().isAutoRead());
+
+		// retried on the event loop while the ring is full
+		Thread.sleep(5);
+		channel.runScheduledPendingTasks();
+		assertFalse(channel.config().isAutoRead());
+
+		// reads resume once the held tuple is routed
+		when(router.tryDirectLocalRouteEvents(any(TestTuple[].class), eq(0), eq(1))).thenReturn(1);
+		Thread.sleep(5);
+		channel.runScheduledPendingTasks();
+		assertTrue(channel.config().isAutoRead());
+		verify(router, times(2)).tryDirectLocalRouteEvents(any(TestTuple[].class), eq(0), eq(1));
+		verify(router, times(0)).directLocalRouteEvents(any(TestTuple[].class), anyInt(), anyInt());
+		assertEquals(0, channel.inboundMessages().size());
+		channel.finish();
+	}
+
+}
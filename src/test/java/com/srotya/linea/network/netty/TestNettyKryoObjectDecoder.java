@@ -0,0 +1,61 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.netty;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.srotya.linea.example.simple.Event;
+import com.srotya.linea.network.FrameEncoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Unit tests for {@link NettyKryoObjectDecoder}
+ * 
+ * @author ambud
+ */
+public class TestNettyKryoObjectDecoder {
+
+	@Test
+	public void testDecodeFrame() {
+		FrameEncoder encoder = new FrameEncoder(1024 * 1024, 1024 * 1024);
+		List<Event> sent = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			Event event = new Event();
+			event.getHeaders().put("value", i);
+			event.setNextBoltId("printerBolt");
+			sent.add(event);
+			encoder.add(event);
+		}
+		ByteBuffer frame = encoder.finish();
+		ByteBuf in = Unpooled.directBuffer(frame.remaining());
+		in.writeBytes(frame);
+		// length field is stripped by the frame decoder
+		assertEquals(in.readableBytes() - FrameEncoder.HEADER_SIZE, in.readInt());
+		List<Event> received = NettyKryoObjectDecoder.bytebufToEvents(Event.class, in);
+		assertEquals(sent, received);
+		assertEquals(0, in.readableBytes());
+		in.release();
+	}
+
+}
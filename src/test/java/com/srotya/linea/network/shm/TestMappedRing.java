@@ -0,0 +1,138 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.shm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.srotya.linea.example.simple.Event;
+
+/**
+ * Unit tests for {@link MappedRing}
+ * 
+ * @author ambud
+ */
+public class TestMappedRing {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File file = new File(Files.createTempDirectory("linea-shm").toFile(), "ring");
+		assertNull(MappedRing.open(file, 4096));
+		MappedRing producer = MappedRing.create(file, 4096);
+		MappedRing consumer = MappedRing.open(file, 4096);
+		List<Event> sent = new ArrayList<>();
+		List<Event> received = new ArrayList<>();
+		// small ring forces wrap around and full ring handling
+		for (int i = 0; i < 2000; i++) {
+			Event event = new Event();
+			event.getHeaders().put("value", i);
+			event.setNextBoltId("printerBolt");
+			sent.add(event);
+			while (!producer.offer(event)) {
+				assertTrue(consumer.poll(Event.class, received::add, 7) > 0);
+			}
+		}
+		while (consumer.poll(Event.class, received::add, 7) > 0) {
+		}
+		assertEquals(sent, received);
+		assertEquals(0, producer.getPending());
+		assertFalse(consumer.isReplaced());
+		producer.close();
+		consumer.close();
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		File file = new File(Files.createTempDirectory("linea-shm").toFile(), "ring");
+		MappedRing producer = MappedRing.create(file, 4096);
+		MappedRing consumer = MappedRing.open(file, 4096);
+		int total = 20000;
+		Thread thread = new Thread(() -> {
+			for (int i = 0; i < total; i++) {
+				Event event = new Event();
+				event.getHeaders().put("value", i);
+				while (!producer.offer(event)) {
+					Thread.yield();
+				}
+			}
+		});
+		thread.start();
+		List<Event> received = new ArrayList<>();
+		while (received.size() < total) {
+			if (consumer.poll(Event.class, received::add, 64) == 0) {
+				Thread.yield();
+			}
+		}
+		thread.join();
+		for (int i = 0; i < total; i++) {
+			assertEquals(i, received.get(i).getHeaders().get("value"));
+		}
+		assertEquals(0, producer.getPending());
+		producer.close();
+		consumer.close();
+	}
+
+	@Test
+	public void testFull() throws IOException {
+		File file = new File(Files.createTempDirectory("linea-shm").toFile(), "ring");
+		MappedRing producer = MappedRing.create(file, 1024);
+		Event event = new Event();
+		event.getHeaders().put("value", 1);
+		int count = 0;
+		while (producer.offer(event)) {
+			count++;
+		}
+		assertTrue(count > 1);
+		assertTrue(producer.getPending() <= 1024);
+		MappedRing consumer = MappedRing.open(file, 1024);
+		assertEquals(1, consumer.poll(Event.class, e -> {
+		}, 1));
+		assertTrue(producer.offer(event));
+		producer.close();
+		consumer.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTupleLargerThanRing() throws IOException {
+		File file = new File(Files.createTempDirectory("linea-shm").toFile(), "ring");
+		MappedRing producer = MappedRing.create(file, 1024);
+		Event event = new Event();
+		event.getHeaders().put("value", new String(new char[2048]));
+		producer.offer(event);
+	}
+
+	@Test
+	public void testReplaced() throws IOException {
+		File file = new File(Files.createTempDirectory("linea-shm").toFile(), "ring");
+		MappedRing.create(file, 1024).close();
+		MappedRing consumer = MappedRing.open(file, 1024);
+		assertFalse(consumer.isReplaced());
+		MappedRing.create(file, 1024).close();
+		assertTrue(consumer.isReplaced());
+		consumer.close();
+	}
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.network.shm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import com.srotya.linea.Topology;
+import com.srotya.linea.clustering.Columbus;
+import com.srotya.linea.clustering.WorkerEntry;
+import com.srotya.linea.clustering.columbus.SingletonNodeClusterKeeper;
+import com.srotya.linea.example.simple.Event;
+import com.srotya.linea.network.NetworkClient;
+import com.srotya.linea.network.Router;
+
+/**
+ * Unit tests for {@link SharedMemoryClient}
+ * 
+ * @author ambud
+ */
+public class TestSharedMemoryClient {
+
+	private static List<Event> sentOverNetwork = new CopyOnWriteArrayList<>();
+
+	@Test
+	public void testDivertStuckRing() throws Exception {
+		File dir = Files.createTempDirectory("linea-shm").toFile();
+		Map<String, String> conf = new HashMap<>();
+		conf.put(Columbus.KEEPER_CLASS_FQCN, SingletonNodeClusterKeeper.class.getName());
+		conf.put(Topology.WORKER_ID, "0");
+		conf.put(SharedMemoryServer.SHM_DIR, dir.getAbsolutePath());
+		conf.put(SharedMemoryServer.SHM_RING_SIZE, "1024");
+		conf.put(SharedMemoryServer.SHM_OFFER_TIMEOUT, "20");
+		conf.put(Router.NETWORK_CLIENT_CLASS, RecordingClient.class.getName());
+		Columbus columbus = new Columbus(conf);
+		WorkerEntry self = new WorkerEntry(InetAddress.getLoopbackAddress(), 6000, System.currentTimeMillis());
+		WorkerEntry peer = new WorkerEntry(InetAddress.getLoopbackAddress(), 6001, System.currentTimeMillis());
+		columbus.addKnownPeer(0, self);
+		columbus.addKnownPeer(1, peer);
+
+		SharedMemoryClient<Event> client = new SharedMemoryClient<>();
+		client.setColumbus(columbus);
+		client.setConf(conf);
+		client.setWorkerIds(Collections.singleton(1));
+		client.start();
+		sentOverNetwork.clear();
+
+		// nobody consumes the ring, it fills up and tuples go to the network
+		long sequence = 0;
+		while (!client.isDiverted(1)) {
+			client.onEvent(event(sequence), sequence++, true);
+		}
+		assertEquals(1, sentOverNetwork.size());
+		client.onEvent(event(sequence), sequence++, true);
+		assertEquals(2, sentOverNetwork.size());
+
+		// the ring is used again once it's drained
+		MappedRing consumer = MappedRing.open(SharedMemoryServer.getRingFile(conf, self, peer), 1024);
+		while (consumer.poll(Event.class, e -> {
+		}, 100) > 0) {
+		}
+		Thread.sleep(30);
+		client.onEvent(event(sequence), sequence++, true);
+		assertFalse(client.isDiverted(1));
+		assertEquals(2, sentOverNetwork.size());
+		assertEquals(1, consumer.poll(Event.class, e -> {
+		}, 100));
+		consumer.close();
+		client.onShutdown();
+	}
+
+	private static Event event(long value) {
+		Event event = new Event();
+		event.getHeaders().put("value", value);
+		event.setDestinationWorkerId(1);
+		return event;
+	}
+
+	public static class RecordingClient extends NetworkClient<Event> {
+
+		@Override
+		public void start() throws Exception {
+		}
+
+		@Override
+		public void onEvent(Event event, long sequence, boolean endOfBatch) throws Exception {
+			sentOverNetwork.add(event);
+		}
+
+	}
+
+}
@@ -17,6 +17,7 @@ package com.srotya.linea.processors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.times;
@@ -27,14 +28,20 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import com.lmax.disruptor.YieldingWaitStrategy;
 import com.srotya.linea.Collector;
 import com.srotya.linea.TestTuple;
+import com.srotya.linea.Topology;
 import com.srotya.linea.TestTupleFactory;
 import com.srotya.linea.clustering.Columbus;
 import com.srotya.linea.disruptor.ROUTING_TYPE;
@@ -148,6 +155,153 @@ public class TestBoltExecutor {
 		verify(router, times(1)).routeTuple(any(TestTuple.class));
 	}
 
+	@Test
+	public void testProcessTupleBatch() throws IOException, ClassNotFoundException, InterruptedException {
+		TestBoltInstance testBoltInstance = new TestBoltInstance();
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		ObjectOutputStream ois = new ObjectOutputStream(stream);
+		ois.writeObject(testBoltInstance);
+		ois.close();
+		byte[] bolt = stream.toByteArray();
+		TestTupleFactory factory = new TestTupleFactory();
+		Map<String, String> conf = new HashMap<>();
+		// smaller than the batch to force splitting
+		conf.put("testBolt." + Topology.RING_SIZE, "4");
+		BoltExecutor<TestTuple> executor = new BoltExecutor<TestTuple>(conf, factory, bolt, columbus, 2, router,
+				new TestCopyTranslator.TestTupleTranslator());
+		executor.start();
+		TestTuple[] tuples = new TestTuple[10];
+		for (int i = 0; i < tuples.length; i++) {
+			tuples[i] = factory.buildTuple();
+			tuples[i].getSourceIds().add(tuples[i].getTupleId());
+		}
+		executor.process(1, tuples, 1, 8);
+		Thread.sleep(100);
+		// 1 ack per tuple in the batch
+		verify(router, times(8)).routeTuple(any(TestTuple.class));
+		executor.stop();
+	}
+
+	@Test
+	public void testTryProcessFullRing() throws IOException, InterruptedException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		ObjectOutputStream ois = new ObjectOutputStream(stream);
+		ois.writeObject(new TestBlockingBoltInstance());
+		ois.close();
+		TestTupleFactory factory = new TestTupleFactory();
+		Map<String, String> conf = new HashMap<>();
+		conf.put("testBolt." + Topology.RING_SIZE, "4");
+		BoltExecutor<TestTuple> executor = new BoltExecutor<TestTuple>(conf, factory, stream.toByteArray(), columbus,
+				2, router, new TestCopyTranslator.TestTupleTranslator());
+		TestBlockingBoltInstance.latch = new CountDownLatch(1);
+		executor.start();
+		TestTuple[] tuples = new TestTuple[10];
+		for (int i = 0; i < tuples.length; i++) {
+			tuples[i] = factory.buildTuple();
+		}
+		// only what fits in the ring is published, without waiting
+		assertEquals(4, executor.tryProcess(1, tuples, 0, 10));
+		Thread.sleep(100);
+		assertEquals(0, executor.tryProcess(1, tuples, 4, 6));
+		TestBlockingBoltInstance.latch.countDown();
+		Thread.sleep(100);
+		assertEquals(4, executor.tryProcess(1, tuples, 4, 6));
+		executor.stop();
+	}
+
+	@Test
+	public void testReadyLoopDoesNotStarveTasks() throws IOException, InterruptedException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		ObjectOutputStream ois = new ObjectOutputStream(stream);
+		ois.writeObject(new TestLoopingBoltInstance());
+		ois.close();
+		TestTupleFactory factory = new TestTupleFactory();
+		BoltExecutor<TestTuple> executor = new BoltExecutor<TestTuple>(new HashMap<>(), factory,
+				stream.toByteArray(), columbus, 1, router, new TestCopyTranslator.TestTupleTranslator());
+		TestLoopingBoltInstance.ready = new CountDownLatch(1);
+		TestLoopingBoltInstance.processed = new CountDownLatch(1);
+		executor.start();
+		assertTrue(TestLoopingBoltInstance.ready.await(5, TimeUnit.SECONDS));
+		// the ready loop holds its thread, the task still has its own
+		executor.process(0, factory.buildTuple());
+		assertTrue(TestLoopingBoltInstance.processed.await(1, TimeUnit.SECONDS));
+		executor.stop();
+	}
+
+	@Test
+	public void testProcessChainedTuple() throws IOException, ClassNotFoundException, InterruptedException {
+		TestBoltInstance testBoltInstance = new TestBoltInstance();
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		ObjectOutputStream ois = new ObjectOutputStream(stream);
+		ois.writeObject(testBoltInstance);
+		ois.close();
+		byte[] bolt = stream.toByteArray();
+		TestTupleFactory factory = new TestTupleFactory();
+		BoltExecutor<TestTuple> executor = new BoltExecutor<TestTuple>(new HashMap<>(), factory, bolt, columbus, 2,
+				router, new TestCopyTranslator.TestTupleTranslator());
+		executor.setChainedTo("upstreamBolt");
+		assertTrue(executor.isChained());
+		executor.start();
+		assertNull(executor.getTaskProcessorMap().get(0).getBuffer());
+		TestTuple tuple = factory.buildTuple();
+		tuple.getSourceIds().add(tuple.getTupleId());
+		// processed synchronously on this thread
+		executor.process(0, tuple);
+		verify(router, times(1)).routeTuple(any(TestTuple.class));
+		executor.process(1, tuple);
+		verify(router, times(2)).routeTuple(any(TestTuple.class));
+		executor.stop();
+	}
+
+	@Test
+	public void testBatchEnd() throws Exception {
+		TestTupleFactory factory = new TestTupleFactory();
+		TestBatchBoltInstance upstream = new TestBatchBoltInstance();
+		TestBatchBoltInstance downstream = new TestBatchBoltInstance();
+		ExecutorService pool = Executors.newCachedThreadPool();
+		BoltExecutorWrapper<TestTuple> wrapper = new BoltExecutorWrapper<>(factory, pool, upstream,
+				new TestCopyTranslator.TestTupleTranslator());
+		BoltExecutorWrapper<TestTuple> chained = new BoltExecutorWrapper<>(factory, pool, downstream,
+				new TestCopyTranslator.TestTupleTranslator(), true, 1024, new YieldingWaitStrategy());
+		wrapper.addChained(chained);
+		for (int i = 0; i < 3; i++) {
+			wrapper.onEvent(factory.buildTuple(), i, i == 2);
+		}
+		assertEquals(3, upstream.processed);
+		assertEquals(1, upstream.batches);
+		assertEquals(3, upstream.lastBatchSize);
+		// chained bolt sees the batch boundary of its upstream
+		assertEquals(1, downstream.batches);
+		wrapper.onEvent(factory.buildTuple(), 3, true);
+		assertEquals(2, upstream.batches);
+		assertEquals(1, upstream.lastBatchSize);
+		assertEquals(2, downstream.batches);
+		pool.shutdownNow();
+	}
+
+	public static class TestBatchBoltInstance extends TestBoltInstance implements BatchBolt<TestTuple> {
+
+		private static final long serialVersionUID = 1L;
+		private int processed;
+		private int batches;
+		private int lastBatchSize;
+		private int batchSize;
+
+		@Override
+		public void process(TestTuple tuple) {
+			processed++;
+			batchSize++;
+		}
+
+		@Override
+		public void onBatchEnd() {
+			batches++;
+			lastBatchSize = batchSize;
+			batchSize = 0;
+		}
+
+	}
+
 	public static class TestSpoutInstance extends Spout<TestTuple> {
 
 		private static final long serialVersionUID = 1L;
@@ -211,4 +365,47 @@ public class TestBoltExecutor {
 
 	}
 
+	public static class TestLoopingBoltInstance extends TestBoltInstance {
+
+		private static final long serialVersionUID = 1L;
+		private static CountDownLatch ready;
+		private static CountDownLatch processed;
+
+		@Override
+		public void ready() {
+			ready.countDown();
+			while (!Thread.currentThread().isInterrupted()) {
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void process(TestTuple tuple) {
+			processed.countDown();
+			super.process(tuple);
+		}
+
+	}
+
+	public static class TestBlockingBoltInstance extends TestBoltInstance {
+
+		private static final long serialVersionUID = 1L;
+		private static CountDownLatch latch;
+
+		@Override
+		public void process(TestTuple tuple) {
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.process(tuple);
+		}
+
+	}
+
 }
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.srotya.linea.processors.TickScheduler.Timer;
+
+/**
+ * Unit tests for {@link TickScheduler}
+ * 
+ * @author ambud
+ */
+public class TestTickScheduler {
+
+	@Test
+	public void testPeriodicTimer() {
+		TickScheduler scheduler = new TickScheduler(1, 0);
+		final AtomicInteger count = new AtomicInteger();
+		Timer timer = scheduler.schedule(() -> count.incrementAndGet() > 0, 0, 5);
+		for (int i = 0; i < 20; i++) {
+			scheduler.advance();
+		}
+		// fired on ticks 1, 6, 11 and 16
+		assertEquals(4, count.get());
+		timer.cancel();
+		for (int i = 0; i < 20; i++) {
+			scheduler.advance();
+		}
+		assertEquals(4, count.get());
+	}
+
+	@Test
+	public void testLongPeriodAndRetry() {
+		TickScheduler scheduler = new TickScheduler(1, 0);
+		final AtomicInteger count = new AtomicInteger();
+		scheduler.schedule(() -> count.incrementAndGet() > 0, 0, 1000);
+		final AtomicInteger attempts = new AtomicInteger();
+		// fails twice, then succeeds
+		scheduler.schedule(() -> attempts.incrementAndGet() > 2, 10, 2000);
+		for (int i = 0; i < 2020; i++) {
+			scheduler.advance();
+		}
+		// periods longer than the wheel wait for the right round
+		assertEquals(3, count.get());
+		// retried on consecutive ticks until published, then once per period
+		assertEquals(4, attempts.get());
+	}
+
+	@Test
+	public void testRetryKeepsPhase() {
+		TickScheduler scheduler = new TickScheduler(1, 0);
+		final List<Integer> fired = new ArrayList<>();
+		final AtomicInteger tick = new AtomicInteger();
+		// first attempt fails and is retried on tick 2
+		scheduler.schedule(() -> fired.add(tick.get()) && fired.size() > 1, 0, 5);
+		for (int i = 0; i < 20; i++) {
+			tick.incrementAndGet();
+			scheduler.advance();
+		}
+		assertEquals(Arrays.asList(1, 2, 6, 11, 16), fired);
+	}
+
+	@Test
+	public void testJitter() {
+		TickScheduler scheduler = new TickScheduler(1, 50);
+		final AtomicInteger count = new AtomicInteger();
+		scheduler.schedule(() -> count.incrementAndGet() > 0, 0, 100);
+		for (int i = 0; i < 51; i++) {
+			scheduler.advance();
+		}
+		// first tick lands within the jitter window
+		assertEquals(1, count.get());
+	}
+
+	@Test
+	public void testWheelThread() throws InterruptedException {
+		TickScheduler scheduler = new TickScheduler(1, 0);
+		final CountDownLatch latch = new CountDownLatch(10);
+		scheduler.start();
+		scheduler.schedule(() -> {
+			latch.countDown();
+			return true;
+		}, 0, 10);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		scheduler.stop();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPeriod() {
+		new TickScheduler(1, 0).schedule(() -> true, 0, 0);
+	}
+
+}
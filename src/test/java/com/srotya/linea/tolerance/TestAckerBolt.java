@@ -21,15 +21,19 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import com.srotya.linea.Collector;
+import com.srotya.linea.ComponentRegistry;
 import com.srotya.linea.TestTuple;
 import com.srotya.linea.TestTupleFactory;
 import com.srotya.linea.disruptor.ROUTING_TYPE;
@@ -43,6 +47,12 @@ import com.srotya.linea.processors.BoltExecutor;
  */
 public class TestAckerBolt {
 
+	@Before
+	public void before() {
+		ComponentRegistry.register(Arrays.asList("testSpout", "test", AckerBolt.ACKER_BOLT_NAME),
+				Collections.singleton("testSpout"));
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void testConfigure() {
@@ -60,7 +70,8 @@ public class TestAckerBolt {
 		}).when(router).routeToTaskId(any(TestTuple.class), any(BoltExecutor.class), any(Integer.class));
 		Collector<TestTuple> collector = new Collector<>(factory, router, AckerBolt.ACKER_BOLT_NAME, 0, 1);
 		bolt.configure(new HashMap<>(), 0, collector);
-		assertEquals(3, bolt.getAckerMap().size());
+		assertEquals(3, bolt.getAckerLedger().getGenerations());
+		assertEquals(0, bolt.getAckerLedger().size());
 		assertEquals(ROUTING_TYPE.GROUPBY, bolt.getRoutingType());
 	}
 
@@ -75,7 +86,14 @@ public class TestAckerBolt {
 
 			@Override
 			public Void answer(InvocationOnMock invocation) throws Throwable {
-				ackEvent.set(invocation.getArgumentAt(0, TestTuple.class));
+				// notifications are recycled once routed, keep a copy
+				TestTuple tuple = invocation.getArgumentAt(0, TestTuple.class);
+				TestTuple copy = factory.buildTuple();
+				copy.setGroupByKey(tuple.getGroupByKey());
+				copy.setNextBoltId(tuple.getNextBoltId());
+				copy.setDestinationTaskId(tuple.getDestinationTaskId());
+				copy.setAck(tuple.isAck());
+				ackEvent.set(copy);
 				return null;
 			}
 		}).when(router).routeToTaskId(any(TestTuple.class), any(BoltExecutor.class), any(Integer.class));
@@ -84,27 +102,29 @@ public class TestAckerBolt {
 
 		TestTuple ackTuple = collector.getFactory().buildTuple();
 		ackTuple.setComponentName("testSpout");
-		ackTuple.setGroupByKey(11231231L);
-		ackTuple.setGroupByValue(11231231L);
+		ackTuple.setOriginTupleId(11231231L);
+		ackTuple.setEventId(11231231L);
 
 		bolt.process(ackTuple);
 
-		assertEquals(11231231L, bolt.getAckerMap().get(11231231L).getValue());
+		assertEquals(11231231L, bolt.getAckerLedger().getXor(bolt.getAckerLedger().find(11231231L)));
 		// ack it second time to complete tuple tree
 		bolt.process(ackTuple);
 		// acker should evict this entry since it's been fully acked now
-		assertEquals(null, bolt.getAckerMap().get(11231231L));
-		verify(router, times(1)).routeToTaskId(ackEvent.get(), null, 0);
+		assertEquals(-1, bolt.getAckerLedger().find(11231231L));
+		verify(router, times(1)).routeToTaskId(any(TestTuple.class), any(BoltExecutor.class), any(Integer.class));
 		assertEquals(0, ackEvent.get().getDestinationTaskId());
 		assertEquals("testSpout", ackEvent.get().getNextBoltId());
+		assertEquals(11231231L, ackEvent.get().getGroupByKey());
+		assertTrue(ackEvent.get().isAck());
 
 		ackTuple = collector.getFactory().buildTuple();
 		ackTuple.setComponentName("test");
-		ackTuple.setGroupByKey(11231231L);
-		ackTuple.setGroupByValue(11231231L);
+		ackTuple.setOriginTupleId(11231231L);
+		ackTuple.setEventId(11231231L);
 
 		bolt.process(ackTuple);
-		assertEquals(null, bolt.getAckerMap().get(11231231L));
+		assertEquals(-1, bolt.getAckerLedger().find(11231231L));
 	}
 
 }
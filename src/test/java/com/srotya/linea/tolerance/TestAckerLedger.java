@@ -0,0 +1,98 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.tolerance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link AckerLedger}
+ * 
+ * @author ambud
+ */
+public class TestAckerLedger {
+
+	@Test
+	public void testInsertFindRemove() {
+		AckerLedger ledger = new AckerLedger(16, 3);
+		assertEquals(-1, ledger.find(0L));
+		int slot = ledger.insert(0L, 12L, 1, 5);
+		assertEquals(slot, ledger.find(0L));
+		assertEquals(12L, ledger.getXor(slot));
+		assertEquals(1, ledger.getSpoutId(slot));
+		assertEquals(5, ledger.getTaskId(slot));
+		ledger.setXor(slot, 12L ^ 7L);
+		assertEquals(12L ^ 7L, ledger.getXor(ledger.find(0L)));
+		assertEquals(1, ledger.size());
+		ledger.remove(slot);
+		assertEquals(-1, ledger.find(0L));
+		assertEquals(0, ledger.size());
+	}
+
+	@Test
+	public void testGrowAndTombstones() {
+		AckerLedger ledger = new AckerLedger(16, 3);
+		for (long i = 0; i < 1000; i++) {
+			ledger.insert(i * 31, i, 0, (int) i);
+		}
+		assertEquals(1000, ledger.size());
+		assertTrue(ledger.getCapacity() >= 1024);
+		for (long i = 0; i < 1000; i++) {
+			int slot = ledger.find(i * 31);
+			assertEquals(i, ledger.getXor(slot));
+			assertEquals((int) i, ledger.getTaskId(slot));
+		}
+		// churn through many more trees than slots, tombstones are reclaimed
+		// instead of growing the table
+		for (long i = 1000; i < 100000; i++) {
+			ledger.insert(i * 31, i, 0, 0);
+			ledger.remove(ledger.find(i * 31));
+		}
+		assertTrue(ledger.getCapacity() <= 4096);
+		assertEquals(1000, ledger.size());
+		assertEquals(999L, ledger.getXor(ledger.find(999 * 31)));
+	}
+
+	@Test
+	public void testRotateExpiry() {
+		AckerLedger ledger = new AckerLedger(64, 3);
+		final Set<Long> expired = new HashSet<>();
+		ledger.insert(1L, 1L, 2, 3);
+		ledger.rotate((key, spoutId, taskId) -> expired.add(key));
+		ledger.insert(2L, 2L, 2, 3);
+		ledger.rotate((key, spoutId, taskId) -> expired.add(key));
+		assertEquals(0, expired.size());
+		assertEquals(2, ledger.size());
+		ledger.rotate((key, spoutId, taskId) -> {
+			assertEquals(2, spoutId);
+			assertEquals(3, taskId);
+			expired.add(key);
+		});
+		// first tree survived 3 rotations
+		assertEquals(1, expired.size());
+		assertTrue(expired.contains(1L));
+		assertEquals(-1, ledger.find(1L));
+		assertTrue(ledger.find(2L) >= 0);
+		ledger.rotate(null);
+		assertEquals(0, ledger.size());
+	}
+
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.tolerance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.srotya.linea.TupleIds;
+
+/**
+ * Unit tests for {@link StructuredTupleIdGenerator}
+ * 
+ * @author ambud
+ */
+public class TestStructuredTupleIdGenerator {
+
+	@Test
+	public void testScrambleRoundTrip() {
+		Random random = new Random(17);
+		for (int i = 0; i < 10000; i++) {
+			long value = random.nextLong();
+			assertEquals(value, StructuredTupleIdGenerator.unscramble(StructuredTupleIdGenerator.scramble(value)));
+		}
+		assertEquals(0L, StructuredTupleIdGenerator.unscramble(StructuredTupleIdGenerator.scramble(0L)));
+		assertEquals(-1L, StructuredTupleIdGenerator.unscramble(StructuredTupleIdGenerator.scramble(-1L)));
+	}
+
+	@Test
+	public void testStructure() {
+		StructuredTupleIdGenerator generator = new StructuredTupleIdGenerator(1 << 16, 0);
+		generator.setWorkerId(3);
+		for (int i = 0; i < 100; i++) {
+			long value = StructuredTupleIdGenerator.unscramble(generator.nextId());
+			assertEquals(3, StructuredTupleIdGenerator.getWorkerId(value));
+			assertEquals(0, StructuredTupleIdGenerator.getLane(value));
+			assertEquals(i, StructuredTupleIdGenerator.getSequence(value));
+		}
+		generator.bind(5, 2);
+		assertEquals("worker:3 lane:0 task:5:2 sequence:100", generator.describe(generator.nextId()));
+	}
+
+	@Test
+	public void testRegisteredWorkerId() {
+		StructuredTupleIdGenerator generator = new StructuredTupleIdGenerator(1 << 16, 1000);
+		long value = StructuredTupleIdGenerator.unscramble(generator.nextId());
+		assertEquals(1000, StructuredTupleIdGenerator.getSequence(value));
+		// the worker id assigned on registration applies to lanes in use
+		generator.setWorkerId(5);
+		value = StructuredTupleIdGenerator.unscramble(generator.nextId());
+		assertEquals(5, StructuredTupleIdGenerator.getWorkerId(value));
+		assertEquals(0, StructuredTupleIdGenerator.getLane(value));
+		assertEquals(1001, StructuredTupleIdGenerator.getSequence(value));
+	}
+
+	@Test
+	public void testIncarnations() {
+		// two workers, or two incarnations of one, with no worker.id set
+		StructuredTupleIdGenerator first = new StructuredTupleIdGenerator();
+		StructuredTupleIdGenerator second = new StructuredTupleIdGenerator();
+		first.configure(new HashMap<>());
+		second.configure(new HashMap<>());
+		Set<Long> ids = new HashSet<>();
+		for (int i = 0; i < 10000; i++) {
+			ids.add(first.nextId());
+			ids.add(second.nextId());
+		}
+		assertEquals(20000, ids.size());
+	}
+
+	@Test
+	public void testLanePerThread() throws InterruptedException {
+		StructuredTupleIdGenerator generator = new StructuredTupleIdGenerator();
+		Set<Long> ids = new HashSet<>();
+		Set<Integer> lanes = new HashSet<>();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				long[] generated = new long[1000];
+				for (int i = 0; i < generated.length; i++) {
+					generated[i] = generator.nextId();
+				}
+				synchronized (ids) {
+					for (long id : generated) {
+						ids.add(id);
+						lanes.add(StructuredTupleIdGenerator.getLane(StructuredTupleIdGenerator.unscramble(id)));
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(4000, ids.size());
+		assertEquals(4, lanes.size());
+	}
+
+	@Test
+	public void testLaneReuse() throws InterruptedException {
+		StructuredTupleIdGenerator generator = new StructuredTupleIdGenerator(2, 0);
+		Set<Long> ids = new HashSet<>();
+		Set<Integer> lanes = new HashSet<>();
+		// short lived threads take over the lanes of terminated ones and
+		// continue their sequences
+		for (int t = 0; t < 10; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 100; i++) {
+					long id = generator.nextId();
+					ids.add(id);
+					lanes.add(StructuredTupleIdGenerator.getLane(StructuredTupleIdGenerator.unscramble(id)));
+				}
+			});
+			thread.start();
+			thread.join();
+		}
+		assertEquals(1000, ids.size());
+		assertEquals(2, lanes.size());
+	}
+
+	@Test
+	public void testLanesExhausted() throws InterruptedException {
+		StructuredTupleIdGenerator generator = new StructuredTupleIdGenerator(1, 0);
+		generator.nextId();
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		Thread thread = new Thread(() -> {
+			try {
+				generator.nextId();
+			} catch (Throwable e) {
+				error.set(e);
+			}
+		});
+		thread.start();
+		thread.join();
+		// the only lane belongs to this thread which is still alive
+		assertTrue(error.get() instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testXorSafety() {
+		StructuredTupleIdGenerator generator = new StructuredTupleIdGenerator();
+		long[] ids = new long[4];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = generator.nextId();
+		}
+		// raw sequences 0^1^2^3 cancel out, scrambled ids must not
+		assertEquals(0L, 0L ^ 1L ^ 2L ^ 3L);
+		assertNotEquals(0L, ids[0] ^ ids[1] ^ ids[2] ^ ids[3]);
+	}
+
+	@Test
+	public void testShuffleSpread() {
+		StructuredTupleIdGenerator generator = new StructuredTupleIdGenerator();
+		int parallelism = 7;
+		int[] buckets = new int[parallelism];
+		for (int i = 0; i < 70000; i++) {
+			buckets[(int) Math.abs(generator.nextId() % parallelism)]++;
+		}
+		for (int bucket : buckets) {
+			assertTrue(String.valueOf(bucket), bucket > 9000 && bucket < 11000);
+		}
+	}
+
+	@Test
+	public void testConfigure() throws ReflectiveOperationException {
+		Map<String, String> conf = new HashMap<>();
+		conf.put(TupleIds.TUPLE_ID_GENERATOR, RandomTupleIdGenerator.class.getName());
+		try {
+			TupleIds.configure(conf);
+			assertTrue(TupleIds.getGenerator() instanceof RandomTupleIdGenerator);
+			conf.remove(TupleIds.TUPLE_ID_GENERATOR);
+			TupleIds.configure(conf);
+			assertTrue(TupleIds.getGenerator() instanceof StructuredTupleIdGenerator);
+		} finally {
+			TupleIds.setGenerator(new StructuredTupleIdGenerator());
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.tolerance;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.srotya.linea.MurmurHash;
+import com.srotya.linea.utils.LongList;
+
+/**
+ * Compares tuple id generators: generation cost through JMH and the
+ * probability of the acker completing a tuple tree early through a
+ * simulation of XOR tracking.<br>
+ * <br>
+ * Run with <code>main</code> from the test classpath, it's not part of the
+ * unit test suite.
+ * 
+ * @author ambud
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TupleIdBenchmark {
+
+	private static final double TUPLES_PER_SECOND = 1_000_000;
+	private static final double SECONDS_PER_YEAR = 365 * 24 * 3600;
+	private StructuredTupleIdGenerator structured;
+	private RandomTupleIdGenerator random;
+	private int counter;
+
+	@Setup
+	public void setup() {
+		structured = new StructuredTupleIdGenerator();
+		random = new RandomTupleIdGenerator();
+	}
+
+	@Benchmark
+	public long structured() {
+		return structured.nextId();
+	}
+
+	@Benchmark
+	public long random() {
+		return random.nextId();
+	}
+
+	/**
+	 * Id derived from a string key, as done by the String constructor of
+	 * AbstractTuple
+	 */
+	@Benchmark
+	public long hashedString() {
+		return MurmurHash.hash64("event-" + counter++);
+	}
+
+	/**
+	 * Replay tuple trees through XOR tracking and count the times a tree's
+	 * value reached 0 while tuples were still pending
+	 * 
+	 * @param ids
+	 * @param trees
+	 * @param maxFanout
+	 * @param maxDepth
+	 * @param seed
+	 * @return early completions
+	 */
+	public static long falseCompletions(LongSupplier ids, int trees, int maxFanout, int maxDepth, long seed) {
+		Random random = new Random(seed);
+		LongList pending = new LongList();
+		LongList depths = new LongList();
+		long earlyCompletions = 0;
+		for (int t = 0; t < trees; t++) {
+			pending.clear();
+			depths.clear();
+			long root = ids.getAsLong();
+			long xor = root;
+			pending.addLong(root);
+			depths.addLong(0);
+			while (!pending.isEmpty()) {
+				// acks arrive in any order
+				int index = random.nextInt(pending.size());
+				long id = pending.getLong(index);
+				long depth = depths.getLong(index);
+				pending.setLong(index, pending.getLong(pending.size() - 1));
+				depths.setLong(index, depths.getLong(depths.size() - 1));
+				pending.remove(pending.size() - 1);
+				depths.remove(depths.size() - 1);
+				long update = id;
+				if (depth < maxDepth) {
+					int fanout = random.nextInt(maxFanout + 1);
+					for (int i = 0; i < fanout; i++) {
+						long child = ids.getAsLong();
+						update ^= child;
+						pending.addLong(child);
+						depths.addLong(depth + 1);
+					}
+				}
+				xor ^= update;
+				if (xor == 0 && !pending.isEmpty()) {
+					earlyCompletions++;
+					break;
+				}
+			}
+		}
+		return earlyCompletions;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		int trees = 200_000;
+		StructuredTupleIdGenerator structured = new StructuredTupleIdGenerator();
+		RandomTupleIdGenerator random = new RandomTupleIdGenerator();
+		long[] counter = new long[1];
+		LongSupplier unscrambled = () -> counter[0]++;
+		System.out.println("Early completions in " + trees + " trees");
+		System.out.println("random:      " + falseCompletions(random::nextId, trees, 3, 3, 1));
+		System.out.println("structured:  " + falseCompletions(structured::nextId, trees, 3, 3, 1));
+		System.out.println("unscrambled: " + falseCompletions(unscrambled, trees, 3, 3, 1));
+
+		// a tree completes early if an intermediate XOR hits 0, for ids
+		// indistinguishable from random that is 2^-64 per acker update
+		double updatesPerYear = TUPLES_PER_SECOND * 2 * SECONDS_PER_YEAR;
+		System.out.println("Expected early completions per year at " + (long) TUPLES_PER_SECOND + " tuples/s: "
+				+ updatesPerYear * Math.pow(2, -64));
+
+		int parallelism = 7;
+		long[] buckets = new long[parallelism];
+		for (int i = 0; i < 7_000_000; i++) {
+			buckets[(int) Math.abs(structured.nextId() % parallelism)]++;
+		}
+		System.out.println("SHUFFLE spread over " + parallelism + " tasks: " + Arrays.toString(buckets));
+
+		new Runner(new OptionsBuilder().include(TupleIdBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
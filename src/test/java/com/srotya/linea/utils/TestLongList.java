@@ -0,0 +1,103 @@
+/**
+ * Copyright 2017 Ambud Sharma
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.srotya.linea.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LongList}
+ * 
+ * @author ambud
+ */
+public class TestLongList {
+
+	@Test
+	public void testAddGet() {
+		LongList list = new LongList();
+		assertTrue(list.isEmpty());
+		for (long i = 0; i < 100; i++) {
+			list.addLong(i * 31);
+		}
+		assertEquals(100, list.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i * 31L, list.getLong(i));
+		}
+		assertTrue(list.containsLong(31 * 99));
+		assertFalse(list.containsLong(1));
+		try {
+			list.getLong(100);
+			fail("Index out of bounds");
+		} catch (IndexOutOfBoundsException e) {
+		}
+		list.clear();
+		assertEquals(0, list.size());
+		list.addLong(5);
+		assertEquals(5, list.getLong(0));
+	}
+
+	@Test
+	public void testListView() {
+		LongList list = new LongList();
+		list.add(1L);
+		list.add(3L);
+		list.add(1, 2L);
+		assertEquals(Arrays.asList(1L, 2L, 3L), list);
+		assertEquals(Long.valueOf(2), list.remove(1));
+		assertEquals(Arrays.asList(1L, 3L), list);
+		list.set(0, 7L);
+		assertEquals(7, list.getLong(0));
+		long sum = 0;
+		for (Long value : list) {
+			sum += value;
+		}
+		assertEquals(10, sum);
+	}
+
+	@Test
+	public void testCopyFrom() {
+		LongList source = new LongList();
+		for (long i = 0; i < 10; i++) {
+			source.addLong(i);
+		}
+		LongList target = new LongList();
+		target.addLong(100);
+		target.copyFrom(source);
+		assertEquals(source, target);
+		source.clear();
+		target.copyFrom(source);
+		assertTrue(target.isEmpty());
+	}
+
+	@Test
+	public void testSwap() {
+		LongList first = new LongList();
+		first.addLong(1);
+		first.addLong(2);
+		LongList second = new LongList();
+		second.addLong(3);
+		first.swap(second);
+		assertEquals(Arrays.asList(3L), first);
+		assertEquals(Arrays.asList(1L, 2L), second);
+	}
+
+}